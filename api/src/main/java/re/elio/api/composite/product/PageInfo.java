@@ -0,0 +1,12 @@
+package re.elio.api.composite.product;
+
+/**
+ * Describes a list in a product aggregate that may not be complete.
+ *
+ * @param count      number of elements in the list
+ * @param truncated  true if there are more elements than returned
+ * @param nextCursor cursor of the remaining elements, if truncated
+ */
+public record PageInfo(int count, boolean truncated, String nextCursor) {
+
+}
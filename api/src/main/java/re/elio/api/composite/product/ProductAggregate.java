@@ -1,7 +1,18 @@
 package re.elio.api.composite.product;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.List;
 
-public record ProductAggregate(int productId, String name, int weight, List<RecommendationSummary> recommendations,
-                               List<ReviewSummary> reviews, ServiceAddresses serviceAddresses) {
-}
\ No newline at end of file
+public record ProductAggregate(int productId, String name, int weight,
+                               @JsonInclude(JsonInclude.Include.NON_NULL) List<RecommendationSummary> recommendations,
+                               @JsonInclude(JsonInclude.Include.NON_NULL) List<ReviewSummary> reviews,
+                               @JsonInclude(JsonInclude.Include.NON_NULL) ServiceAddresses serviceAddresses,
+                               @JsonInclude(JsonInclude.Include.NON_NULL) PageInfo recommendationsPage,
+                               @JsonInclude(JsonInclude.Include.NON_NULL) PageInfo reviewsPage) {
+
+    public ProductAggregate(int productId, String name, int weight, List<RecommendationSummary> recommendations,
+                            List<ReviewSummary> reviews, ServiceAddresses serviceAddresses) {
+        this(productId, name, weight, recommendations, reviews, serviceAddresses, null, null);
+    }
+}
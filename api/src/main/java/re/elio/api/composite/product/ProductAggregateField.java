@@ -0,0 +1,49 @@
+package re.elio.api.composite.product;
+
+import re.elio.api.exceptions.InvalidInputException;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Optional parts of a product aggregate that a client can ask for with the include parameter.
+ * The product information is always included.
+ */
+public enum ProductAggregateField {
+    RECOMMENDATIONS("recommendations"),
+    REVIEWS("reviews"),
+    SERVICE_ADDRESSES("serviceAddresses");
+
+    private final String fieldName;
+
+    ProductAggregateField(String fieldName) {
+        this.fieldName = fieldName;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * @param fieldNames names of the fields to include, as in the JSON of the product aggregate
+     * @return the fields, all fields if fieldNames is null
+     */
+    public static Set<ProductAggregateField> parse(List<String> fieldNames) {
+        if (fieldNames == null) return EnumSet.allOf(ProductAggregateField.class);
+
+        Set<ProductAggregateField> fields = EnumSet.noneOf(ProductAggregateField.class);
+        for (String fieldName : fieldNames) {
+            if (fieldName.isBlank()) continue;
+            fields.add(fromFieldName(fieldName.trim()));
+        }
+        return fields;
+    }
+
+    private static ProductAggregateField fromFieldName(String fieldName) {
+        for (ProductAggregateField field : values()) {
+            if (field.fieldName.equals(fieldName)) return field;
+        }
+        throw new InvalidInputException("Invalid include: " + fieldName);
+    }
+}
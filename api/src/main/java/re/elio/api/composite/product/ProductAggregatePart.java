@@ -0,0 +1,24 @@
+package re.elio.api.composite.product;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One line of a streamed product aggregate: first the product, then its recommendations and reviews.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ProductAggregatePart(Type type, ProductSummary product, RecommendationSummary recommendation,
+                                   ReviewSummary review) {
+    public enum Type {PRODUCT, RECOMMENDATION, REVIEW}
+
+    public static ProductAggregatePart of(ProductSummary product) {
+        return new ProductAggregatePart(Type.PRODUCT, product, null, null);
+    }
+
+    public static ProductAggregatePart of(RecommendationSummary recommendation) {
+        return new ProductAggregatePart(Type.RECOMMENDATION, null, recommendation, null);
+    }
+
+    public static ProductAggregatePart of(ReviewSummary review) {
+        return new ProductAggregatePart(Type.REVIEW, null, null, review);
+    }
+}
@@ -4,17 +4,22 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 import static org.springframework.http.HttpStatus.ACCEPTED;
 
 @Tag(name = "ProductComposite", description = "REST API for composite product information.")
 public interface ProductCompositeService {
     /**
-     * Sample usage: "curl $HOST:$PORT/product-composite/1"
+     * Sample usage: "curl $HOST:$PORT/product-composite/1?include=reviews,serviceAddresses"
      *
      * @param productId ID of the product
+     * @param include   optional parts to include, see {@link ProductAggregateField}, all parts if omitted
      * @return the composite product info, if found, else null
      */
     @Operation(summary = "${api.product-composite.get-composite-product.description}", description = "${api.product-composite.get-composite-product.notes}")
@@ -25,7 +30,56 @@ public interface ProductCompositeService {
             @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
     })
     @GetMapping(value = "/product-composite/{productId}", produces = "application/json")
-    Mono<ProductAggregate> getProduct(@PathVariable int productId);
+    Mono<ProductAggregate> getProduct(@PathVariable int productId,
+                                      @RequestParam(value = "include", required = false) List<String> include);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/product-composite/1/passthrough"
+     *
+     * @param productId ID of the product
+     * @return the composite product info, with the same JSON as {@link #getProduct(int, List)}, assembled from the
+     * JSON of the core services without binding it to objects
+     */
+    @Operation(summary = "${api.product-composite.get-composite-product-passthrough.description}", description = "${api.product-composite.get-composite-product-passthrough.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "${api.responseCodes.ok.description}"),
+            @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+            @ApiResponse(responseCode = "404", description = "${api.responseCodes.notFound.description}"),
+            @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+    })
+    @GetMapping(value = "/product-composite/{productId}/passthrough", produces = "application/json")
+    Mono<DataBuffer> getProductPassthrough(@PathVariable int productId);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/product-composite/1/stream"
+     *
+     * @param productId ID of the product
+     * @return the composite product info as a stream of parts, the product followed by its recommendations and reviews
+     */
+    @Operation(summary = "${api.product-composite.get-composite-product-stream.description}", description = "${api.product-composite.get-composite-product-stream.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "${api.responseCodes.ok.description}"),
+            @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+            @ApiResponse(responseCode = "404", description = "${api.responseCodes.notFound.description}"),
+            @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+    })
+    @GetMapping(value = "/product-composite/{productId}/stream", produces = "application/x-ndjson")
+    Flux<ProductAggregatePart> getProductStream(@PathVariable int productId);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/product-composite?ids=1,2,3"
+     *
+     * @param ids IDs of the products
+     * @return the composite product info of the products found, in the requested order
+     */
+    @Operation(summary = "${api.product-composite.get-composite-products.description}", description = "${api.product-composite.get-composite-products.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "${api.responseCodes.ok.description}"),
+            @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+            @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+    })
+    @GetMapping(value = "/product-composite", params = "ids", produces = "application/json")
+    Flux<ProductAggregate> getProducts(@RequestParam(value = "ids") List<Integer> ids);
 
     /**
      * Sample usage:
@@ -0,0 +1,5 @@
+package re.elio.api.composite.product;
+
+public record ProductSummary(int productId, String name, int weight) {
+
+}
@@ -0,0 +1,37 @@
+package re.elio.api.core;
+
+import re.elio.api.exceptions.InvalidInputException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque continuation token of a list of recommendations or reviews, ordered by their id.
+ * It points just after the last element returned for the product.
+ */
+public record Cursor(int productId, int afterId) {
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((productId + ":" + afterId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Cursor decode(String value) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8).split(":");
+            if (parts.length != 2) throw new IllegalArgumentException();
+            return new Cursor(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidInputException("Invalid cursor: " + value);
+        }
+    }
+
+    /**
+     * @return the cursor, that must belong to the product
+     */
+    public static Cursor decode(String value, int productId) {
+        Cursor cursor = decode(value);
+        if (cursor.productId() != productId) throw new InvalidInputException("Invalid cursor: " + value + " for productId: " + productId);
+        return cursor;
+    }
+}
@@ -0,0 +1,11 @@
+package re.elio.api.core;
+
+/**
+ * Request for a page of the recommendations or reviews of a product, the RSocket counterpart of the
+ * limit and cursor request parameters.
+ *
+ * @param cursor encoded {@link Cursor} of the previous page, null for the first page
+ */
+public record PageQuery(int productId, int limit, String cursor) {
+
+}
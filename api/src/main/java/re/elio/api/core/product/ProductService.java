@@ -1,8 +1,11 @@
 package re.elio.api.core.product;
 
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface ProductService {
 
     /**
@@ -11,9 +14,18 @@ public interface ProductService {
      * @param productId ID of the product
      * @return the product, if found, else null
      */
-    @GetMapping(value = "/product/{productId}", produces = "application/json")
+    @GetMapping(value = "/product/{productId}", produces = {"application/json", "application/x-jackson-smile"})
     Mono<Product> getProduct(@PathVariable int productId);
 
+    /**
+     * Sample usage: "curl $HOST:$PORT/product?productIds=1,2,3".
+     *
+     * @param productIds IDs of the products
+     * @return the products found, unknown product ids are left out
+     */
+    @GetMapping(value = "/product", params = "productIds", produces = {"application/json", "application/x-jackson-smile"})
+    Flux<Product> getProducts(@RequestParam(value = "productIds") List<Integer> productIds);
+
     /**
      * Sample usage:
      * curl -X POST $HOST:$PORT/product \
@@ -23,7 +35,7 @@ public interface ProductService {
      * @param body A JSON representation of the new product
      * @return A JSON representation of the newly created product
      */
-    @PostMapping(value = "/product", consumes = "application/json", produces = "application/json")
+    @PostMapping(value = "/product", consumes = {"application/json", "application/x-jackson-smile"}, produces = {"application/json", "application/x-jackson-smile"})
     Mono<Product> createProduct(@RequestBody Product body);
 
     /**
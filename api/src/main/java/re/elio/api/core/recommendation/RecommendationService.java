@@ -4,16 +4,42 @@ import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface RecommendationService {
     /**
      * Sample usage: "curl $HOST:$PORT/recommendation?productId=1".
      *
      * @param productId ID of the product
-     * @return the recommendations of the product
+     * @return the recommendations of the product, also available as a stream with Accept: application/x-ndjson
      */
-    @GetMapping(value = "/recommendation", produces = "application/json")
+    @GetMapping(value = "/recommendation", produces = {"application/json", "application/x-ndjson", "application/x-jackson-smile"})
     Flux<Recommendation> getRecommendations(@RequestParam(value = "productId") int productId);
 
+    /**
+     * Sample usage: "curl $HOST:$PORT/recommendation?productId=1&limit=10&cursor=MTo0Mg".
+     *
+     * @param productId ID of the product
+     * @param limit     max number of recommendations to return
+     * @param cursor    {@link re.elio.api.core.Cursor} after the last recommendation of the previous page, omitted for the first page
+     * @return a page of the recommendations of the product, ordered by recommendationId
+     */
+    @GetMapping(value = "/recommendation", params = "limit", produces = {"application/json", "application/x-jackson-smile"})
+    Flux<Recommendation> getRecommendations(@RequestParam(value = "productId") int productId,
+                                            @RequestParam(value = "limit") int limit,
+                                            @RequestParam(value = "cursor", required = false) String cursor);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/recommendation?productIds=1,2,3&limit=10".
+     *
+     * @param productIds IDs of the products
+     * @param limit      max number of recommendations to return per product
+     * @return the first page of the recommendations of each product, in the order of the productIds and by recommendationId
+     */
+    @GetMapping(value = "/recommendation", params = {"productIds", "limit"}, produces = {"application/json", "application/x-jackson-smile"})
+    Flux<Recommendation> getRecommendations(@RequestParam(value = "productIds") List<Integer> productIds,
+                                            @RequestParam(value = "limit") int limit);
+
     /**
      * Sample usage:
      * curl -X POST $HOST:$PORT/recommendation \
@@ -23,7 +49,7 @@ public interface RecommendationService {
      * @param body A JSON representation of the new recommendation
      * @return A JSON representation of the newly created recommendation
      */
-    @PostMapping(value = "/recommendation", consumes = "application/json", produces = "application/json")
+    @PostMapping(value = "/recommendation", consumes = {"application/json", "application/x-jackson-smile"}, produces = {"application/json", "application/x-jackson-smile"})
     Mono<Recommendation> createRecommendation(@RequestBody Recommendation body);
 
     /**
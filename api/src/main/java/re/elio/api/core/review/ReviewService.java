@@ -4,16 +4,42 @@ import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface ReviewService {
     /**
      * Sample usage: "cur $HOST:$PORT/review?productId=1"
      *
      * @param productId ID of the product
-     * @return the reviews of the product
+     * @return the reviews of the product, also available as a stream with Accept: application/x-ndjson
      */
-    @GetMapping(value = "/review", produces = "application/json")
+    @GetMapping(value = "/review", produces = {"application/json", "application/x-ndjson", "application/x-jackson-smile"})
     Flux<Review> getReviews(@RequestParam(value = "productId") int productId);
 
+    /**
+     * Sample usage: "curl $HOST:$PORT/review?productId=1&limit=10&cursor=MTo0Mg"
+     *
+     * @param productId ID of the product
+     * @param limit     max number of reviews to return
+     * @param cursor    {@link re.elio.api.core.Cursor} after the last review of the previous page, omitted for the first page
+     * @return a page of the reviews of the product, ordered by reviewId
+     */
+    @GetMapping(value = "/review", params = "limit", produces = {"application/json", "application/x-jackson-smile"})
+    Flux<Review> getReviews(@RequestParam(value = "productId") int productId,
+                            @RequestParam(value = "limit") int limit,
+                            @RequestParam(value = "cursor", required = false) String cursor);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/review?productIds=1,2,3&limit=10"
+     *
+     * @param productIds IDs of the products
+     * @param limit      max number of reviews to return per product
+     * @return the first page of the reviews of each product, in the order of the productIds and by reviewId
+     */
+    @GetMapping(value = "/review", params = {"productIds", "limit"}, produces = {"application/json", "application/x-jackson-smile"})
+    Flux<Review> getReviews(@RequestParam(value = "productIds") List<Integer> productIds,
+                            @RequestParam(value = "limit") int limit);
+
     /**
      * Sample usage:
      * curl -X POST $HOST:$PORT/review \
@@ -23,7 +49,7 @@ public interface ReviewService {
      * @param body A JSON representation of the new review
      * @return A JSON representation of the newly created review
      */
-    @PostMapping(value = "/review", consumes = "application/json", produces = "application/json")
+    @PostMapping(value = "/review", consumes = {"application/json", "application/x-jackson-smile"}, produces = {"application/json", "application/x-jackson-smile"})
     Mono<Review> createReview(@RequestBody Review body);
 
     /**
@@ -0,0 +1,18 @@
+package re.elio.api.exceptions;
+
+public class DeadlineExceededException extends RuntimeException {
+    public DeadlineExceededException() {
+    }
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+
+    public DeadlineExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public DeadlineExceededException(Throwable cause) {
+        super(cause);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,17 @@
+package re.elio.api.exceptions;
+
+/**
+ * Thrown when the resource requested with a conditional GET still has the ETag the client already has.
+ */
+public class NotModifiedException extends RuntimeException {
+    private final String eTag;
+
+    public NotModifiedException(String eTag) {
+        super("Not modified, ETag: " + eTag);
+        this.eTag = eTag;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+}
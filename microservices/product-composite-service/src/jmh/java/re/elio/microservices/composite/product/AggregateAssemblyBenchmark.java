@@ -0,0 +1,86 @@
+package re.elio.microservices.composite.product;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import re.elio.api.composite.product.*;
+import re.elio.api.core.product.Product;
+import re.elio.api.core.recommendation.Recommendation;
+import re.elio.api.core.review.Review;
+import re.elio.microservices.composite.product.services.JsonPassthroughAssembler;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compares assembling a product aggregate by binding the downstream JSON to objects, as getProduct does,
+ * with splicing it into the response using the JsonPassthroughAssembler.
+ * Run with: ./gradlew :microservices:product-composite-service:jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregateAssemblyBenchmark {
+    private static final String SERVICE_ADDRESS = "product-composite/172.18.0.2:8080";
+
+    @Param({"3", "100"})
+    private int size;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonPassthroughAssembler assembler = new JsonPassthroughAssembler(mapper);
+    private Product product;
+    private byte[] recommendationsJson;
+    private byte[] reviewsJson;
+
+    @Setup
+    public void setup() throws IOException {
+        product = new Product(1, "product name", 42, "product/172.18.0.3:8080");
+        recommendationsJson = mapper.writeValueAsBytes(IntStream.rangeClosed(1, size)
+                .mapToObj(id -> new Recommendation(1, id, "author " + id, id % 5, "recommendation content " + id,
+                        "recommendation/172.18.0.4:8080"))
+                .toList());
+        reviewsJson = mapper.writeValueAsBytes(IntStream.rangeClosed(1, size)
+                .mapToObj(id -> new Review(1, id, "author " + id, "subject " + id, "review content " + id,
+                        "review/172.18.0.5:8080"))
+                .toList());
+    }
+
+    @Benchmark
+    public byte[] objectMapping() throws IOException {
+        List<Recommendation> recommendations = mapper.readValue(recommendationsJson, new TypeReference<>() {});
+        List<Review> reviews = mapper.readValue(reviewsJson, new TypeReference<>() {});
+
+        List<RecommendationSummary> recommendationSummaries = recommendations.stream()
+                .map(r -> new RecommendationSummary(r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent()))
+                .toList();
+        List<ReviewSummary> reviewSummaries = reviews.stream()
+                .map(r -> new ReviewSummary(r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent()))
+                .toList();
+        ServiceAddresses serviceAddresses = new ServiceAddresses(SERVICE_ADDRESS, product.getServiceAddress(),
+                reviews.get(0).getServiceAddress(), recommendations.get(0).getServiceAddress());
+
+        return mapper.writeValueAsBytes(new ProductAggregate(product.getProductId(), product.getName(),
+                product.getWeight(), recommendationSummaries, reviewSummaries, serviceAddresses,
+                new PageInfo(recommendationSummaries.size(), false, null),
+                new PageInfo(reviewSummaries.size(), false, null)));
+    }
+
+    @Benchmark
+    public int passthrough() {
+        DataBuffer result = assembler.assemble(product,
+                DefaultDataBufferFactory.sharedInstance.wrap(recommendationsJson),
+                DefaultDataBufferFactory.sharedInstance.wrap(reviewsJson),
+                size, SERVICE_ADDRESS);
+        int length = result.readableByteCount();
+        DataBufferUtils.release(result);
+        return length;
+    }
+}
@@ -0,0 +1,60 @@
+package re.elio.microservices.composite.product;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import re.elio.api.core.review.Review;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the time to write and read a page of reviews, as sent by the review service, in JSON and in Smile.
+ * The payload sizes are logged when the benchmark is set up.
+ * Run with: ./gradlew :microservices:product-composite-service:jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(CodecBenchmark.class);
+
+    @Param({"json", "smile"})
+    private String format;
+
+    @Param({"3", "100"})
+    private int size;
+
+    private ObjectMapper mapper;
+    private List<Review> reviews;
+    private byte[] payload;
+
+    @Setup
+    public void setup() throws IOException {
+        mapper = format.equals("smile") ? Jackson2ObjectMapperBuilder.smile().build() : Jackson2ObjectMapperBuilder.json().build();
+        reviews = IntStream.rangeClosed(1, size)
+                .mapToObj(id -> new Review(1, id, "author " + id, "subject " + id, "review content " + id,
+                        "review/172.18.0.5:8080"))
+                .toList();
+        payload = mapper.writeValueAsBytes(reviews);
+        LOG.info("{} reviews in {}: {} bytes", size, format, payload.length);
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException {
+        return mapper.writeValueAsBytes(reviews);
+    }
+
+    @Benchmark
+    public List<Review> read() throws IOException {
+        return mapper.readValue(payload, new TypeReference<>() {});
+    }
+}
@@ -0,0 +1,99 @@
+package re.elio.microservices.composite.product;
+
+import io.rsocket.RSocket;
+import io.rsocket.SocketAcceptor;
+import io.rsocket.core.RSocketConnector;
+import io.rsocket.core.RSocketServer;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.util.DefaultPayload;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the latency of the lookups of the composite service over the transports it supports, HTTP/1.1, cleartext
+ * HTTP/2 (h2c) and RSocket, over TCP loopback. A lookup returns a number of reviews, as one JSON array over HTTP and as
+ * one element per review of a request-stream over RSocket.
+ * Run with: ./gradlew :microservices:product-composite-service:jmh -Pjmh.includes=RSocketTransportBenchmark
+ * Add -t 16 to the jmh jar to compare them with concurrent lookups sharing the connections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RSocketTransportBenchmark {
+    private static final String REVIEW = "{\"productId\":1,\"reviewId\":1,\"author\":\"author\",\"subject\":\"subject\",\"content\":\"content\",\"serviceAddress\":\"review/172.18.0.5:8080\"}";
+
+    @Param({"http1", "h2c", "rsocket"})
+    private String transport;
+
+    @Param({"1", "10"})
+    private int reviews;
+
+    private DisposableServer httpServer;
+    private HttpClient httpClient;
+    private CloseableChannel rsocketServer;
+    private RSocket rsocket;
+
+    @Setup
+    public void setup() {
+        if (transport.equals("rsocket")) {
+            rsocketServer = RSocketServer.create(SocketAcceptor.forRequestStream(request ->
+                            Flux.range(0, reviews).map(i -> DefaultPayload.create(REVIEW))))
+                    .bind(TcpServerTransport.create("127.0.0.1", 0))
+                    .block();
+            rsocket = RSocketConnector.connectWith(TcpClientTransport.create("127.0.0.1", rsocketServer.address().getPort()))
+                    .block();
+        } else {
+            HttpProtocol protocol = transport.equals("h2c") ? HttpProtocol.H2C : HttpProtocol.HTTP11;
+            String body = "[" + String.join(",", Collections.nCopies(reviews, REVIEW)) + "]";
+            httpServer = HttpServer.create()
+                    .protocol(protocol)
+                    .host("127.0.0.1")
+                    .port(0)
+                    .route(routes -> routes.get("/review", (request, response) -> response.sendString(Mono.just(body))))
+                    .bindNow();
+            httpClient = HttpClient.create()
+                    .protocol(protocol)
+                    .baseUrl("http://127.0.0.1:" + httpServer.port());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (rsocket != null) rsocket.dispose();
+        if (rsocketServer != null) rsocketServer.dispose();
+        if (httpServer != null) httpServer.disposeNow();
+    }
+
+    /**
+     * @return the number of bytes received
+     */
+    @Benchmark
+    public Integer getReviews() {
+        if (rsocket != null) {
+            return rsocket.requestStream(DefaultPayload.create("1"))
+                    .map(payload -> payload.getDataUtf8().length())
+                    .reduce(0, Integer::sum)
+                    .block();
+        }
+        return httpClient.get()
+                .uri("/review")
+                .responseContent()
+                .aggregate()
+                .asString()
+                .map(String::length)
+                .block();
+    }
+}
@@ -0,0 +1,73 @@
+package re.elio.microservices.composite.product;
+
+import io.netty.channel.unix.DomainSocketAddress;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpResources;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the round trip time of a small GET between a client and a server on the same host, over TCP loopback
+ * on NIO and on the native transport, and over a Unix domain socket.
+ * Run with: ./gradlew :microservices:product-composite-service:jmh
+ * To compare the syscalls, run one transport at a time from the jmh jar under strace -c -f, e.g.
+ * strace -c -f java -jar build/libs/product-composite-service-1.0.0-SNAPSHOT-jmh.jar TransportBenchmark -p transport=uds
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportBenchmark {
+    private static final String BODY = "{\"productId\":1,\"name\":\"name\",\"weight\":1,\"serviceAddress\":\"product/172.18.0.3:8080\"}";
+
+    @Param({"tcp-nio", "tcp-native", "uds"})
+    private String transport;
+
+    private Path socketPath;
+    private DisposableServer server;
+    private HttpClient client;
+
+    @Setup
+    public void setup() throws IOException {
+        boolean nativeTransport = !transport.equals("tcp-nio");
+        HttpServer httpServer = HttpServer.create()
+                .runOn(HttpResources.get(), nativeTransport)
+                .route(routes -> routes.get("/product/1", (request, response) -> response.sendString(Mono.just(BODY))));
+        client = HttpClient.create().runOn(HttpResources.get(), nativeTransport);
+
+        if (transport.equals("uds")) {
+            socketPath = Files.createTempDirectory("transport-benchmark").resolve("server.sock");
+            DomainSocketAddress address = new DomainSocketAddress(socketPath.toString());
+            server = httpServer.bindAddress(() -> address).bindNow();
+            client = client.remoteAddress(() -> address);
+        } else {
+            server = httpServer.host("127.0.0.1").port(0).bindNow();
+            client = client.baseUrl("http://127.0.0.1:" + server.port());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.disposeNow();
+        if (socketPath != null) Files.deleteIfExists(socketPath);
+    }
+
+    @Benchmark
+    public String get() {
+        return client.get()
+                .uri("/product/1")
+                .responseContent()
+                .aggregate()
+                .asString()
+                .block();
+    }
+}
@@ -0,0 +1,117 @@
+package re.elio.microservices.composite.product;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.Semaphore;
+
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+/**
+ * Sheds load in front of the ProductCompositeService API: requests above the adaptive
+ * {@link GradientConcurrencyLimit} are rejected right away with 503 and a Retry-After header.
+ * <p>
+ * Streaming requests, e.g. /product-composite/{productId}/stream, last as long as their client reads and would
+ * hold the permits of short requests, and their latency says nothing about overload. They have their own fixed
+ * limit, app.concurrencyLimit.maxStreams, instead.
+ * <p>
+ * The limit, the number of requests and streams in flight and the number of rejected requests are exposed as
+ * the "composite.concurrency.limit", "composite.concurrency.inflight", "composite.concurrency.streams" and
+ * "composite.concurrency.rejected" metrics.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ConcurrencyLimitWebFilter implements WebFilter {
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrencyLimitWebFilter.class);
+    private static final String API_PATH = "/product-composite";
+    private static final String STREAM_PATH_SUFFIX = "/stream";
+
+    private final boolean enabled;
+    private final String retryAfterSeconds;
+    private final GradientConcurrencyLimit limit;
+    private final Semaphore streams;
+    private final Counter rejected;
+    private final Counter rejectedStreams;
+
+    public ConcurrencyLimitWebFilter(MeterRegistry meterRegistry,
+                                     @Value("${app.concurrencyLimit.enabled:true}") boolean enabled,
+                                     @Value("${app.concurrencyLimit.initialLimit:100}") int initialLimit,
+                                     @Value("${app.concurrencyLimit.minLimit:10}") int minLimit,
+                                     @Value("${app.concurrencyLimit.maxLimit:1000}") int maxLimit,
+                                     @Value("${app.concurrencyLimit.tolerance:1.5}") double tolerance,
+                                     @Value("${app.concurrencyLimit.retryAfterSeconds:1}") int retryAfterSeconds,
+                                     @Value("${app.concurrencyLimit.maxStreams:100}") int maxStreams) {
+        this.enabled = enabled;
+        this.retryAfterSeconds = String.valueOf(retryAfterSeconds);
+        this.limit = new GradientConcurrencyLimit(initialLimit, minLimit, maxLimit, tolerance);
+        this.streams = new Semaphore(maxStreams);
+        Gauge.builder("composite.concurrency.limit", limit, GradientConcurrencyLimit::getLimit)
+                .description("Current adaptive limit of concurrent requests")
+                .register(meterRegistry);
+        Gauge.builder("composite.concurrency.inflight", limit, GradientConcurrencyLimit::getInFlight)
+                .description("Number of requests in flight")
+                .register(meterRegistry);
+        Gauge.builder("composite.concurrency.streams", streams, s -> maxStreams - s.availablePermits())
+                .description("Number of streaming requests in flight")
+                .register(meterRegistry);
+        this.rejected = rejectedCounter(meterRegistry, "request");
+        this.rejectedStreams = rejectedCounter(meterRegistry, "stream");
+        LOG.info("Created a concurrency limit, enabled: {}, initialLimit: {}, minLimit: {}, maxLimit: {}, tolerance: {}, maxStreams: {}",
+                enabled, initialLimit, minLimit, maxLimit, tolerance, maxStreams);
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String kind) {
+        return Counter.builder("composite.concurrency.rejected")
+                .description("Number of requests rejected by the concurrency limit")
+                .tag("kind", kind)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String path = exchange.getRequest().getPath().pathWithinApplication().value();
+        if (!enabled || !path.startsWith(API_PATH)) {
+            return chain.filter(exchange);
+        }
+
+        if (path.endsWith(STREAM_PATH_SUFFIX)) {
+            if (!streams.tryAcquire()) {
+                rejectedStreams.increment();
+                LOG.debug("Rejects streaming request, the limit of streams is reached");
+                return reject(exchange.getResponse());
+            }
+            return chain.filter(exchange)
+                    .doFinally(signal -> streams.release());
+        }
+
+        if (!limit.tryAcquire()) {
+            rejected.increment();
+            LOG.debug("Rejects request, the concurrency limit of {} is reached", limit.getLimit());
+            return reject(exchange.getResponse());
+        }
+
+        long start = System.nanoTime();
+        return chain.filter(exchange)
+                .doFinally(signal -> limit.release(System.nanoTime() - start, signal == SignalType.ON_COMPLETE));
+    }
+
+    private Mono<Void> reject(ServerHttpResponse response) {
+        response.setStatusCode(SERVICE_UNAVAILABLE);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+        return response.setComplete();
+    }
+}
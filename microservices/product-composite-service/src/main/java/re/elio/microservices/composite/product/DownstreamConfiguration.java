@@ -0,0 +1,409 @@
+package re.elio.microservices.composite.product;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.unix.DomainSocketAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import re.elio.microservices.composite.product.services.AdaptiveTimeout;
+import re.elio.microservices.composite.product.services.CoreServiceAddress;
+import re.elio.microservices.composite.product.services.DownstreamConnectionPool;
+import re.elio.microservices.composite.product.services.Hedger;
+import re.elio.microservices.composite.product.services.LatencyTracker;
+import re.elio.microservices.composite.product.services.LoadBalancer;
+import re.elio.microservices.composite.product.services.LoadBalancerExchangeFilter;
+import re.elio.microservices.composite.product.services.RequestBudget;
+import re.elio.microservices.composite.product.services.RetryPolicy;
+import re.elio.microservices.composite.product.services.RoutingClientHttpConnector;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.HttpResources;
+import reactor.netty.http.client.Http2AllocationStrategy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Per core service helpers used by the ProductCompositeIntegration when calling the core services.
+ */
+@Configuration
+public class DownstreamConfiguration {
+    private static final Logger LOG = LoggerFactory.getLogger(DownstreamConfiguration.class);
+    private static final int LATENCY_WINDOW_SIZE = 1024;
+
+    @Value("${app.timeout.percentile:0.99}")
+    double timeoutPercentile;
+    @Value("${app.timeout.factor:3}")
+    double timeoutFactor;
+    @Value("${app.timeout.floorMillis:100}")
+    long timeoutFloorMillis;
+    @Value("${app.timeout.ceilingMillis:2000}")
+    long timeoutCeilingMillis;
+    @Value("${app.timeout.minSamples:100}")
+    int timeoutMinSamples;
+    @Value("${app.timeout.maxSampleAgeSeconds:60}")
+    long timeoutMaxSampleAgeSeconds;
+    @Value("${app.retry.maxRetries:2}")
+    int retryMaxRetries;
+    @Value("${app.retry.minBackoffMillis:10}")
+    long retryMinBackoffMillis;
+    @Value("${app.retry.maxBackoffMillis:200}")
+    long retryMaxBackoffMillis;
+    @Value("${app.loadBalancer.decaySeconds:10}")
+    long loadBalancerDecaySeconds;
+    @Value("${app.loadBalancer.maxFailures:5}")
+    int loadBalancerMaxFailures;
+    @Value("${app.loadBalancer.slowFactor:3}")
+    double loadBalancerSlowFactor;
+    @Value("${app.loadBalancer.minSamples:20}")
+    int loadBalancerMinSamples;
+    @Value("${app.loadBalancer.ejectionSeconds:30}")
+    long loadBalancerEjectionSeconds;
+    @Value("${app.pool.pendingAcquireMaxCount:1000}")
+    int poolPendingAcquireMaxCount;
+    @Value("${app.pool.pendingAcquireTimeoutMillis:1000}")
+    long poolPendingAcquireTimeoutMillis;
+    @Value("${app.pool.maxIdleTimeSeconds:30}")
+    long poolMaxIdleTimeSeconds;
+    @Value("${app.pool.maxLifeTimeSeconds:300}")
+    long poolMaxLifeTimeSeconds;
+    @Value("${app.pool.evictionIntervalSeconds:15}")
+    long poolEvictionIntervalSeconds;
+    @Value("${app.pool.warmupConnections:4}")
+    int poolWarmupConnections;
+    @Value("${app.http2.enabled:false}")
+    boolean http2Enabled;
+    @Value("${app.http2.maxConnections:2}")
+    int http2MaxConnections;
+    @Value("${app.http2.maxConcurrentStreams:256}")
+    long http2MaxConcurrentStreams;
+    @Value("${app.http2.initialWindowSize:1048576}")
+    int http2InitialWindowSize;
+    @Value("${app.nativeTransport.enabled:false}")
+    boolean nativeTransport;
+
+    // Batch calls are slower than single calls, their latencies are tracked on their own to not inflate the
+    // timeouts and hedging delays of the single calls
+    @Bean
+    public LatencyTracker productLatencies() {
+        return latencyTracker();
+    }
+
+    @Bean
+    public LatencyTracker productBatchLatencies() {
+        return latencyTracker();
+    }
+
+    @Bean
+    public LatencyTracker recommendationLatencies() {
+        return latencyTracker();
+    }
+
+    @Bean
+    public LatencyTracker recommendationBatchLatencies() {
+        return latencyTracker();
+    }
+
+    @Bean
+    public LatencyTracker reviewLatencies() {
+        return latencyTracker();
+    }
+
+    @Bean
+    public LatencyTracker reviewBatchLatencies() {
+        return latencyTracker();
+    }
+
+    private LatencyTracker latencyTracker() {
+        return new LatencyTracker(LATENCY_WINDOW_SIZE, Duration.ofSeconds(timeoutMaxSampleAgeSeconds));
+    }
+
+    @Bean
+    public RequestBudget hedgeBudget(@Value("${app.hedging.budgetPercent:5}") double budgetPercent,
+                                     @Value("${app.hedging.maxBurst:10}") int maxBurst) {
+        return new RequestBudget(budgetPercent / 100, maxBurst);
+    }
+
+    @Bean
+    public Hedger recommendationHedger(@Qualifier("recommendationLatencies") LatencyTracker latencies,
+                                       @Qualifier("hedgeBudget") RequestBudget budget,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${app.recommendation-service.hedging.enabled:false}") boolean enabled,
+                                       @Value("${app.recommendation-service.hedging.percentile:0.95}") double percentile,
+                                       @Value("${app.recommendation-service.hedging.minDelayMillis:5}") long minDelayMillis,
+                                       @Value("${app.hedging.minSamples:100}") int minSamples) {
+        return new Hedger("recommendation", enabled, percentile, Duration.ofMillis(minDelayMillis), minSamples,
+                latencies, budget, Schedulers.parallel(), meterRegistry);
+    }
+
+    @Bean
+    public Hedger recommendationBatchHedger(@Qualifier("recommendationBatchLatencies") LatencyTracker latencies,
+                                            @Qualifier("hedgeBudget") RequestBudget budget,
+                                            MeterRegistry meterRegistry,
+                                            @Value("${app.recommendation-service.hedging.enabled:false}") boolean enabled,
+                                            @Value("${app.recommendation-service.hedging.percentile:0.95}") double percentile,
+                                            @Value("${app.recommendation-service.hedging.minDelayMillis:5}") long minDelayMillis,
+                                            @Value("${app.hedging.minSamples:100}") int minSamples) {
+        return new Hedger("recommendation-batch", enabled, percentile, Duration.ofMillis(minDelayMillis), minSamples,
+                latencies, budget, Schedulers.parallel(), meterRegistry);
+    }
+
+    @Bean
+    public Hedger reviewHedger(@Qualifier("reviewLatencies") LatencyTracker latencies,
+                               @Qualifier("hedgeBudget") RequestBudget budget,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.review-service.hedging.enabled:false}") boolean enabled,
+                               @Value("${app.review-service.hedging.percentile:0.95}") double percentile,
+                               @Value("${app.review-service.hedging.minDelayMillis:5}") long minDelayMillis,
+                               @Value("${app.hedging.minSamples:100}") int minSamples) {
+        return new Hedger("review", enabled, percentile, Duration.ofMillis(minDelayMillis), minSamples,
+                latencies, budget, Schedulers.parallel(), meterRegistry);
+    }
+
+    @Bean
+    public Hedger reviewBatchHedger(@Qualifier("reviewBatchLatencies") LatencyTracker latencies,
+                                    @Qualifier("hedgeBudget") RequestBudget budget,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${app.review-service.hedging.enabled:false}") boolean enabled,
+                                    @Value("${app.review-service.hedging.percentile:0.95}") double percentile,
+                                    @Value("${app.review-service.hedging.minDelayMillis:5}") long minDelayMillis,
+                                    @Value("${app.hedging.minSamples:100}") int minSamples) {
+        return new Hedger("review-batch", enabled, percentile, Duration.ofMillis(minDelayMillis), minSamples,
+                latencies, budget, Schedulers.parallel(), meterRegistry);
+    }
+
+    @Bean
+    public RequestBudget retryBudget(@Value("${app.retry.budgetPercent:10}") double budgetPercent,
+                                     @Value("${app.retry.maxBurst:10}") int maxBurst) {
+        return new RequestBudget(budgetPercent / 100, maxBurst);
+    }
+
+    @Bean
+    public RetryPolicy productRetry(@Qualifier("retryBudget") RequestBudget budget, MeterRegistry meterRegistry) {
+        return retryPolicy("product", budget, meterRegistry);
+    }
+
+    @Bean
+    public RetryPolicy recommendationRetry(@Qualifier("retryBudget") RequestBudget budget, MeterRegistry meterRegistry) {
+        return retryPolicy("recommendation", budget, meterRegistry);
+    }
+
+    @Bean
+    public RetryPolicy reviewRetry(@Qualifier("retryBudget") RequestBudget budget, MeterRegistry meterRegistry) {
+        return retryPolicy("review", budget, meterRegistry);
+    }
+
+    private RetryPolicy retryPolicy(String name, RequestBudget budget, MeterRegistry meterRegistry) {
+        return new RetryPolicy(name, retryMaxRetries, Duration.ofMillis(retryMinBackoffMillis), Duration.ofMillis(retryMaxBackoffMillis),
+                budget, Schedulers.parallel(), meterRegistry);
+    }
+
+    @Bean
+    public AdaptiveTimeout productTimeout(@Qualifier("productLatencies") LatencyTracker latencies) {
+        return adaptiveTimeout("product", latencies);
+    }
+
+    @Bean
+    public AdaptiveTimeout productBatchTimeout(@Qualifier("productBatchLatencies") LatencyTracker latencies) {
+        return adaptiveTimeout("product-batch", latencies);
+    }
+
+    @Bean
+    public AdaptiveTimeout recommendationTimeout(@Qualifier("recommendationLatencies") LatencyTracker latencies) {
+        return adaptiveTimeout("recommendation", latencies);
+    }
+
+    @Bean
+    public AdaptiveTimeout recommendationBatchTimeout(@Qualifier("recommendationBatchLatencies") LatencyTracker latencies) {
+        return adaptiveTimeout("recommendation-batch", latencies);
+    }
+
+    @Bean
+    public AdaptiveTimeout reviewTimeout(@Qualifier("reviewLatencies") LatencyTracker latencies) {
+        return adaptiveTimeout("review", latencies);
+    }
+
+    @Bean
+    public AdaptiveTimeout reviewBatchTimeout(@Qualifier("reviewBatchLatencies") LatencyTracker latencies) {
+        return adaptiveTimeout("review-batch", latencies);
+    }
+
+    private AdaptiveTimeout adaptiveTimeout(String name, LatencyTracker latencies) {
+        return new AdaptiveTimeout(name, latencies, timeoutPercentile, timeoutFactor,
+                Duration.ofMillis(timeoutFloorMillis), Duration.ofMillis(timeoutCeilingMillis), timeoutMinSamples);
+    }
+
+    /**
+     * Spreads the calls to a core service over the instances listed in its instances property, a comma separated
+     * list of host:port. Core services without instances are called on their host and port.
+     */
+    @Bean
+    public LoadBalancerExchangeFilter coreServicesLoadBalancer(MeterRegistry meterRegistry,
+                                                               @Value("${app.product-service.host}") String productServiceHost,
+                                                               @Value("${app.product-service.port}") int productServicePort,
+                                                               @Value("${app.product-service.instances:}") String productServiceInstances,
+                                                               @Value("${app.recommendation-service.host}") String recommendationServiceHost,
+                                                               @Value("${app.recommendation-service.port}") int recommendationServicePort,
+                                                               @Value("${app.recommendation-service.instances:}") String recommendationServiceInstances,
+                                                               @Value("${app.review-service.host}") String reviewServiceHost,
+                                                               @Value("${app.review-service.port}") int reviewServicePort,
+                                                               @Value("${app.review-service.instances:}") String reviewServiceInstances) {
+        Map<String, LoadBalancer> loadBalancers = new HashMap<>();
+        addLoadBalancer(loadBalancers, "product", new CoreServiceAddress("product-service", productServiceHost, productServicePort),
+                productServiceInstances, meterRegistry);
+        addLoadBalancer(loadBalancers, "recommendation", new CoreServiceAddress("recommendation-service", recommendationServiceHost, recommendationServicePort),
+                recommendationServiceInstances, meterRegistry);
+        addLoadBalancer(loadBalancers, "review", new CoreServiceAddress("review-service", reviewServiceHost, reviewServicePort),
+                reviewServiceInstances, meterRegistry);
+        return new LoadBalancerExchangeFilter(loadBalancers);
+    }
+
+    private void addLoadBalancer(Map<String, LoadBalancer> loadBalancers, String name, CoreServiceAddress address,
+                                 String instances, MeterRegistry meterRegistry) {
+        List<String> addresses = instanceAddresses(instances);
+        if (addresses.isEmpty()) return;
+        LOG.info("Load balances the calls to the {} over: {}", address.name(), addresses);
+        loadBalancers.put(URI.create(address.getUrl()).getAuthority(), new LoadBalancer(name, addresses,
+                Duration.ofSeconds(loadBalancerDecaySeconds), loadBalancerMaxFailures, loadBalancerSlowFactor,
+                loadBalancerMinSamples, Duration.ofSeconds(loadBalancerEjectionSeconds), Schedulers.parallel(), meterRegistry));
+    }
+
+    private static List<String> instanceAddresses(String instances) {
+        return Arrays.stream(instances.split(",")).map(String::trim).filter(address -> !address.isEmpty()).toList();
+    }
+
+    @Bean
+    public DownstreamConnectionPool productConnectionPool(MeterRegistry meterRegistry,
+                                                          @Value("${app.product-service.host}") String host,
+                                                          @Value("${app.product-service.port}") int port,
+                                                          @Value("${app.product-service.instances:}") String instances,
+                                                          @Value("${app.product-service.pool.maxConnections:${app.pool.maxConnections:200}}") int maxConnections) {
+        return connectionPool("product", new CoreServiceAddress("product-service", host, port), instances, maxConnections, meterRegistry);
+    }
+
+    @Bean
+    public DownstreamConnectionPool recommendationConnectionPool(MeterRegistry meterRegistry,
+                                                                 @Value("${app.recommendation-service.host}") String host,
+                                                                 @Value("${app.recommendation-service.port}") int port,
+                                                                 @Value("${app.recommendation-service.instances:}") String instances,
+                                                                 @Value("${app.recommendation-service.pool.maxConnections:${app.pool.maxConnections:200}}") int maxConnections) {
+        return connectionPool("recommendation", new CoreServiceAddress("recommendation-service", host, port), instances, maxConnections, meterRegistry);
+    }
+
+    @Bean
+    public DownstreamConnectionPool reviewConnectionPool(MeterRegistry meterRegistry,
+                                                         @Value("${app.review-service.host}") String host,
+                                                         @Value("${app.review-service.port}") int port,
+                                                         @Value("${app.review-service.instances:}") String instances,
+                                                         @Value("${app.review-service.pool.maxConnections:${app.pool.maxConnections:200}}") int maxConnections) {
+        return connectionPool("review", new CoreServiceAddress("review-service", host, port), instances, maxConnections, meterRegistry);
+    }
+
+    /**
+     * With HTTP/2 enabled the core service is called with cleartext HTTP/2 (h2c, prior knowledge) and concurrent
+     * calls are multiplexed as streams over up to app.http2.maxConnections connections per instance, else up to
+     * maxConnections HTTP/1.1 connections are used. A core service with a unix: host is called over its Unix
+     * domain socket, see {@link CoreServiceAddress}.
+     */
+    private DownstreamConnectionPool connectionPool(String name, CoreServiceAddress address, String instances,
+                                                    int maxConnections, MeterRegistry meterRegistry) {
+        ConnectionProvider.Builder connectionProvider = ConnectionProvider.builder(name)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(poolPendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(poolPendingAcquireTimeoutMillis))
+                .maxIdleTime(Duration.ofSeconds(poolMaxIdleTimeSeconds))
+                .maxLifeTime(Duration.ofSeconds(poolMaxLifeTimeSeconds))
+                .evictInBackground(Duration.ofSeconds(poolEvictionIntervalSeconds))
+                // The pools of instances no longer called, e.g. ejected or with a changed address, are disposed with their gauges
+                .disposeInactivePoolsInBackground(Duration.ofSeconds(poolEvictionIntervalSeconds), Duration.ofSeconds(poolMaxIdleTimeSeconds));
+        if (http2Enabled) {
+            connectionProvider.allocationStrategy(Http2AllocationStrategy.builder()
+                    .minConnections(1)
+                    .maxConnections(http2MaxConnections)
+                    .maxConcurrentStreams(http2MaxConcurrentStreams)
+                    .build());
+        }
+
+        UnaryOperator<HttpClient> httpClient = client -> {
+            if (http2Enabled) {
+                client = client.protocol(HttpProtocol.H2C)
+                        .http2Settings(settings -> settings
+                                .maxConcurrentStreams(http2MaxConcurrentStreams)
+                                .initialWindowSize(http2InitialWindowSize));
+            }
+            if (address.isUnixSocket()) {
+                LOG.info("Calls the {} on the Unix domain socket: {}", address.name(), address.getSocketPath());
+                // Unix domain sockets need the native transport
+                return client.runOn(HttpResources.get(), true)
+                        .remoteAddress(() -> new DomainSocketAddress(address.getSocketPath()));
+            }
+            return client.runOn(HttpResources.get(), nativeTransport);
+        };
+        // With load balanced instances the service URL itself is not called, the instances are warmed up instead
+        List<String> instanceAddresses = instanceAddresses(instances);
+        List<String> urls = instanceAddresses.isEmpty() ? List.of(address.getUrl())
+                : instanceAddresses.stream().map(instance -> "http://" + instance).toList();
+        return new DownstreamConnectionPool(name, urls, connectionProvider, httpClient, http2Enabled,
+                poolWarmupConnections, meterRegistry);
+    }
+
+    /**
+     * Connector of the WebClient used for the calls to the core services, each core service is called over its
+     * own {@link DownstreamConnectionPool}, selected by the authority of the service URL or of its load balanced
+     * instances.
+     */
+    @Bean
+    public ClientHttpConnector coreServicesConnector(@Qualifier("productConnectionPool") DownstreamConnectionPool productPool,
+                                                     @Qualifier("recommendationConnectionPool") DownstreamConnectionPool recommendationPool,
+                                                     @Qualifier("reviewConnectionPool") DownstreamConnectionPool reviewPool,
+                                                     @Value("${app.product-service.host}") String productServiceHost,
+                                                     @Value("${app.product-service.port}") int productServicePort,
+                                                     @Value("${app.product-service.instances:}") String productServiceInstances,
+                                                     @Value("${app.recommendation-service.host}") String recommendationServiceHost,
+                                                     @Value("${app.recommendation-service.port}") int recommendationServicePort,
+                                                     @Value("${app.recommendation-service.instances:}") String recommendationServiceInstances,
+                                                     @Value("${app.review-service.host}") String reviewServiceHost,
+                                                     @Value("${app.review-service.port}") int reviewServicePort,
+                                                     @Value("${app.review-service.instances:}") String reviewServiceInstances) {
+        LOG.info("Calls the core services on the {} transport", nativeTransport && LoopResources.hasNativeSupport() ? "native" : "NIO");
+        Map<String, ClientHttpConnector> connectors = new HashMap<>();
+        addConnector(connectors, productPool, new CoreServiceAddress("product-service", productServiceHost, productServicePort),
+                productServiceInstances);
+        addConnector(connectors, recommendationPool, new CoreServiceAddress("recommendation-service", recommendationServiceHost, recommendationServicePort),
+                recommendationServiceInstances);
+        addConnector(connectors, reviewPool, new CoreServiceAddress("review-service", reviewServiceHost, reviewServicePort),
+                reviewServiceInstances);
+        ClientHttpConnector defaultConnector = new ReactorClientHttpConnector(HttpClient.create().runOn(HttpResources.get(), nativeTransport));
+        return new RoutingClientHttpConnector(defaultConnector, connectors);
+    }
+
+    private void addConnector(Map<String, ClientHttpConnector> connectors, DownstreamConnectionPool pool,
+                              CoreServiceAddress address, String instances) {
+        connectors.put(URI.create(address.getUrl()).getAuthority(), pool);
+        instanceAddresses(instances).forEach(instance -> connectors.put(instance, pool));
+    }
+
+    /**
+     * Opens the connections to the core services before the first calls arrive.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmupConnectionPools(ApplicationReadyEvent event) {
+        event.getApplicationContext().getBeansOfType(DownstreamConnectionPool.class).values()
+                .forEach(pool -> pool.warmup().subscribe());
+    }
+}
@@ -0,0 +1,39 @@
+package re.elio.microservices.composite.product;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+import re.elio.microservices.composite.product.services.AdaptiveTimeout;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exposes the timeouts in effect for the calls to the core services on /actuator/downstreamtimeouts.
+ */
+@Component
+@Endpoint(id = "downstreamtimeouts")
+public class DownstreamTimeoutsEndpoint {
+    private final List<AdaptiveTimeout> timeouts;
+
+    public DownstreamTimeoutsEndpoint(List<AdaptiveTimeout> timeouts) {
+        this.timeouts = timeouts;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> timeouts() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        for (AdaptiveTimeout timeout : timeouts) {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("timeoutMillis", timeout.current().toMillis());
+            details.put("percentile", timeout.getPercentile());
+            details.put("percentileMillis", timeout.getLatencies().percentile(timeout.getPercentile()).toMillis());
+            details.put("samples", timeout.getLatencies().sampleCount());
+            details.put("floorMillis", timeout.getFloor().toMillis());
+            details.put("ceilingMillis", timeout.getCeiling().toMillis());
+            result.put(timeout.getName(), details);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,84 @@
+package re.elio.microservices.composite.product;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adaptive concurrency limit driven by the observed latency, based on the gradient algorithm
+ * of Netflix' concurrency-limits library.
+ * <p>
+ * A short and a long term average of the latency are kept. While the short term average stays
+ * within tolerance times the long term average the limit grows by its square root, as headroom
+ * for queueing. When the latency rises above that the limit shrinks by the gradient
+ * longRtt / shortRtt, down to half of the limit per sample. Changes are smoothed.
+ */
+public class GradientConcurrencyLimit {
+    private static final double SHORT_ALPHA = 2.0 / (10 + 1);
+    private static final double LONG_ALPHA = 2.0 / (600 + 1);
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+    private double shortRtt = 0;
+    private double longRtt = 0;
+
+    public GradientConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @return true if the request may proceed, it must then be followed by a call to release
+     */
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= (int) limit) return false;
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * @param latencyNanos latency of the request, used to adjust the limit
+     * @param sample       false if the request did not complete normally and its latency says nothing about the load
+     */
+    public void release(long latencyNanos, boolean sample) {
+        int inFlightBeforeRelease = inFlight.getAndDecrement();
+        if (sample) onSample(latencyNanos, inFlightBeforeRelease);
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void onSample(long latencyNanos, int inFlight) {
+        if (longRtt == 0) {
+            shortRtt = longRtt = latencyNanos;
+            return;
+        }
+        shortRtt += SHORT_ALPHA * (latencyNanos - shortRtt);
+        longRtt += LONG_ALPHA * (latencyNanos - longRtt);
+
+        // Let the long term average recover faster after a period of high latency
+        if (longRtt / shortRtt > 2) longRtt *= 0.95;
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+
+        // Don't grow a limit that isn't used
+        if (newLimit > limit && inFlight < limit / 2) return;
+
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+}
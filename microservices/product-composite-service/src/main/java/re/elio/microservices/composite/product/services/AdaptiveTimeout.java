@@ -0,0 +1,93 @@
+package re.elio.microservices.composite.product.services;
+
+import re.elio.api.exceptions.DeadlineExceededException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Timeout for calls to a core service that follows its recent latencies: a percentile of the
+ * latencies times a factor, bounded by a floor and a ceiling. The ceiling is used until enough
+ * latencies have been recorded.
+ * <p>
+ * The latencies of the calls completing within the timeout are recorded in the {@link LatencyTracker}, calls that
+ * time out are recorded with the timeout as their latency. Their real latency is at least that long, and without
+ * them the timeout could not grow again once the latencies have risen above it.
+ * <p>
+ * Calls of different sizes, e.g. single and batch calls, need their own AdaptiveTimeout and LatencyTracker.
+ */
+public class AdaptiveTimeout {
+    private final String name;
+    private final LatencyTracker latencies;
+    private final double percentile;
+    private final double factor;
+    private final Duration floor;
+    private final Duration ceiling;
+    private final int minSamples;
+
+    public AdaptiveTimeout(String name, LatencyTracker latencies, double percentile, double factor,
+                           Duration floor, Duration ceiling, int minSamples) {
+        this.name = name;
+        this.latencies = latencies;
+        this.percentile = percentile;
+        this.factor = factor;
+        this.floor = floor;
+        this.ceiling = ceiling;
+        this.minSamples = minSamples;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LatencyTracker getLatencies() {
+        return latencies;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public Duration getFloor() {
+        return floor;
+    }
+
+    public Duration getCeiling() {
+        return ceiling;
+    }
+
+    /**
+     * @return the timeout in effect right now
+     */
+    public Duration current() {
+        if (latencies.sampleCount() < minSamples) return ceiling;
+        Duration timeout = Duration.ofNanos((long) (latencies.percentile(percentile).toNanos() * factor));
+        if (timeout.compareTo(floor) < 0) return floor;
+        if (timeout.compareTo(ceiling) > 0) return ceiling;
+        return timeout;
+    }
+
+    public <T> Mono<T> apply(Mono<T> call) {
+        return Mono.defer(() -> {
+            Duration timeout = current();
+            return latencies.time(call).timeout(timeout, Mono.error(() -> timedOut(timeout)));
+        });
+    }
+
+    public <T> Flux<T> apply(Flux<T> call) {
+        return Flux.defer(() -> {
+            Duration timeout = current();
+            long expiresAtNanos = System.nanoTime() + timeout.toNanos();
+            // The timeout covers the whole response, not the time between two values
+            return latencies.time(call).timeout(Mono.delay(timeout),
+                    value -> Mono.delay(Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()))),
+                    Flux.error(() -> timedOut(timeout)));
+        });
+    }
+
+    private DeadlineExceededException timedOut(Duration timeout) {
+        latencies.record(timeout.toNanos());
+        return new DeadlineExceededException("No response from the " + name + " service within " + timeout.toMillis() + " ms");
+    }
+}
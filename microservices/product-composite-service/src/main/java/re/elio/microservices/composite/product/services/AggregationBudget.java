@@ -0,0 +1,72 @@
+package re.elio.microservices.composite.product.services;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Limits the number of elements and their estimated heap size of each list collected into a product aggregate.
+ * Each list gets a budget of its own, so that the result does not depend on which list is read first, and a request
+ * holds at most maxElements elements and maxBytes bytes per list.
+ */
+public class AggregationBudget {
+    private final int maxElements;
+    private final long maxBytes;
+
+    public AggregationBudget(int maxElements, long maxBytes) {
+        this.maxElements = maxElements;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Collects the values while the budget of the list allows, the values source is cancelled when it is exceeded.
+     *
+     * @param values        the values to collect
+     * @param sizeEstimator estimated heap size of a value, in bytes
+     * @return the collected values
+     */
+    public <T> Mono<BoundedList<T>> collect(Flux<T> values, ToLongFunction<T> sizeEstimator) {
+        return Mono.defer(() -> {
+            AtomicBoolean truncated = new AtomicBoolean();
+            return limit(values, sizeEstimator, () -> truncated.set(true))
+                    .collectList()
+                    .map(list -> new BoundedList<>(list, truncated.get()));
+        });
+    }
+
+    /**
+     * Passes the values on while the budget of the list allows, the values source is cancelled when it is exceeded.
+     *
+     * @param values        the values to pass on
+     * @param sizeEstimator estimated heap size of a value, in bytes
+     * @param onTruncated   run when the budget is exceeded
+     * @return the values within the budget
+     */
+    public <T> Flux<T> limit(Flux<T> values, ToLongFunction<T> sizeEstimator, Runnable onTruncated) {
+        return Flux.defer(() -> {
+            AtomicInteger elements = new AtomicInteger();
+            AtomicLong bytes = new AtomicLong();
+            return values.takeWhile(value -> {
+                if (elements.incrementAndGet() <= maxElements
+                        && bytes.addAndGet(sizeEstimator.applyAsLong(value)) <= maxBytes) return true;
+                onTruncated.run();
+                return false;
+            });
+        });
+    }
+
+    public record BoundedList<T>(List<T> values, boolean truncated) {
+
+        /**
+         * @return the first values, truncated if there are more than maxSize values
+         */
+        public BoundedList<T> limit(int maxSize) {
+            return values.size() <= maxSize ? this : new BoundedList<>(values.subList(0, maxSize), true);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package re.elio.microservices.composite.product.services;
+
+/**
+ * Address of a core service, from its app.*-service.host and port properties. A host like unix:/path/to/socket
+ * selects a Unix domain socket instead of TCP, the URLs of such a service use its name as host, which the
+ * {@link RoutingClientHttpConnector} routes to the socket.
+ */
+public record CoreServiceAddress(String name, String host, int port) {
+    private static final String UNIX_SCHEME = "unix:";
+
+    public boolean isUnixSocket() {
+        return host.startsWith(UNIX_SCHEME);
+    }
+
+    public String getSocketPath() {
+        return host.substring(UNIX_SCHEME.length());
+    }
+
+    public String getUrl() {
+        return isUnixSocket() ? "http://" + name : String.format("http://%s:%s", host, port);
+    }
+}
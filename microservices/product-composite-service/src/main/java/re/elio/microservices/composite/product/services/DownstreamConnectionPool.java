@@ -0,0 +1,168 @@
+package re.elio.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.http.client.reactive.ClientHttpResponse;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.util.context.Context;
+
+import java.net.SocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Connector with its own connection pool for the calls to one core service, a slow or unreachable service can
+ * only use up the connections and pending acquires of its own pool.
+ * <p>
+ * The pool is instrumented with the gauges "composite.pool.connections.active", "composite.pool.connections.idle",
+ * "composite.pool.connections.pending" and "composite.pool.connections.total" per remote address, over HTTP/2 active
+ * and pending count streams. Over HTTP/2 the gauge "composite.http2.streams.per.connection" tells how many streams
+ * share a connection. The timer "composite.pool.acquire.time" measures the time from the start of a call until
+ * it got a connection and its request is sent.
+ */
+public class DownstreamConnectionPool implements ClientHttpConnector {
+    private static final Logger LOG = LoggerFactory.getLogger(DownstreamConnectionPool.class);
+    private static final String ACQUIRE_START = DownstreamConnectionPool.class.getName() + ".acquireStart";
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(10);
+
+    private final String name;
+    private final List<String> urls;
+    private final int warmupConnections;
+    private final ConnectionProvider connectionProvider;
+    private final HttpClient httpClient;
+    private final ClientHttpConnector connector;
+
+    /**
+     * @param connectionProvider configured pool limits and eviction, the pool is named after the core service
+     * @param httpClient         protocol and transport settings, applied to the client on the pool
+     * @param http2              true if the httpClient multiplexes calls as HTTP/2 streams
+     * @param urls               of the core service, or of each of its load balanced instances, the warmup calls their health endpoints
+     * @param warmupConnections  number of concurrent calls made by {@link #warmup()}
+     */
+    public DownstreamConnectionPool(String name, List<String> urls, ConnectionProvider.Builder connectionProvider,
+                                    UnaryOperator<HttpClient> httpClient, boolean http2, int warmupConnections,
+                                    MeterRegistry meterRegistry) {
+        this.name = name;
+        this.urls = List.copyOf(urls);
+        this.warmupConnections = warmupConnections;
+        // The registrar is looked up again when a pool is disposed, it must be the one that registered the gauges
+        PoolMeters poolMeters = new PoolMeters(name, http2, meterRegistry);
+        this.connectionProvider = connectionProvider
+                .metrics(true, () -> poolMeters)
+                .build();
+
+        Timer acquireTime = Timer.builder("composite.pool.acquire.time")
+                .description("Time until a call to a core service got a connection")
+                .tag("downstream", name)
+                .register(meterRegistry);
+        this.httpClient = httpClient.apply(HttpClient.create(this.connectionProvider))
+                .doOnRequest((request, connection) -> request.currentContextView().<Long>getOrEmpty(ACQUIRE_START)
+                        .ifPresent(start -> acquireTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS)));
+        this.connector = new ReactorClientHttpConnector(this.httpClient);
+    }
+
+    @Override
+    public Mono<ClientHttpResponse> connect(HttpMethod method, URI uri, Function<? super ClientHttpRequest, Mono<Void>> requestCallback) {
+        return Mono.defer(() -> connector.connect(method, uri, requestCallback)
+                .contextWrite(Context.of(ACQUIRE_START, System.nanoTime())));
+    }
+
+    /**
+     * Opens the connections of the pool ahead of the first calls, with concurrent calls to the health endpoint
+     * of the core service, or of each of its instances. An instance that is not up yet is only logged.
+     */
+    public Mono<Void> warmup() {
+        return httpClient.warmup()
+                .thenMany(Flux.fromIterable(urls).flatMap(this::warmup))
+                .then();
+    }
+
+    private Mono<Void> warmup(String url) {
+        return Flux.range(0, warmupConnections)
+                .flatMap(i -> Mono.defer(() -> httpClient.get().uri(url + "/actuator/health").response()
+                        .contextWrite(Context.of(ACQUIRE_START, System.nanoTime()))), Math.max(1, warmupConnections))
+                .then()
+                .doOnSuccess(v -> LOG.debug("Warmed up the connection pool of the {} service to {}", name, url))
+                .onErrorResume(ex -> {
+                    LOG.warn("Failed to warm up the connection pool of the {} service to {}: {}", name, url, ex.toString());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Closes the connections of the pool and removes its gauges.
+     */
+    public void close() {
+        connectionProvider.disposeLater().block(CLOSE_TIMEOUT);
+    }
+
+    /**
+     * Registers the gauges of each pool to a remote address, and removes them when the pool is disposed, e.g. when
+     * an instance is ejected or its address changed. Reactor Netty hands over a new wrapper of the pool metrics that
+     * nothing else refers to, so the gauges hold it with a strong reference.
+     */
+    private static class PoolMeters implements ConnectionProvider.MeterRegistrar {
+        private final String name;
+        private final boolean http2;
+        private final MeterRegistry meterRegistry;
+        private final Map<String, List<Meter>> meters = new ConcurrentHashMap<>();
+
+        PoolMeters(String name, boolean http2, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.http2 = http2;
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+            String address = remoteAddress.toString();
+            List<Meter> poolMeters = new ArrayList<>();
+            poolMeters.add(gauge("composite.pool.connections.active", address, metrics, m -> m.acquiredSize()));
+            poolMeters.add(gauge("composite.pool.connections.idle", address, metrics, m -> m.idleSize()));
+            poolMeters.add(gauge("composite.pool.connections.pending", address, metrics, m -> m.pendingAcquireSize()));
+            poolMeters.add(gauge("composite.pool.connections.total", address, metrics, m -> m.allocatedSize()));
+            if (http2) {
+                poolMeters.add(gauge("composite.http2.streams.per.connection", address, metrics,
+                        m -> (double) m.acquiredSize() / Math.max(1, m.allocatedSize())));
+            }
+            meters.put(key(poolName, id, remoteAddress), poolMeters);
+        }
+
+        @Override
+        public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+            List<Meter> poolMeters = meters.remove(key(poolName, id, remoteAddress));
+            if (poolMeters != null) poolMeters.forEach(meterRegistry::remove);
+        }
+
+        private Gauge gauge(String gaugeName, String address, ConnectionPoolMetrics metrics, ToDoubleFunction<ConnectionPoolMetrics> value) {
+            return Gauge.builder(gaugeName, metrics, value)
+                    .tag("downstream", name).tag("remoteAddress", address)
+                    .strongReference(true)
+                    .register(meterRegistry);
+        }
+
+        private static String key(String poolName, String id, SocketAddress remoteAddress) {
+            return poolName + "/" + id + "/" + remoteAddress;
+        }
+    }
+}
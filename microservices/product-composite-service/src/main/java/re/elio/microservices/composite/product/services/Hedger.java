@@ -0,0 +1,111 @@
+package re.elio.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hedges calls to a core service: if a call has not answered within a percentile of the
+ * recent latencies, as recorded by the {@link AdaptiveTimeout} of the core service, the same
+ * call is sent once more, to another instance if the core service is load balanced, and
+ * whichever answers first is used. The other call is cancelled. An error only answers once
+ * the other call has failed too, a fast error of one call must not cancel the other.
+ * Each hedge withdraws a token from a {@link RequestBudget} shared by all downstreams, no
+ * hedge is sent when the budget is exhausted.
+ * <p>
+ * Hedges are counted in "composite.hedge.fired" and hedges that answered first with an
+ * element in "composite.hedge.won".
+ */
+public class Hedger {
+    private static final Logger LOG = LoggerFactory.getLogger(Hedger.class);
+
+    private final String name;
+    private final boolean enabled;
+    private final double percentile;
+    private final Duration minDelay;
+    private final int minSamples;
+    private final LatencyTracker latencies;
+    private final RequestBudget budget;
+    private final Scheduler scheduler;
+    private final Counter fired;
+    private final Counter won;
+
+    public Hedger(String name, boolean enabled, double percentile, Duration minDelay, int minSamples,
+                  LatencyTracker latencies, RequestBudget budget, Scheduler scheduler, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelay = minDelay;
+        this.minSamples = minSamples;
+        this.latencies = latencies;
+        this.budget = budget;
+        this.scheduler = scheduler;
+        this.fired = Counter.builder("composite.hedge.fired")
+                .description("Number of hedged calls sent to a core service")
+                .tag("downstream", name)
+                .register(meterRegistry);
+        this.won = Counter.builder("composite.hedge.won")
+                .description("Number of hedged calls that answered before the original call")
+                .tag("downstream", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param call creates a new call to the core service each time it is invoked
+     * @return the result of the call that answers first
+     */
+    public <T> Flux<T> hedge(Supplier<Flux<T>> call) {
+        if (!enabled) return Flux.defer(call);
+
+        return Flux.defer(() -> {
+            budget.deposit();
+            // Too few samples to tell a slow call from a normal one
+            if (latencies.sampleCount() < minSamples) return call.get();
+
+            Duration delay = latencies.percentile(percentile);
+            if (delay.compareTo(minDelay) < 0) delay = minDelay;
+
+            AtomicBoolean answered = new AtomicBoolean();
+            AtomicInteger running = new AtomicInteger(1);
+            LoadBalancer.Attempts attempts = new LoadBalancer.Attempts();
+            Flux<T> primary = failLast(call.get(), running)
+                    .doOnNext(value -> answered.set(true))
+                    .doOnComplete(() -> answered.set(true))
+                    .contextWrite(context -> context.put(LoadBalancer.Attempts.class, attempts));
+            Flux<T> hedged = Mono.delay(delay, scheduler)
+                    .flatMapMany(tick -> {
+                        if (answered.get() || !budget.tryWithdraw()) return Flux.<T>never();
+                        LOG.debug("Sends a hedged call to {}", name);
+                        fired.increment();
+                        running.incrementAndGet();
+                        return failLast(call.get(), running)
+                                .doOnNext(value -> {
+                                    if (answered.compareAndSet(false, true)) won.increment();
+                                })
+                                .doOnComplete(() -> answered.set(true))
+                                .contextWrite(context -> context.put(LoadBalancer.Attempts.class, attempts));
+                    });
+            return Flux.firstWithSignal(primary, hedged);
+        });
+    }
+
+    /**
+     * @return the call, that fails only if it already emitted or if no other call is running, it waits for the
+     * other call otherwise
+     */
+    private static <T> Flux<T> failLast(Flux<T> call, AtomicInteger running) {
+        AtomicBoolean emitted = new AtomicBoolean();
+        return call
+                .doOnNext(value -> emitted.set(true))
+                .onErrorResume(ex -> emitted.get() || running.decrementAndGet() == 0 ? Flux.error(ex) : Flux.never());
+    }
+}
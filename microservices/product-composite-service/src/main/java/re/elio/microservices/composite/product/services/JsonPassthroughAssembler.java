@@ -0,0 +1,140 @@
+package re.elio.microservices.composite.product.services;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.stereotype.Component;
+import re.elio.api.composite.product.ProductAggregate;
+import re.elio.api.core.Cursor;
+import re.elio.api.core.product.Product;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Assembles the JSON of a product aggregate from the raw JSON responses of the recommendation and review
+ * services, without binding them to objects. The recommendations and reviews are copied token by token into
+ * the response, leaving out their productId and serviceAddress fields, which turns them into the
+ * RecommendationSummary and ReviewSummary JSON of the ProductAggregate.
+ */
+@Component
+public class JsonPassthroughAssembler {
+    private final ObjectMapper objectMapper;
+    private final JsonFactory jsonFactory;
+
+    public JsonPassthroughAssembler(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * The recommendations and reviews buffers are released.
+     *
+     * @param product         the product
+     * @param recommendations JSON array of recommendations, ordered by recommendationId
+     * @param reviews         JSON array of reviews, ordered by reviewId
+     * @param pageSize        max number of recommendations and reviews to include, more elements mark the list as truncated
+     * @param serviceAddress  address of the composite service
+     * @return the JSON of the product aggregate
+     */
+    public DataBuffer assemble(Product product, DataBuffer recommendations, DataBuffer reviews, int pageSize, String serviceAddress) {
+        DataBuffer result = DefaultDataBufferFactory.sharedInstance.allocateBuffer(
+                recommendations.readableByteCount() + reviews.readableByteCount() + 512);
+        try (JsonGenerator generator = jsonFactory.createGenerator(result.asOutputStream())) {
+            generator.writeStartObject();
+            generator.writeNumberField("productId", product.getProductId());
+            generator.writeStringField("name", product.getName());
+            generator.writeNumberField("weight", product.getWeight());
+
+            generator.writeFieldName("recommendations");
+            CopiedPage recommendationsPage = copySummaries(recommendations, generator, "recommendationId", pageSize);
+            generator.writeFieldName("reviews");
+            CopiedPage reviewsPage = copySummaries(reviews, generator, "reviewId", pageSize);
+
+            generator.writeObjectFieldStart("serviceAddresses");
+            generator.writeStringField("cmp", serviceAddress);
+            generator.writeStringField("pro", product.getServiceAddress());
+            generator.writeStringField("rev", reviewsPage.serviceAddress());
+            generator.writeStringField("rec", recommendationsPage.serviceAddress());
+            generator.writeEndObject();
+
+            writePageInfo(generator, "recommendationsPage", product.getProductId(), recommendationsPage);
+            writePageInfo(generator, "reviewsPage", product.getProductId(), reviewsPage);
+            generator.writeEndObject();
+        } catch (IOException ex) {
+            DataBufferUtils.release(result);
+            throw new UncheckedIOException(ex);
+        } finally {
+            DataBufferUtils.release(recommendations);
+            DataBufferUtils.release(reviews);
+        }
+        return result;
+    }
+
+    /**
+     * @return the JSON of a product aggregate that was read into objects
+     */
+    public DataBuffer write(ProductAggregate aggregate) {
+        try {
+            return DefaultDataBufferFactory.sharedInstance.wrap(objectMapper.writeValueAsBytes(aggregate));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private CopiedPage copySummaries(DataBuffer source, JsonGenerator generator, String idField, int pageSize) throws IOException {
+        int count = 0;
+        int lastId = 0;
+        boolean truncated = false;
+        String serviceAddress = null;
+
+        generator.writeStartArray();
+        try (JsonParser parser = jsonFactory.createParser(source.asInputStream())) {
+            if (parser.nextToken() == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    if (count == pageSize) {
+                        truncated = true;
+                        break;
+                    }
+                    generator.writeStartObject();
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.currentName();
+                        parser.nextToken();
+                        switch (name) {
+                            case "productId" -> parser.skipChildren();
+                            case "serviceAddress" -> {
+                                if (serviceAddress == null) serviceAddress = parser.getValueAsString();
+                            }
+                            default -> {
+                                if (name.equals(idField)) lastId = parser.getIntValue();
+                                generator.writeFieldName(name);
+                                generator.copyCurrentStructure(parser);
+                            }
+                        }
+                    }
+                    generator.writeEndObject();
+                    count++;
+                }
+            }
+        }
+        generator.writeEndArray();
+        return new CopiedPage(count, truncated, lastId, serviceAddress == null ? "" : serviceAddress);
+    }
+
+    private void writePageInfo(JsonGenerator generator, String fieldName, int productId, CopiedPage page) throws IOException {
+        generator.writeObjectFieldStart(fieldName);
+        generator.writeNumberField("count", page.count());
+        generator.writeBooleanField("truncated", page.truncated());
+        if (page.truncated()) generator.writeStringField("nextCursor", new Cursor(productId, page.lastId()).encode());
+        else generator.writeNullField("nextCursor");
+        generator.writeEndObject();
+    }
+
+    private record CopiedPage(int count, boolean truncated, int lastId, String serviceAddress) {
+    }
+}
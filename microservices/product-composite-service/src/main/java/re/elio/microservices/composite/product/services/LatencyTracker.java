@@ -0,0 +1,98 @@
+package re.elio.microservices.composite.product.services;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Rolling window of the latest call latencies to a core service, used to derive
+ * latency percentiles. Percentiles are recomputed at most every 100 ms.
+ * <p>
+ * Latencies older than the max age are left out, so that the percentiles follow a change of the latencies
+ * even when few calls are recorded.
+ */
+public class LatencyTracker {
+    private static final long RECOMPUTE_INTERVAL_NANOS = Duration.ofMillis(100).toNanos();
+
+    private final long[] window;
+    private final long[] recordedAtNanos;
+    private final long maxAgeNanos;
+    private int count = 0;
+    private int next = 0;
+
+    private volatile long[] sorted = new long[0];
+    private volatile long sortedAtNanos = System.nanoTime() - RECOMPUTE_INTERVAL_NANOS - 1;
+
+    public LatencyTracker(int windowSize) {
+        this(windowSize, Duration.ofSeconds(60));
+    }
+
+    public LatencyTracker(int windowSize, Duration maxAge) {
+        this.window = new long[windowSize];
+        this.recordedAtNanos = new long[windowSize];
+        this.maxAgeNanos = maxAge.toNanos();
+    }
+
+    public synchronized void record(long latencyNanos) {
+        window[next] = latencyNanos;
+        recordedAtNanos[next] = System.nanoTime();
+        next = (next + 1) % window.length;
+        if (count < window.length) count++;
+    }
+
+    public int sampleCount() {
+        return sorted().length;
+    }
+
+    /**
+     * @param quantile e.g. 0.99 for the 99th percentile
+     * @return the latency percentile of the window, zero if no calls have been recorded
+     */
+    public Duration percentile(double quantile) {
+        long[] samples = sorted();
+        if (samples.length == 0) return Duration.ZERO;
+        int index = (int) Math.ceil(quantile * samples.length) - 1;
+        return Duration.ofNanos(samples[Math.max(0, Math.min(index, samples.length - 1))]);
+    }
+
+    /**
+     * Records the latency of each successfully completed subscription.
+     */
+    public <T> Mono<T> time(Mono<T> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call.doOnSuccess(result -> record(System.nanoTime() - start));
+        });
+    }
+
+    /**
+     * Records the latency of each successfully completed subscription.
+     */
+    public <T> Flux<T> time(Flux<T> call) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            return call.doOnComplete(() -> record(System.nanoTime() - start));
+        });
+    }
+
+    private long[] sorted() {
+        long now = System.nanoTime();
+        if (now - sortedAtNanos > RECOMPUTE_INTERVAL_NANOS) {
+            long[] copy;
+            int recent = 0;
+            synchronized (this) {
+                copy = new long[count];
+                for (int i = 0; i < count; i++) {
+                    if (now - recordedAtNanos[i] <= maxAgeNanos) copy[recent++] = window[i];
+                }
+            }
+            copy = Arrays.copyOf(copy, recent);
+            Arrays.sort(copy);
+            sorted = copy;
+            sortedAtNanos = now;
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,82 @@
+package re.elio.microservices.composite.product.services;
+
+import org.springframework.messaging.rsocket.RSocketRequester;
+import re.elio.util.rsocket.RSocketDeadlines;
+import re.elio.util.rsocket.RSocketErrors;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Sends the RSocket requests to a core service to the instance chosen by its {@link LoadBalancer}, or to its host
+ * if it has no load balancer. Each instance is called over one multiplexed connection, on the RSocket port of the
+ * core service, that is opened on its first request. The deadline of the caller is sent along, see {@link RSocketDeadlines}.
+ * <p>
+ * As for HTTP calls, the latency until the first element or the end of the response is reported back to the load
+ * balancer, calls cancelled or timed out before are reported without their latency. Lost connections and errors of the responder count as failures, see {@link RetryPolicy#isRSocketServerError},
+ * the application defined error codes of {@link RSocketErrors} do not. Errors are returned as api exceptions where possible.
+ */
+public class LoadBalancedRSocketRequester {
+    private final RSocketRequester.Builder builder;
+    private final String host;
+    private final int port;
+    private final Optional<LoadBalancer> loadBalancer;
+    private final Map<String, RSocketRequester> requesters = new ConcurrentHashMap<>();
+
+    public LoadBalancedRSocketRequester(RSocketRequester.Builder builder, String host, int port, Optional<LoadBalancer> loadBalancer) {
+        this.builder = builder;
+        this.host = host;
+        this.port = port;
+        this.loadBalancer = loadBalancer;
+    }
+
+    public <T> Mono<T> requestResponse(String route, Object data, Class<T> type) {
+        return Mono.from(call(requester -> RSocketDeadlines.requestResponse(requester, route, data, type).flux()));
+    }
+
+    public <T> Flux<T> requestStream(String route, Object data, Class<T> type) {
+        return call(requester -> RSocketDeadlines.requestStream(requester, route, data, type));
+    }
+
+    private <T> Flux<T> call(Function<RSocketRequester, Flux<T>> request) {
+        if (loadBalancer.isEmpty()) {
+            return request.apply(requester(host)).onErrorMap(RSocketErrors::fromRSocketException);
+        }
+        return Flux.deferContextual(context -> {
+            LoadBalancer.Instance instance = loadBalancer.get().choose(context.getOrDefault(LoadBalancer.Attempts.class, null));
+            long start = System.nanoTime();
+            // A call is reported once, whether it ends with an element, an error or is cancelled
+            AtomicBoolean completed = new AtomicBoolean();
+            return request.apply(requester(instance.getHost()))
+                    .doOnNext(value -> complete(instance, start, completed, false))
+                    .doOnComplete(() -> complete(instance, start, completed, false))
+                    .doOnError(ex -> {
+                        if (LoadBalancerExchangeFilter.isTimeout(ex)) cancel(instance, completed);
+                        else complete(instance, start, completed, RetryPolicy.isRSocketServerError(ex));
+                    })
+                    .doOnCancel(() -> cancel(instance, completed))
+                    .onErrorMap(RSocketErrors::fromRSocketException);
+        });
+    }
+
+    private RSocketRequester requester(String instanceHost) {
+        return requesters.computeIfAbsent(instanceHost, h -> builder.tcp(h, port));
+    }
+
+    private void complete(LoadBalancer.Instance instance, long start, AtomicBoolean completed, boolean failed) {
+        if (completed.compareAndSet(false, true)) {
+            loadBalancer.get().complete(instance, System.nanoTime() - start, failed);
+        }
+    }
+
+    private void cancel(LoadBalancer.Instance instance, AtomicBoolean completed) {
+        if (completed.compareAndSet(false, true)) {
+            loadBalancer.get().cancel(instance);
+        }
+    }
+}
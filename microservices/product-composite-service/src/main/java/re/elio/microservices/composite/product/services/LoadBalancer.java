@@ -0,0 +1,341 @@
+package re.elio.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.scheduler.Scheduler;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side load balancer over the instances of a core service. Each call goes to the better of two randomly
+ * picked instances (power of two choices), the one with the lower moving average of its latency weighted by its
+ * in-flight calls. The average follows a slower call at once and decays towards faster calls with time, recent
+ * latencies weigh more than older ones (peak EWMA). The average of an instance without calls in flight decays with
+ * the time it is idle, so that an instance avoided after a slow call gets calls again to measure it anew.
+ * Calls given up before the instance answered, cancelled or timed out, are not measured.
+ * <p>
+ * An instance that fails maxFailures calls in a row is ejected for the ejection time, as long as another instance
+ * is left. So is an instance whose plain moving average of its latency, over at least minSamples calls, is
+ * slowFactor times that of the fastest other instance, a single slow call, e.g. in a GC pause, doesn't eject it.
+ * Ejected instances come back with the median latency of the other instances, not as the fastest one.
+ * <p>
+ * Calls per instance are counted in "composite.loadbalancer.calls", ejections in "composite.loadbalancer.ejections",
+ * and "composite.loadbalancer.traffic.share" gives each instance's share of the recent calls.
+ */
+public class LoadBalancer {
+    private static final Logger LOG = LoggerFactory.getLogger(LoadBalancer.class);
+
+    private final String name;
+    private final List<Instance> instances;
+    private final long decayNanos;
+    private final int maxFailures;
+    private final double slowFactor;
+    private final int minSamples;
+    private final long ejectionNanos;
+    private final Scheduler scheduler;
+
+    /**
+     * @param addresses host:port of each instance
+     */
+    public LoadBalancer(String name, List<String> addresses, Duration decay, int maxFailures, double slowFactor,
+                        int minSamples, Duration ejectionTime, Scheduler scheduler, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.decayNanos = decay.toNanos();
+        this.maxFailures = maxFailures;
+        this.slowFactor = slowFactor;
+        this.minSamples = minSamples;
+        this.ejectionNanos = ejectionTime.toNanos();
+        this.scheduler = scheduler;
+        this.instances = addresses.stream()
+                .map(address -> new Instance(address.trim(), meterRegistry))
+                .toList();
+        if (instances.isEmpty()) throw new IllegalArgumentException("No instances given for " + name);
+    }
+
+    /**
+     * Picks the instance for a call, the call must be reported with {@link #complete} or {@link #cancel}.
+     */
+    public Instance choose() {
+        return choose(null);
+    }
+
+    /**
+     * Picks the instance for an attempt of a call, avoiding the instances of its earlier attempts as long as
+     * another instance is left, and adds it to the attempts.
+     *
+     * @param attempts the attempts of the call, or null
+     */
+    public Instance choose(Attempts attempts) {
+        long now = now();
+        for (Instance instance : instances) {
+            if (instance.rejoin(now)) instance.restart(medianLatency(instance, now), now);
+        }
+        List<Instance> available = instances.stream().filter(instance -> !instance.isEjected(now)).toList();
+        if (available.isEmpty()) available = instances;
+        if (attempts != null) {
+            List<Instance> notAttempted = available.stream().filter(instance -> !attempts.contains(instance)).toList();
+            if (!notAttempted.isEmpty()) available = notAttempted;
+        }
+
+        Instance chosen;
+        if (available.size() == 1) {
+            chosen = available.get(0);
+        } else {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(available.size());
+            int second = random.nextInt(available.size() - 1);
+            if (second >= first) second++;
+            Instance a = available.get(first);
+            Instance b = available.get(second);
+            chosen = isBetter(a, b, now) ? a : b;
+        }
+        chosen.start(now);
+        if (attempts != null) attempts.add(chosen);
+        return chosen;
+    }
+
+    private static boolean isBetter(Instance a, Instance b, long now) {
+        double costA = a.cost(now);
+        double costB = b.cost(now);
+        // Instances without latencies yet cost nothing, the one with fewer calls in flight gets the next of equal ones
+        return costA < costB || (costA == costB && a.inFlight() <= b.inFlight());
+    }
+
+    /**
+     * @param latencyNanos time until the instance answered
+     * @param failed       true for connection errors and 5xx responses
+     */
+    public void complete(Instance instance, long latencyNanos, boolean failed) {
+        long now = now();
+        instance.end(now, latencyNanos, failed);
+        if (failed ? instance.failures() >= maxFailures : isSlow(instance, now)) eject(instance, now);
+    }
+
+    /**
+     * Reports a call given up before the instance answered, e.g. cancelled after a hedged call won or timed out.
+     * How long the instance would have taken is not known, the call is not measured.
+     */
+    public void cancel(Instance instance) {
+        instance.cancel();
+    }
+
+    private boolean isSlow(Instance instance, long now) {
+        if (instance.samples() < minSamples) return false;
+        double latency = instance.averageLatency();
+        double fastest = instances.stream()
+                .filter(other -> other != instance && !other.isEjected(now) && other.samples() >= minSamples)
+                .mapToDouble(Instance::averageLatency)
+                .min().orElse(0);
+        return fastest > 0 && latency > slowFactor * fastest;
+    }
+
+    /**
+     * @return the median latency of the other available instances, 0 if none of them is measured yet
+     */
+    private double medianLatency(Instance instance, long now) {
+        double[] latencies = instances.stream()
+                .filter(other -> other != instance && !other.isEjected(now) && other.isMeasured())
+                .mapToDouble(other -> other.latency(now))
+                .sorted()
+                .toArray();
+        if (latencies.length == 0) return 0;
+        int middle = latencies.length / 2;
+        return latencies.length % 2 == 1 ? latencies[middle] : (latencies[middle - 1] + latencies[middle]) / 2;
+    }
+
+    private void eject(Instance instance, long now) {
+        boolean othersLeft = instances.stream().anyMatch(other -> other != instance && !other.isEjected(now));
+        if (!othersLeft || !instance.eject(now + ejectionNanos)) return;
+        LOG.warn("Ejects instance {} of {} for {} ms", instance.getAddress(), name, TimeUnit.NANOSECONDS.toMillis(ejectionNanos));
+        instance.ejections.increment();
+    }
+
+    private double totalRate(long now) {
+        return instances.stream().mapToDouble(instance -> instance.rate(now)).sum();
+    }
+
+    private long now() {
+        return scheduler.now(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The instances chosen for the attempts of one call, e.g. the original and the hedged call, passed to the
+     * load balancer in the Reactor context of the attempts.
+     */
+    public static class Attempts {
+        private final Set<Instance> instances = ConcurrentHashMap.newKeySet();
+
+        private boolean contains(Instance instance) {
+            return instances.contains(instance);
+        }
+
+        private void add(Instance instance) {
+            instances.add(instance);
+        }
+    }
+
+    public class Instance {
+        private final String address;
+        private final String host;
+        private final int port;
+        private final Counter calls;
+        private final Counter ejections;
+        private int inFlight;
+        private boolean measured;
+        private double latencyEwma;
+        private long latencyUpdated;
+        private double averageLatency;
+        private int samples;
+        private int consecutiveFailures;
+        private long ejectedUntil;
+        private double rate;
+        private long rateUpdated;
+
+        private Instance(String address, MeterRegistry meterRegistry) {
+            int separator = address.lastIndexOf(':');
+            if (separator < 0) throw new IllegalArgumentException("Invalid instance address: " + address + ", expected host:port");
+            this.address = address;
+            this.host = address.substring(0, separator);
+            this.port = Integer.parseInt(address.substring(separator + 1));
+            this.calls = Counter.builder("composite.loadbalancer.calls")
+                    .description("Number of calls sent to an instance of a core service")
+                    .tag("downstream", name).tag("instance", address)
+                    .register(meterRegistry);
+            this.ejections = Counter.builder("composite.loadbalancer.ejections")
+                    .description("Number of times an instance of a core service was ejected as an outlier")
+                    .tag("downstream", name).tag("instance", address)
+                    .register(meterRegistry);
+            Gauge.builder("composite.loadbalancer.traffic.share", this, instance -> {
+                        long now = now();
+                        double total = totalRate(now);
+                        return total == 0 ? 0 : instance.rate(now) / total;
+                    })
+                    .description("Share of the recent calls to a core service sent to the instance")
+                    .tag("downstream", name).tag("instance", address)
+                    .strongReference(true)
+                    .register(meterRegistry);
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * @return the uri, sent to this instance
+         */
+        public URI resolve(URI uri) {
+            return UriComponentsBuilder.fromUri(uri).host(host).port(port).build(true).toUri();
+        }
+
+        private synchronized void start(long now) {
+            inFlight++;
+            rate = decayed(rate, rateUpdated, now) + 1;
+            rateUpdated = now;
+            calls.increment();
+        }
+
+        private synchronized void end(long now, long latencyNanos, boolean failed) {
+            inFlight--;
+            consecutiveFailures = failed ? consecutiveFailures + 1 : 0;
+            double weight = Math.exp(-(double) (now - latencyUpdated) / decayNanos);
+            averageLatency = samples == 0 ? latencyNanos : averageLatency * weight + latencyNanos * (1 - weight);
+            samples++;
+            if (!measured || latencyNanos > latencyEwma) {
+                // A slower call is taken at once, faster calls bring the latency down as the average decays
+                measured = true;
+                latencyEwma = latencyNanos;
+            } else {
+                latencyEwma = latencyEwma * weight + latencyNanos * (1 - weight);
+            }
+            latencyUpdated = now;
+        }
+
+        private synchronized void cancel() {
+            inFlight--;
+        }
+
+        private synchronized double cost(long now) {
+            return latency(now) * (inFlight + 1);
+        }
+
+        private synchronized int inFlight() {
+            return inFlight;
+        }
+
+        /**
+         * @return the peak EWMA, decayed by the time the instance has been idle
+         */
+        private synchronized double latency(long now) {
+            return inFlight > 0 ? latencyEwma : decayed(latencyEwma, latencyUpdated, now);
+        }
+
+        private synchronized boolean isMeasured() {
+            return measured;
+        }
+
+        private synchronized double averageLatency() {
+            return averageLatency;
+        }
+
+        private synchronized int samples() {
+            return samples;
+        }
+
+        private synchronized int failures() {
+            return consecutiveFailures;
+        }
+
+        private synchronized double rate(long now) {
+            return decayed(rate, rateUpdated, now);
+        }
+
+        private synchronized boolean isEjected(long now) {
+            return ejectedUntil != 0 && now < ejectedUntil;
+        }
+
+        /**
+         * @return true once the ejection time is over
+         */
+        private synchronized boolean rejoin(long now) {
+            if (ejectedUntil == 0 || now < ejectedUntil) return false;
+            ejectedUntil = 0;
+            return true;
+        }
+
+        /**
+         * Back from ejection, the latency is measured anew, starting from the given latency
+         */
+        private synchronized void restart(double latency, long now) {
+            consecutiveFailures = 0;
+            measured = latency > 0;
+            latencyEwma = latency;
+            latencyUpdated = now;
+            averageLatency = 0;
+            samples = 0;
+        }
+
+        private synchronized boolean eject(long until) {
+            if (ejectedUntil != 0) return false;
+            ejectedUntil = until;
+            return true;
+        }
+
+        private double decayed(double value, long updated, long now) {
+            return value * Math.exp(-(double) (now - updated) / decayNanos);
+        }
+    }
+}
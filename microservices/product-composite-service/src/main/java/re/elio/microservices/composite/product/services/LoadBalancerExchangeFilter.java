@@ -0,0 +1,75 @@
+package re.elio.microservices.composite.product.services;
+
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import re.elio.api.exceptions.DeadlineExceededException;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends the calls to a core service to the instance chosen by its {@link LoadBalancer}, selected by the authority
+ * of the request URL. The latency until the response headers arrive is reported back to the load balancer,
+ * 5xx responses and connection errors count as failures. Calls cancelled or timed out before the response
+ * are reported without their latency. An attempt of a call, e.g. a hedged call, avoids the instances of the earlier
+ * attempts given as {@link LoadBalancer.Attempts} in its context. Calls to other URLs are passed on unchanged.
+ */
+public class LoadBalancerExchangeFilter implements ExchangeFilterFunction {
+    private final Map<String, LoadBalancer> loadBalancers;
+
+    public LoadBalancerExchangeFilter(Map<String, LoadBalancer> loadBalancers) {
+        this.loadBalancers = Map.copyOf(loadBalancers);
+    }
+
+    /**
+     * @return the load balancer of the core service with the authority, host:port, of its URL
+     */
+    public Optional<LoadBalancer> loadBalancer(String authority) {
+        return Optional.ofNullable(loadBalancers.get(authority));
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        LoadBalancer loadBalancer = loadBalancers.get(request.url().getAuthority());
+        if (loadBalancer == null) return next.exchange(request);
+
+        return Mono.deferContextual(context -> {
+            LoadBalancer.Instance instance = loadBalancer.choose(context.getOrDefault(LoadBalancer.Attempts.class, null));
+            long start = System.nanoTime();
+            // A call is reported once, whether it ends with a response, an error or is cancelled
+            AtomicBoolean completed = new AtomicBoolean();
+            return next.exchange(ClientRequest.from(request).url(instance.resolve(request.url())).build())
+                    .doOnNext(response -> complete(loadBalancer, instance, start, completed, response.statusCode().is5xxServerError()))
+                    .doOnError(ex -> {
+                        if (isTimeout(ex)) cancel(loadBalancer, instance, completed);
+                        else complete(loadBalancer, instance, start, completed, true);
+                    })
+                    .doOnCancel(() -> cancel(loadBalancer, instance, completed));
+        });
+    }
+
+    /**
+     * @return true for the errors of a call given up by the caller, not by the instance
+     */
+    static boolean isTimeout(Throwable ex) {
+        return ex instanceof TimeoutException || ex instanceof DeadlineExceededException
+                || ex.getCause() instanceof io.netty.handler.timeout.TimeoutException;
+    }
+
+    private void complete(LoadBalancer loadBalancer, LoadBalancer.Instance instance, long start, AtomicBoolean completed, boolean failed) {
+        if (completed.compareAndSet(false, true)) {
+            loadBalancer.complete(instance, System.nanoTime() - start, failed);
+        }
+    }
+
+    private void cancel(LoadBalancer loadBalancer, LoadBalancer.Instance instance, AtomicBoolean completed) {
+        if (completed.compareAndSet(false, true)) {
+            loadBalancer.cancel(instance);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package re.elio.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import re.elio.util.http.Deadline;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Collects single-key lookups arriving within a short window, DataLoader style, and sends
+ * them downstream as one batch call. The batch is sent when the window expires or when it
+ * holds maxBatchSize keys, whichever comes first. The results are grouped per key and handed
+ * back to the waiting subscribers. A batch call is cancelled when all of its subscribers
+ * have cancelled and is given the latest {@link Deadline} of its subscribers. The ETags of the batch
+ * response are added to the {@link VersionTags} of each subscriber, to revalidate it later.
+ * <p>
+ * The achieved batch sizes are recorded in the "composite.batch.size" histogram.
+ *
+ * @param <K> type of the key, e.g. a productId
+ * @param <V> type of the values returned by the batch call
+ */
+public class MicroBatcher<K, V> {
+    private static final Logger LOG = LoggerFactory.getLogger(MicroBatcher.class);
+
+    private final String name;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final Function<List<K>, Flux<V>> batchCall;
+    private final Function<V, K> keyExtractor;
+    private final Scheduler scheduler;
+    private final DistributionSummary batchSizes;
+
+    private Map<K, List<Waiter<V>>> pending = new LinkedHashMap<>();
+    private Disposable scheduledFlush;
+
+    public MicroBatcher(String name, Duration window, int maxBatchSize,
+                        Function<List<K>, Flux<V>> batchCall, Function<V, K> keyExtractor,
+                        Scheduler scheduler, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.batchCall = batchCall;
+        this.keyExtractor = keyExtractor;
+        this.scheduler = scheduler;
+        this.batchSizes = DistributionSummary.builder("composite.batch.size")
+                .description("Number of keys per batch call to a core service")
+                .tag("downstream", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the values of the key, empty if the batch call returned none
+     */
+    public Flux<V> load(K key) {
+        return Mono.<List<V>>create(sink -> {
+                    Waiter<V> waiter = new Waiter<>(sink);
+                    sink.onCancel(() -> cancel(key, waiter));
+                    enqueue(key, waiter);
+                })
+                .flatMapIterable(values -> values);
+    }
+
+    private void enqueue(K key, Waiter<V> waiter) {
+        Batch<K, V> batch = null;
+        synchronized (this) {
+            pending.computeIfAbsent(key, k -> new ArrayList<>()).add(waiter);
+            if (pending.size() >= maxBatchSize) {
+                batch = takePending(true);
+            } else if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flushOnTimer, window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        if (batch != null) dispatch(batch);
+    }
+
+    private void cancel(K key, Waiter<V> waiter) {
+        InFlightBatch inFlight;
+        synchronized (this) {
+            inFlight = waiter.batch;
+            if (inFlight == null) {
+                List<Waiter<V>> waiters = pending.get(key);
+                if (waiters != null && waiters.remove(waiter) && waiters.isEmpty()) pending.remove(key);
+                return;
+            }
+        }
+        inFlight.leave();
+    }
+
+    private void flushOnTimer() {
+        Batch<K, V> batch;
+        synchronized (this) {
+            batch = takePending(false);
+        }
+        if (!batch.waiters().isEmpty()) dispatch(batch);
+    }
+
+    /**
+     * Takes the pending waiters into a batch, their in-flight batch is set under the same lock, so that a waiter that
+     * cancels afterward leaves the batch instead of looking for itself in the pending waiters.
+     */
+    private Batch<K, V> takePending(boolean cancelTimer) {
+        if (cancelTimer && scheduledFlush != null) scheduledFlush.dispose();
+        scheduledFlush = null;
+        Map<K, List<Waiter<V>>> waiters = pending;
+        pending = new LinkedHashMap<>();
+        InFlightBatch inFlight = new InFlightBatch(waiters.values().stream().mapToInt(List::size).sum());
+        waiters.values().forEach(keyWaiters -> keyWaiters.forEach(waiter -> waiter.batch = inFlight));
+        return new Batch<>(waiters, inFlight);
+    }
+
+    private void dispatch(Batch<K, V> taken) {
+        Map<K, List<Waiter<V>>> batch = taken.waiters();
+        InFlightBatch inFlight = taken.inFlight();
+        List<K> keys = new ArrayList<>(batch.keySet());
+        LOG.debug("Sends a batch of {} keys to {}", keys.size(), name);
+        batchSizes.record(keys.size());
+
+        List<Waiter<V>> waiters = batch.values().stream().flatMap(List::stream).toList();
+        // The batch call waits as long as the most patient of its callers
+        Optional<Deadline> deadline = Deadline.latest(waiters.stream().map(waiter -> Deadline.from(waiter.sink.contextView())).toList());
+        VersionTags versions = new VersionTags();
+
+        inFlight.start(batchCall.apply(keys)
+                .collectMultimap(keyExtractor)
+                .contextWrite(context -> deadline.map(d -> d.writeTo(context)).orElse(context))
+                .contextWrite(versions::writeTo)
+                .subscribe(
+                        results -> batch.forEach((key, keyWaiters) -> {
+                            List<V> values = new ArrayList<>(results.getOrDefault(key, Collections.emptyList()));
+                            keyWaiters.forEach(waiter -> {
+                                VersionTags.from(waiter.sink.contextView()).ifPresent(tags -> tags.addAll(versions));
+                                waiter.sink.success(values);
+                            });
+                        }),
+                        error -> waiters.forEach(waiter -> waiter.sink.error(error))));
+    }
+
+    private record Batch<K, V>(Map<K, List<Waiter<V>>> waiters, InFlightBatch inFlight) {
+    }
+
+    private static class Waiter<V> {
+        final MonoSink<List<V>> sink;
+        InFlightBatch batch;
+
+        Waiter(MonoSink<List<V>> sink) {
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * A dispatched batch call, cancelled when all of its waiters have cancelled.
+     */
+    private static class InFlightBatch {
+        private final AtomicInteger remaining;
+        private final Disposable.Swap call = Disposables.swap();
+
+        InFlightBatch(int waiters) {
+            this.remaining = new AtomicInteger(waiters);
+        }
+
+        void start(Disposable subscription) {
+            call.update(subscription);
+        }
+
+        void leave() {
+            if (remaining.decrementAndGet() == 0) {
+                LOG.debug("All waiters of a batch call cancelled, cancels the call");
+                call.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package re.elio.microservices.composite.product.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * In-process cache of product aggregates, keyed by productId.
+ * <p>
+ * Entries are evicted by size and by a hard time-to-live. Entries older than the refresh
+ * interval are still served while a single background revalidation or reload replaces them.
+ * When the core service responses of an entry all had an ETag, the entry is revalidated with
+ * conditional GETs and only reloaded if one of them has changed.
+ * Entries are invalidated when a products, recommendations or reviews event is published
+ * for the product, see {@link ProductCompositeIntegration}. The core services apply the event some time later,
+ * aggregates loaded within app.aggregateCache.eventPropagationSeconds after an event are therefore not cached,
+ * later changes are picked up by the revalidation.
+ * Partial aggregates, where a recommendation or review call fell back to an empty result, are not cached either.
+ * <p>
+ * Hit, miss and eviction counts are exposed as "cache.*" metrics with the tag cache=productAggregates.
+ */
+@Component
+public class ProductAggregateCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ProductAggregateCache.class);
+
+    private final boolean enabled;
+    private final long refreshAfterNanos;
+    private final Cache<Integer, CachedAggregate> cache;
+    private final RequestCoalescer<Integer> loads = new RequestCoalescer<>();
+    private final Set<Integer> refreshing = ConcurrentHashMap.newKeySet();
+    // Products with an event that the core services may not have applied yet
+    private final Cache<Integer, Boolean> pendingEvents;
+
+    public ProductAggregateCache(MeterRegistry meterRegistry,
+                                 @Value("${app.aggregateCache.enabled:true}") boolean enabled,
+                                 @Value("${app.aggregateCache.maximumSize:10000}") long maximumSize,
+                                 @Value("${app.aggregateCache.timeToLiveSeconds:60}") long timeToLiveSeconds,
+                                 @Value("${app.aggregateCache.refreshAfterSeconds:10}") long refreshAfterSeconds,
+                                 @Value("${app.aggregateCache.eventPropagationSeconds:5}") long eventPropagationSeconds) {
+        this.enabled = enabled;
+        this.refreshAfterNanos = Duration.ofSeconds(refreshAfterSeconds).toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(timeToLiveSeconds))
+                .recordStats()
+                .build();
+        this.pendingEvents = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(eventPropagationSeconds))
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "productAggregates");
+        LOG.info("Created a product aggregate cache, enabled: {}, maximumSize: {}, timeToLive: {}s, refreshAfter: {}s, eventPropagation: {}s",
+                enabled, maximumSize, timeToLiveSeconds, refreshAfterSeconds, eventPropagationSeconds);
+    }
+
+    /**
+     * Returns the cached aggregate for the productId, loading it with the loader on a miss.
+     * Concurrent misses for the same productId share one load. Failed loads and partial aggregates are not cached.
+     *
+     * @param productId   ID of the product
+     * @param loader      creates the aggregate from the core services
+     * @param revalidator tells if the core service responses with the ETags are unchanged
+     * @return the cached or freshly loaded aggregate
+     */
+    public Mono<VersionedAggregate> get(int productId, Function<Integer, Mono<VersionedAggregate>> loader,
+                                        Function<VersionTags, Mono<Boolean>> revalidator) {
+        if (!enabled) return loader.apply(productId);
+
+        CachedAggregate cached = cache.getIfPresent(productId);
+        if (cached != null) {
+            if (cached.isStale(refreshAfterNanos)) refreshInBackground(productId, cached, loader, revalidator);
+            return Mono.just(cached.aggregate());
+        }
+        // The load is cancelled only when all waiting requests have cancelled
+        return loads.coalesce(productId, () -> load(productId, loader));
+    }
+
+    /**
+     * Returns the cached aggregate for the productId without loading it on a miss.
+     *
+     * @param productId ID of the product
+     * @return the cached aggregate, if any
+     */
+    public Optional<VersionedAggregate> getIfPresent(int productId) {
+        if (!enabled) return Optional.empty();
+        return Optional.ofNullable(cache.getIfPresent(productId)).map(CachedAggregate::aggregate);
+    }
+
+    /**
+     * Removes the aggregate for the productId, if cached, and does not cache it again until the core
+     * services have had time to apply the event.
+     *
+     * @param productId ID of the product
+     */
+    public void invalidate(int productId) {
+        if (!enabled) return;
+        LOG.debug("Invalidates the cached product aggregate for productId: {}", productId);
+        pendingEvents.put(productId, Boolean.TRUE);
+        cache.invalidate(productId);
+    }
+
+    private Mono<VersionedAggregate> load(int productId, Function<Integer, Mono<VersionedAggregate>> loader) {
+        return loader.apply(productId)
+                .doOnNext(aggregate -> {
+                    if (aggregate.partial()) {
+                        LOG.debug("Does not cache the partial product aggregate for productId: {}", productId);
+                    } else if (hasPendingEvent(productId)) {
+                        // The load may have missed the change of the event, also if the event was published during the load
+                        LOG.debug("Does not cache the product aggregate for productId: {}, an event may not be applied yet", productId);
+                    } else {
+                        cache.put(productId, new CachedAggregate(aggregate, System.nanoTime()));
+                    }
+                });
+    }
+
+    private boolean hasPendingEvent(int productId) {
+        return pendingEvents.getIfPresent(productId) != null;
+    }
+
+    private void refreshInBackground(int productId, CachedAggregate cached, Function<Integer, Mono<VersionedAggregate>> loader,
+                                     Function<VersionTags, Mono<Boolean>> revalidator) {
+        if (!refreshing.add(productId)) return;
+        LOG.debug("Refreshes the stale product aggregate for productId: {}", productId);
+        Mono<Boolean> unchanged = cached.aggregate().versions().getETags().isEmpty()
+                ? Mono.just(false) : revalidator.apply(cached.aggregate().versions());
+        unchanged
+                .flatMap(isUnchanged -> {
+                    if (!isUnchanged) return load(productId, loader);
+                    LOG.debug("The stale product aggregate for productId: {} is unchanged", productId);
+                    if (!hasPendingEvent(productId)) {
+                        cache.asMap().replace(productId, cached, new CachedAggregate(cached.aggregate(), System.nanoTime()));
+                    }
+                    return Mono.just(cached.aggregate());
+                })
+                .doFinally(signal -> refreshing.remove(productId))
+                .subscribe(
+                        fresh -> {},
+                        ex -> LOG.warn("Refresh of the product aggregate for productId: {} failed: {}", productId, ex.toString()));
+    }
+
+    private record CachedAggregate(VersionedAggregate aggregate, long loadedAtNanos) {
+        boolean isStale(long refreshAfterNanos) {
+            return System.nanoTime() - loadedAtNanos > refreshAfterNanos;
+        }
+    }
+}
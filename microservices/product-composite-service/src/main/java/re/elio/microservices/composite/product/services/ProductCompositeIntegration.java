@@ -1,18 +1,35 @@
 package re.elio.microservices.composite.product.services;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.rsocket.RSocketRequester;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import re.elio.api.core.PageQuery;
 import re.elio.api.core.product.Product;
 import re.elio.api.core.product.ProductService;
 import re.elio.api.core.recommendation.Recommendation;
@@ -20,22 +37,39 @@ import re.elio.api.core.recommendation.RecommendationService;
 import re.elio.api.core.review.Review;
 import re.elio.api.core.review.ReviewService;
 import re.elio.api.event.Event;
+import re.elio.api.exceptions.DeadlineExceededException;
 import re.elio.api.exceptions.InvalidInputException;
 import re.elio.api.exceptions.NotFoundException;
+import re.elio.api.exceptions.ServiceUnavailableException;
+import re.elio.util.http.DeadlineExchangeFilter;
 import re.elio.util.http.HttpErrorInfo;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
 
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
 import static reactor.core.publisher.Flux.empty;
 
 @Component
 public class ProductCompositeIntegration implements ProductService, RecommendationService, ReviewService {
     private static final Logger LOG = LoggerFactory.getLogger(ProductCompositeIntegration.class);
+    private static final MediaType APPLICATION_SMILE = MediaType.valueOf("application/x-jackson-smile");
+    // Max number of productIds of a batch call accepted by the core services
+    private static final int MAX_BATCH_SIZE = 100;
     private final ObjectMapper objectMapper;
     private final String productServiceURL;
     private final String recommendationServiceURL;
@@ -44,6 +78,59 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
     private final WebClient webClient;
     private final StreamBridge streamBridge;
     private final Scheduler publishEventScheduler;
+    private final ProductAggregateCache aggregateCache;
+
+    // With the rsocket transport, product, recommendation and review lookups are sent over RSocket connections,
+    // the requesters are null with the http transport
+    private final boolean rsocketTransport;
+    private final LoadBalancedRSocketRequester productRequester;
+    private final LoadBalancedRSocketRequester recommendationRequester;
+    private final LoadBalancedRSocketRequester reviewRequester;
+
+    // Concurrent lookups of the same productId, or of the same page, share one call to the core service
+    private final RequestCoalescer<Integer> productCalls = new RequestCoalescer<>();
+    private final RequestCoalescer<Integer> recommendationCalls = new RequestCoalescer<>();
+    private final RequestCoalescer<Integer> reviewCalls = new RequestCoalescer<>();
+    private final RequestCoalescer<PageQuery> recommendationPageCalls = new RequestCoalescer<>();
+    private final RequestCoalescer<PageQuery> reviewPageCalls = new RequestCoalescer<>();
+
+    // Lookups arriving within a short window are sent to the core service as one batch call. Of the recommendations
+    // and reviews only first pages are batched, by their limit, the batch calls take one limit for all products
+    private final boolean productBatching;
+    private final boolean recommendationBatching;
+    private final boolean reviewBatching;
+    private final MicroBatcher<Integer, Product> productBatcher;
+    private final Map<Integer, MicroBatcher<Integer, Recommendation>> recommendationBatchers = new ConcurrentHashMap<>();
+    private final Map<Integer, MicroBatcher<Integer, Review>> reviewBatchers = new ConcurrentHashMap<>();
+    private final Function<Integer, MicroBatcher<Integer, Recommendation>> recommendationBatcher;
+    private final Function<Integer, MicroBatcher<Integer, Review>> reviewBatcher;
+
+    // Slow recommendation and review calls are hedged with a second call
+    private final Hedger recommendationHedger;
+    private final Hedger reviewHedger;
+    private final Hedger recommendationBatchHedger;
+    private final Hedger reviewBatchHedger;
+
+    // Each core service gets its own bulkhead and circuit breaker, a slow service must not tie up the calls to the others
+    private final Bulkhead productBulkhead;
+    private final Bulkhead recommendationBulkhead;
+    private final Bulkhead reviewBulkhead;
+    private final CircuitBreaker productCircuitBreaker;
+    private final CircuitBreaker recommendationCircuitBreaker;
+    private final CircuitBreaker reviewCircuitBreaker;
+
+    // Reads that failed on the connection level or with a 5xx response are retried
+    private final RetryPolicy productRetry;
+    private final RetryPolicy recommendationRetry;
+    private final RetryPolicy reviewRetry;
+
+    // Calls are timed out after a multiple of the recent p99 latency of the core service, batch calls have their own timeouts
+    private final AdaptiveTimeout productTimeout;
+    private final AdaptiveTimeout recommendationTimeout;
+    private final AdaptiveTimeout reviewTimeout;
+    private final AdaptiveTimeout productBatchTimeout;
+    private final AdaptiveTimeout recommendationBatchTimeout;
+    private final AdaptiveTimeout reviewBatchTimeout;
 
     public ProductCompositeIntegration(ObjectMapper objectMapper,
                                        @Value("${app.product-service.host}") String productServiceHost,
@@ -54,27 +141,166 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
                                        @Value("${app.review-service.port}") int reviewServicePort,
                                        WebClient.Builder webClient,
                                        StreamBridge streamBridge,
-                                       @Qualifier("publishEventScheduler") Scheduler publishEventScheduler) {
+                                       @Qualifier("publishEventScheduler") Scheduler publishEventScheduler,
+                                       ProductAggregateCache aggregateCache,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${app.product-service.batching.enabled:false}") boolean productBatching,
+                                       @Value("${app.product-service.batching.windowMillis:2}") long productBatchWindowMillis,
+                                       @Value("${app.product-service.batching.maxSize:64}") int productBatchMaxSize,
+                                       @Value("${app.recommendation-service.batching.enabled:false}") boolean recommendationBatching,
+                                       @Value("${app.recommendation-service.batching.windowMillis:2}") long recommendationBatchWindowMillis,
+                                       @Value("${app.recommendation-service.batching.maxSize:64}") int recommendationBatchMaxSize,
+                                       @Value("${app.review-service.batching.enabled:false}") boolean reviewBatching,
+                                       @Value("${app.review-service.batching.windowMillis:2}") long reviewBatchWindowMillis,
+                                       @Value("${app.review-service.batching.maxSize:64}") int reviewBatchMaxSize,
+                                       @Qualifier("recommendationHedger") Hedger recommendationHedger,
+                                       @Qualifier("reviewHedger") Hedger reviewHedger,
+                                       @Qualifier("recommendationBatchHedger") Hedger recommendationBatchHedger,
+                                       @Qualifier("reviewBatchHedger") Hedger reviewBatchHedger,
+                                       BulkheadRegistry bulkheadRegistry,
+                                       CircuitBreakerRegistry circuitBreakerRegistry,
+                                       @Qualifier("productRetry") RetryPolicy productRetry,
+                                       @Qualifier("recommendationRetry") RetryPolicy recommendationRetry,
+                                       @Qualifier("reviewRetry") RetryPolicy reviewRetry,
+                                       @Qualifier("productTimeout") AdaptiveTimeout productTimeout,
+                                       @Qualifier("recommendationTimeout") AdaptiveTimeout recommendationTimeout,
+                                       @Qualifier("reviewTimeout") AdaptiveTimeout reviewTimeout,
+                                       @Qualifier("productBatchTimeout") AdaptiveTimeout productBatchTimeout,
+                                       @Qualifier("recommendationBatchTimeout") AdaptiveTimeout recommendationBatchTimeout,
+                                       @Qualifier("reviewBatchTimeout") AdaptiveTimeout reviewBatchTimeout,
+                                       @Value("${app.smile.enabled:true}") boolean smileEnabled,
+                                       RSocketRequester.Builder rsocketRequester,
+                                       @Value("${app.transport:http}") String transport,
+                                       @Value("${app.product-service.rsocketPort:7101}") int productRSocketPort,
+                                       @Value("${app.recommendation-service.rsocketPort:7102}") int recommendationRSocketPort,
+                                       @Value("${app.review-service.rsocketPort:7103}") int reviewRSocketPort,
+                                       LoadBalancerExchangeFilter coreServicesLoadBalancer) {
         this.objectMapper = objectMapper;
-        this.webClient = webClient.build();
+        // The core services are asked for the more compact Smile format, calls that set their own Accept header,
+        // e.g. for NDJSON streams and raw JSON, keep it
+        if (smileEnabled) {
+            webClient = webClient.defaultHeader(HttpHeaders.ACCEPT, APPLICATION_SMILE + ", " + APPLICATION_JSON + ";q=0.9");
+        }
+        this.webClient = webClient
+                .filter(new DeadlineExchangeFilter())
+                .filter(new VersionTagsExchangeFilter())
+                // Innermost, the filters above see the service URL and not the chosen instance
+                .filter(coreServicesLoadBalancer)
+                .build();
         this.streamBridge = streamBridge;
         this.publishEventScheduler = publishEventScheduler;
+        this.aggregateCache = aggregateCache;
+
+        this.productServiceURL = new CoreServiceAddress("product-service", productServiceHost, productServicePort).getUrl();
+        this.recommendationServiceURL = new CoreServiceAddress("recommendation-service", recommendationServiceHost, recommendationServicePort).getUrl();
+        this.reviewServiceURL = new CoreServiceAddress("review-service", reviewServiceHost, reviewServicePort).getUrl();
+
+        // The requesters go to the instances of the load balancers of the HTTP calls and connect on their first request
+        this.rsocketTransport = transport.equals("rsocket");
+        this.productRequester = rsocketTransport ? new LoadBalancedRSocketRequester(rsocketRequester, productServiceHost,
+                productRSocketPort, coreServicesLoadBalancer.loadBalancer(authority(productServiceURL))) : null;
+        this.recommendationRequester = rsocketTransport ? new LoadBalancedRSocketRequester(rsocketRequester, recommendationServiceHost,
+                recommendationRSocketPort, coreServicesLoadBalancer.loadBalancer(authority(recommendationServiceURL))) : null;
+        this.reviewRequester = rsocketTransport ? new LoadBalancedRSocketRequester(rsocketRequester, reviewServiceHost,
+                reviewRSocketPort, coreServicesLoadBalancer.loadBalancer(authority(reviewServiceURL))) : null;
+        LOG.info("Calls the core services over {}", rsocketTransport ? "RSocket" : "HTTP");
+
+        // Lookups multiplexed over RSocket are not batched
+        this.productBatching = productBatching && !rsocketTransport;
+        this.recommendationBatching = recommendationBatching && !rsocketTransport;
+        this.reviewBatching = reviewBatching && !rsocketTransport;
+        this.productBatcher = new MicroBatcher<>("product", Duration.ofMillis(productBatchWindowMillis), batchMaxSize("product", productBatchMaxSize),
+                this::getProducts, Product::getProductId, Schedulers.parallel(), meterRegistry);
+        this.recommendationBatcher = limit -> new MicroBatcher<>("recommendation", Duration.ofMillis(recommendationBatchWindowMillis),
+                batchMaxSize("recommendation", recommendationBatchMaxSize), productIds -> fetchRecommendations(productIds, limit),
+                Recommendation::getProductId, Schedulers.parallel(), meterRegistry);
+        this.reviewBatcher = limit -> new MicroBatcher<>("review", Duration.ofMillis(reviewBatchWindowMillis),
+                batchMaxSize("review", reviewBatchMaxSize), productIds -> fetchReviews(productIds, limit),
+                Review::getProductId, Schedulers.parallel(), meterRegistry);
+        this.recommendationHedger = recommendationHedger;
+        this.reviewHedger = reviewHedger;
+        this.recommendationBatchHedger = recommendationBatchHedger;
+        this.reviewBatchHedger = reviewBatchHedger;
 
-        this.productServiceURL = String.format("http://%s:%s", productServiceHost, productServicePort);
-        this.recommendationServiceURL = String.format("http://%s:%s", recommendationServiceHost, recommendationServicePort);
-        this.reviewServiceURL = String.format("http://%s:%s", reviewServiceHost, reviewServicePort);
+        this.productBulkhead = bulkheadRegistry.bulkhead("product");
+        this.recommendationBulkhead = bulkheadRegistry.bulkhead("recommendation");
+        this.reviewBulkhead = bulkheadRegistry.bulkhead("review");
+        this.productCircuitBreaker = circuitBreaker(circuitBreakerRegistry, "product");
+        this.recommendationCircuitBreaker = circuitBreaker(circuitBreakerRegistry, "recommendation");
+        this.reviewCircuitBreaker = circuitBreaker(circuitBreakerRegistry, "review");
+        this.productRetry = productRetry;
+        this.recommendationRetry = recommendationRetry;
+        this.reviewRetry = reviewRetry;
+        this.productTimeout = productTimeout;
+        this.recommendationTimeout = recommendationTimeout;
+        this.reviewTimeout = reviewTimeout;
+        this.productBatchTimeout = productBatchTimeout;
+        this.recommendationBatchTimeout = recommendationBatchTimeout;
+        this.reviewBatchTimeout = reviewBatchTimeout;
+    }
+
+    private static String authority(String url) {
+        return URI.create(url).getAuthority();
+    }
+
+    private static int batchMaxSize(String name, int maxSize) {
+        if (maxSize <= MAX_BATCH_SIZE) return maxSize;
+        LOG.warn("The {} batching maxSize {} is above the max batch size of the core services, uses {}", name, maxSize, MAX_BATCH_SIZE);
+        return MAX_BATCH_SIZE;
+    }
+
+    private static CircuitBreaker circuitBreaker(CircuitBreakerRegistry registry, String name) {
+        CircuitBreaker circuitBreaker = registry.circuitBreaker(name);
+        circuitBreaker.getEventPublisher()
+                .onStateTransition(event -> LOG.warn("Circuit breaker {} changed state: {}", name, event.getStateTransition()));
+        return circuitBreaker;
     }
 
     @Override
     public Mono<Product> getProduct(int productId) {
-        String url = productServiceURL + "/product/" + productId;
-        LOG.debug("Will call getProduct API on URL: {}", url);
-        return webClient.get()
-                .uri(url)
-                .retrieve()
-                .bodyToMono(Product.class)
-                .log(LOG.getName(), Level.FINE)
-                .onErrorMap(WebClientResponseException.class, this::handleException);
+        return productCalls.coalesce(productId, () -> loadProduct(productId));
+    }
+
+    private Mono<Product> loadProduct(int productId) {
+        // Invalid ids are sent on their own to keep the error responses of the single lookup
+        if (!productBatching || productId < 1) return fetchProduct(productId);
+        return productBatcher.load(productId)
+                .next()
+                .switchIfEmpty(Mono.error(() -> new NotFoundException("No product found for productId: " + productId)));
+    }
+
+    private Mono<Product> fetchProduct(int productId) {
+        Mono<Product> call;
+        if (rsocketTransport) {
+            LOG.debug("Will call getProduct on RSocket route: product.get for productId: {}", productId);
+            call = productRequester.requestResponse("product.get", productId, Product.class)
+                    .log(LOG.getName(), Level.FINE);
+        } else {
+            String url = productServiceURL + "/product/" + productId;
+            LOG.debug("Will call getProduct API on URL: {}", url);
+            call = webClient.get()
+                    .uri(url)
+                    .retrieve()
+                    .bodyToMono(Product.class)
+                    .log(LOG.getName(), Level.FINE)
+                    .onErrorMap(WebClientResponseException.class, this::handleException);
+        }
+        return productRetry.apply(guard(productTimeout.apply(call), productBulkhead, productCircuitBreaker))
+                .onErrorMap(this::isFastFail, ex -> new ServiceUnavailableException("Product service unavailable: " + ex.getMessage()));
+    }
+
+    @Override
+    public Flux<Product> getProducts(List<Integer> productIds) {
+        String url = productServiceURL + "/product?productIds=" + joinIds(productIds);
+        LOG.debug("Will call getProducts API on URL: {}", url);
+        return productRetry.apply(guard(productBatchTimeout.apply(webClient.get()
+                                .uri(url)
+                                .retrieve()
+                                .bodyToFlux(Product.class)
+                                .log(LOG.getName(), Level.FINE)
+                                .onErrorMap(WebClientResponseException.class, this::handleException)),
+                        productBulkhead, productCircuitBreaker))
+                .onErrorMap(this::isFastFail, ex -> new ServiceUnavailableException("Product service unavailable: " + ex.getMessage()));
     }
 
     @Override
@@ -93,18 +319,90 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
 
     @Override
     public Flux<Recommendation> getRecommendations(int productId) {
+        // The fallback is applied per caller, outside of the shared call, so that each caller's aggregate is marked as partial
+        return recommendationCalls.coalesceMany(productId,
+                        () -> fetchRecommendations(String.format("%s/recommendation?productId=%s", recommendationServiceURL, productId),
+                                "recommendation.get", productId))
+                .onErrorResume(ProductCompositeIntegration::fallback);
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendations(int productId, int limit, String cursor) {
+        // First pages are batched, a batch call returns the first page of each product. Later pages are read on their own
+        String url = String.format("%s/recommendation?productId=%s&limit=%s", recommendationServiceURL, productId, limit);
+        PageQuery page = new PageQuery(productId, limit, cursor);
+        return recommendationPageCalls.coalesceMany(page, () -> recommendationBatching && productId > 0 && cursor == null
+                        ? recommendationBatchers.computeIfAbsent(limit, recommendationBatcher).load(productId)
+                        : fetchRecommendations(cursor == null ? url : url + "&cursor=" + cursor, "recommendation.page", page))
+                .onErrorResume(ProductCompositeIntegration::fallback);
+    }
+
+    /**
+     * @param url   URL of the call over HTTP
+     * @param route route of the call over RSocket
+     * @param data  data of the call over RSocket
+     */
+    private Flux<Recommendation> fetchRecommendations(String url, String route, Object data) {
+        if (rsocketTransport) LOG.debug("Will call getRecommendations on RSocket route: {} with: {}", route, data);
+        else LOG.debug("Will call getRecommendations API on URL: {}", url);
+        return recommendationRetry.apply(recommendationHedger.hedge(() -> guard(recommendationTimeout.apply(rsocketTransport
+                                ? recommendationRequester.requestStream(route, data, Recommendation.class)
+                                : getFlux(url, Recommendation.class)),
+                        recommendationBulkhead, recommendationCircuitBreaker)))
+                .log(LOG.getName(), Level.FINE);
+    }
+
+    /**
+     * Streams the recommendations of the product as the recommendation service returns them, without the hedging, timeout
+     * and retries of {@link #getRecommendations(int)} that are meant for short responses.
+     */
+    public Flux<Recommendation> streamRecommendations(int productId) {
         String url = String.format("%s/recommendation?productId=%s", recommendationServiceURL, productId);
-        LOG.debug("Will call getRecommendations API on URL: {}", url);
-        // Return an empty result if something goes wrong to make it possible
-        // for the composite service to return partial responses
+        LOG.debug("Will call the streaming getRecommendations API on URL: {}", url);
+        // Return an empty result if something goes wrong, to make it possible for the composite
+        // service to return partial responses
         return webClient.get()
                 .uri(url)
+                .accept(APPLICATION_NDJSON)
                 .retrieve()
                 .bodyToFlux(Recommendation.class)
+                .transformDeferred(BulkheadOperator.of(recommendationBulkhead))
                 .log(LOG.getName(), Level.FINE)
                 .onErrorResume(error -> empty());
     }
 
+    /**
+     * Reads the first page of the recommendations of the product as raw JSON, for the {@link JsonPassthroughAssembler}.
+     *
+     * @param maxBytes max size of the response
+     * @return a JSON array, empty if something goes wrong, or a DataBufferLimitException if the response is larger than maxBytes
+     */
+    public Mono<DataBuffer> getRecommendationsJson(int productId, int limit, int maxBytes) {
+        String url = String.format("%s/recommendation?productId=%s&limit=%s", recommendationServiceURL, productId, limit);
+        LOG.debug("Will call getRecommendations API for raw JSON on URL: {}", url);
+        return recommendationRetry.apply(guard(recommendationTimeout.apply(getJson(url, maxBytes)),
+                        recommendationBulkhead, recommendationCircuitBreaker))
+                .log(LOG.getName(), Level.FINE)
+                .onErrorResume(error -> !(error instanceof DataBufferLimitException), error -> emptyJsonArray());
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendations(List<Integer> productIds, int limit) {
+        return fetchRecommendations(productIds, limit).onErrorResume(ProductCompositeIntegration::fallback);
+    }
+
+    private Flux<Recommendation> fetchRecommendations(List<Integer> productIds, int limit) {
+        String url = String.format("%s/recommendation?productIds=%s&limit=%s", recommendationServiceURL, joinIds(productIds), limit);
+        LOG.debug("Will call getRecommendations API on URL: {}", url);
+        return recommendationRetry.apply(recommendationBatchHedger.hedge(() -> guard(recommendationBatchTimeout.apply(webClient.get()
+                                .uri(url)
+                                .retrieve()
+                                .bodyToFlux(Recommendation.class)
+                                .onErrorMap(WebClientResponseException.class, this::handleException)),
+                        recommendationBulkhead, recommendationCircuitBreaker)))
+                .log(LOG.getName(), Level.FINE);
+    }
+
     @Override
     public Mono<Recommendation> createRecommendation(Recommendation body) {
         return Mono.fromCallable(() -> {
@@ -121,18 +419,104 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
 
     @Override
     public Flux<Review> getReviews(int productId) {
+        // The fallback is applied per caller, outside of the shared call, so that each caller's aggregate is marked as partial
+        return reviewCalls.coalesceMany(productId,
+                        () -> fetchReviews(String.format("%s/review?productId=%s", reviewServiceURL, productId),
+                                "review.get", productId))
+                .onErrorResume(ProductCompositeIntegration::fallback);
+    }
+
+    @Override
+    public Flux<Review> getReviews(int productId, int limit, String cursor) {
+        // First pages are batched, a batch call returns the first page of each product. Later pages are read on their own
+        String url = String.format("%s/review?productId=%s&limit=%s", reviewServiceURL, productId, limit);
+        PageQuery page = new PageQuery(productId, limit, cursor);
+        return reviewPageCalls.coalesceMany(page, () -> reviewBatching && productId > 0 && cursor == null
+                        ? reviewBatchers.computeIfAbsent(limit, reviewBatcher).load(productId)
+                        : fetchReviews(cursor == null ? url : url + "&cursor=" + cursor, "review.page", page))
+                .onErrorResume(ProductCompositeIntegration::fallback);
+    }
+
+    /**
+     * @param url   URL of the call over HTTP
+     * @param route route of the call over RSocket
+     * @param data  data of the call over RSocket
+     */
+    private Flux<Review> fetchReviews(String url, String route, Object data) {
+        if (rsocketTransport) LOG.debug("Will call getReviews on RSocket route: {} with: {}", route, data);
+        else LOG.debug("Will call getReviews API on URL: {}", url);
+        return reviewRetry.apply(reviewHedger.hedge(() -> guard(reviewTimeout.apply(rsocketTransport
+                                ? reviewRequester.requestStream(route, data, Review.class)
+                                : getFlux(url, Review.class)),
+                        reviewBulkhead, reviewCircuitBreaker)))
+                .log(LOG.getName(), Level.FINE);
+    }
+
+    /**
+     * Streams the reviews of the product as the review service returns them, without the hedging, timeout
+     * and retries of {@link #getReviews(int)} that are meant for short responses.
+     */
+    public Flux<Review> streamReviews(int productId) {
         String url = String.format("%s/review?productId=%s", reviewServiceURL, productId);
-        LOG.debug("Will call getReviews API on URL: {}", url);
-        // Return an empty result if something goes wrong to make it possible
-        // for the composite service to return partial responses
+        LOG.debug("Will call the streaming getReviews API on URL: {}", url);
+        // Return an empty result if something goes wrong, to make it possible for the composite
+        // service to return partial responses
         return webClient.get()
                 .uri(url)
+                .accept(APPLICATION_NDJSON)
                 .retrieve()
                 .bodyToFlux(Review.class)
+                .transformDeferred(BulkheadOperator.of(reviewBulkhead))
                 .log(LOG.getName(), Level.FINE)
                 .onErrorResume(error -> empty());
     }
 
+    /**
+     * Reads the first page of the reviews of the product as raw JSON, for the {@link JsonPassthroughAssembler}.
+     *
+     * @param maxBytes max size of the response
+     * @return a JSON array, empty if something goes wrong, or a DataBufferLimitException if the response is larger than maxBytes
+     */
+    public Mono<DataBuffer> getReviewsJson(int productId, int limit, int maxBytes) {
+        String url = String.format("%s/review?productId=%s&limit=%s", reviewServiceURL, productId, limit);
+        LOG.debug("Will call getReviews API for raw JSON on URL: {}", url);
+        return reviewRetry.apply(guard(reviewTimeout.apply(getJson(url, maxBytes)),
+                        reviewBulkhead, reviewCircuitBreaker))
+                .log(LOG.getName(), Level.FINE)
+                .onErrorResume(error -> !(error instanceof DataBufferLimitException), error -> emptyJsonArray());
+    }
+
+    private Mono<DataBuffer> getJson(String url, int maxBytes) {
+        return DataBufferUtils.join(webClient.get()
+                        .uri(url)
+                        .accept(APPLICATION_JSON)
+                        .retrieve()
+                        .bodyToFlux(DataBuffer.class)
+                        .onErrorMap(WebClientResponseException.class, this::handleException), maxBytes)
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    private static Mono<DataBuffer> emptyJsonArray() {
+        return Mono.fromSupplier(() -> DefaultDataBufferFactory.sharedInstance.wrap("[]".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public Flux<Review> getReviews(List<Integer> productIds, int limit) {
+        return fetchReviews(productIds, limit).onErrorResume(ProductCompositeIntegration::fallback);
+    }
+
+    private Flux<Review> fetchReviews(List<Integer> productIds, int limit) {
+        String url = String.format("%s/review?productIds=%s&limit=%s", reviewServiceURL, joinIds(productIds), limit);
+        LOG.debug("Will call getReviews API on URL: {}", url);
+        return reviewRetry.apply(reviewBatchHedger.hedge(() -> guard(reviewBatchTimeout.apply(webClient.get()
+                                .uri(url)
+                                .retrieve()
+                                .bodyToFlux(Review.class)
+                                .onErrorMap(WebClientResponseException.class, this::handleException)),
+                        reviewBulkhead, reviewCircuitBreaker)))
+                .log(LOG.getName(), Level.FINE);
+    }
+
     @Override
     public Mono<Review> createReview(Review body) {
         return Mono.fromCallable(() -> {
@@ -147,6 +531,39 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
                 .subscribeOn(publishEventScheduler).then();
     }
 
+    /**
+     * Revalidates core service responses with conditional GETs, the core services only compare the versions
+     * of their entities and do not read or return them if they are unchanged.
+     *
+     * @param versions the ETags of the responses, keyed by URL
+     * @return true if none of the responses has changed
+     */
+    public Mono<Boolean> isUnchanged(VersionTags versions) {
+        return Flux.fromIterable(versions.getETags().entrySet())
+                .flatMap(entry -> isUnchanged(entry.getKey(), entry.getValue()))
+                .all(Boolean::booleanValue)
+                .doOnNext(unchanged -> LOG.debug("Revalidated {} core service responses, unchanged: {}", versions.getETags().size(), unchanged))
+                .onErrorReturn(false);
+    }
+
+    /**
+     * Revalidates one response, with the timeout, bulkhead and circuit breaker of its core service.
+     */
+    private Mono<Boolean> isUnchanged(String url, String eTag) {
+        Mono<Boolean> call = webClient.get()
+                .uri(URI.create(url))
+                .ifNoneMatch(eTag)
+                .exchangeToMono(response -> response.releaseBody()
+                        .thenReturn(response.statusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)));
+        if (url.startsWith(recommendationServiceURL + "/")) {
+            return guard(recommendationTimeout.apply(call), recommendationBulkhead, recommendationCircuitBreaker);
+        }
+        if (url.startsWith(reviewServiceURL + "/")) {
+            return guard(reviewTimeout.apply(call), reviewBulkhead, reviewCircuitBreaker);
+        }
+        return guard(productTimeout.apply(call), productBulkhead, productCircuitBreaker);
+    }
+
     public Mono<Health> getProductHealth() {
         return getHealth(productServiceURL);
     }
@@ -177,6 +594,47 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
                 .setHeader("partitionKey", event.getKey())
                 .build();
         streamBridge.send(bindingName, message);
+        // Every event changes a part of the product aggregate, drop the cached copy
+        aggregateCache.invalidate((Integer) event.getKey());
+    }
+
+    /**
+     * Returns an empty result if a recommendation or review call fails, e.g. with a full bulkhead or an open circuit breaker,
+     * to make it possible for the composite service to return partial responses. The product aggregate being loaded
+     * is marked as partial, so that it is not cached.
+     */
+    private static <T> Flux<T> fallback(Throwable error) {
+        return Flux.deferContextual(context -> {
+            LOG.debug("Returns an empty result after a failed call: {}", error.toString());
+            VersionTags.from(context).ifPresent(VersionTags::markPartial);
+            return empty();
+        });
+    }
+
+    private <T> Flux<T> getFlux(String url, Class<T> type) {
+        return webClient.get()
+                .uri(url)
+                .retrieve()
+                .bodyToFlux(type)
+                .onErrorMap(WebClientResponseException.class, this::handleException);
+    }
+
+    private <T> Mono<T> guard(Mono<T> call, Bulkhead bulkhead, CircuitBreaker circuitBreaker) {
+        return call.transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker));
+    }
+
+    private <T> Flux<T> guard(Flux<T> call, Bulkhead bulkhead, CircuitBreaker circuitBreaker) {
+        return call.transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker));
+    }
+
+    private boolean isFastFail(Throwable ex) {
+        return ex instanceof BulkheadFullException || ex instanceof CallNotPermittedException;
+    }
+
+    private String joinIds(List<Integer> ids) {
+        return ids.stream().map(String::valueOf).collect(Collectors.joining(","));
     }
 
     private Throwable handleException(Throwable ex) {
@@ -189,6 +647,8 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
                 return new NotFoundException(getErrorMessage(wcEx));
             case UNPROCESSABLE_ENTITY:
                 return new InvalidInputException(getErrorMessage(wcEx));
+            case GATEWAY_TIMEOUT:
+                return new DeadlineExceededException(getErrorMessage(wcEx));
             default:
                 LOG.warn("Got an unexpected HTTP error: {}, will rethrow it.", wcEx.getStatusCode());
                 LOG.warn("Error body: {}", wcEx.getResponseBodyAsString());
@@ -197,9 +657,15 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
     }
 
     private String getErrorMessage(WebClientResponseException ex) {
+        // Errors are returned in the format negotiated for the call, Smile bodies are read with the Smile codec
+        MediaType contentType = ex.getHeaders().getContentType();
         try {
+            if (APPLICATION_SMILE.isCompatibleWith(contentType)) {
+                HttpErrorInfo errorInfo = ex.getResponseBodyAs(HttpErrorInfo.class);
+                return errorInfo != null ? errorInfo.getMessage() : ex.getMessage();
+            }
             return objectMapper.readValue(ex.getResponseBodyAsString(), HttpErrorInfo.class).getMessage();
-        } catch (IOException ioEx) {
+        } catch (IOException | RuntimeException decodeEx) {
             return ex.getMessage();
         }
     }
@@ -1,44 +1,224 @@
 package re.elio.microservices.composite.product.services;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.web.bind.annotation.RestController;
 import re.elio.api.composite.product.*;
+import re.elio.api.core.Cursor;
 import re.elio.api.core.product.Product;
 import re.elio.api.core.recommendation.Recommendation;
 import re.elio.api.core.review.Review;
+import re.elio.api.exceptions.InvalidInputException;
+import re.elio.microservices.composite.product.services.AggregationBudget.BoundedList;
+import re.elio.util.http.ConditionalGet;
+import re.elio.util.http.ETagBuilder;
 import re.elio.util.http.ServiceUtil;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
+import static re.elio.api.composite.product.ProductAggregateField.*;
+
 @RestController
 public class ProductCompositeServiceImpl implements ProductCompositeService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ProductCompositeServiceImpl.class);
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final Set<ProductAggregateField> ALL_FIELDS = EnumSet.allOf(ProductAggregateField.class);
+    // Rough heap size of a recommendation or review, and of its summary, without their strings
+    private static final long ELEMENT_OVERHEAD_BYTES = 128;
 
     private final ServiceUtil serviceUtil;
     private final ProductCompositeIntegration integration;
+    private final ProductAggregateCache aggregateCache;
+    private final JsonPassthroughAssembler passthroughAssembler;
+    private final int aggregateMaxElements;
+    private final long aggregateMaxBytes;
+    private final int aggregatePageSize;
+    private final Counter truncatedRecommendations;
+    private final Counter truncatedReviews;
 
-    public ProductCompositeServiceImpl(ServiceUtil serviceUtil, ProductCompositeIntegration integration) {
+    public ProductCompositeServiceImpl(ServiceUtil serviceUtil, ProductCompositeIntegration integration,
+                                       ProductAggregateCache aggregateCache, JsonPassthroughAssembler passthroughAssembler,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${app.aggregate.maxElements:10000}") int aggregateMaxElements,
+                                       @Value("${app.aggregate.maxBytes:16777216}") long aggregateMaxBytes,
+                                       @Value("${app.aggregate.pageSize:100}") int aggregatePageSize) {
         this.serviceUtil = serviceUtil;
         this.integration = integration;
+        this.aggregateCache = aggregateCache;
+        this.passthroughAssembler = passthroughAssembler;
+        this.aggregateMaxElements = aggregateMaxElements;
+        this.aggregateMaxBytes = aggregateMaxBytes;
+        this.aggregatePageSize = aggregatePageSize;
+        this.truncatedRecommendations = truncationCounter(meterRegistry, "recommendations");
+        this.truncatedReviews = truncationCounter(meterRegistry, "reviews");
+    }
+
+    private static Counter truncationCounter(MeterRegistry meterRegistry, String part) {
+        return Counter.builder("composite.aggregate.truncated")
+                .description("Number of product aggregates returned with a truncated list")
+                .tag("part", part)
+                .register(meterRegistry);
     }
 
     @Override
-    public Mono<ProductAggregate> getProduct(int productId) {
-        LOG.debug("getCompositeProduct: lookup a product aggregate for productId: {}", productId);
-        return Mono.zip(values -> createProductAggregate((Product) values[0], (List<Recommendation>) values[1], (List<Review>) values[2], serviceUtil.getServiceAddress()),
-                        integration.getProduct(productId),
-                        integration.getRecommendations(productId).collectList(),
-                        integration.getReviews(productId).collectList())
+    public Mono<ProductAggregate> getProduct(int productId, List<String> include) {
+        LOG.debug("getCompositeProduct: lookup a product aggregate for productId: {}, include: {}", productId, include);
+        Set<ProductAggregateField> fields = ProductAggregateField.parse(include);
+        // A cached full aggregate also serves partial requests, otherwise only the requested parts are loaded, and not cached
+        Mono<VersionedAggregate> aggregate = fields.containsAll(ALL_FIELDS)
+                ? aggregateCache.get(productId, id -> loadVersionedAggregate(id, ALL_FIELDS), integration::isUnchanged)
+                : aggregateCache.getIfPresent(productId).map(Mono::just).orElseGet(() -> loadVersionedAggregate(productId, fields));
+        return aggregate.flatMap(versioned -> checkModified(versioned, fields)
+                .thenReturn(withFields(versioned.aggregate(), fields)));
+    }
+
+    /**
+     * The ETag of a product aggregate is built from the ETags of the core service responses, that are built from
+     * the versions of their entities. Aggregates built from responses without an ETag get no ETag. As for the core
+     * services the ETag is weak, the service addresses in the aggregate are not part of it.
+     */
+    private Mono<Void> checkModified(VersionedAggregate aggregate, Set<ProductAggregateField> fields) {
+        Map<String, String> versions = aggregate.versions().getETags();
+        if (versions.isEmpty()) return Mono.empty();
+
+        ETagBuilder eTag = new ETagBuilder();
+        versions.forEach((url, version) -> eTag.add(url).add(version));
+        fields.forEach(eTag::add);
+        return ConditionalGet.check(eTag.build());
+    }
+
+    private Mono<VersionedAggregate> loadVersionedAggregate(int productId, Set<ProductAggregateField> fields) {
+        return Mono.defer(() -> {
+            // Collects the ETags of the core service responses, they are kept only if all calls returned one
+            VersionTags versions = new VersionTags();
+            int expectedCalls = 1 + (fields.contains(RECOMMENDATIONS) ? 1 : 0) + (fields.contains(REVIEWS) ? 1 : 0);
+            return loadProductAggregate(productId, fields)
+                    .map(aggregate -> new VersionedAggregate(aggregate, versions.isComplete(expectedCalls) ? versions : new VersionTags(),
+                            versions.isPartial()))
+                    .contextWrite(versions::writeTo);
+        });
+    }
+
+    private Mono<ProductAggregate> loadProductAggregate(int productId, Set<ProductAggregateField> fields) {
+        LOG.debug("getCompositeProduct: loads the product aggregate for productId: {} from the core services", productId);
+        return Mono.defer(() -> {
+                    // Parts that are not requested are not loaded at all
+                    Flux<Recommendation> recommendations = fields.contains(RECOMMENDATIONS)
+                            ? integration.getRecommendations(productId, aggregatePageSize + 1, null) : Flux.empty();
+                    Flux<Review> reviews = fields.contains(REVIEWS)
+                            ? integration.getReviews(productId, aggregatePageSize + 1, null) : Flux.empty();
+                    // Only the first page of the recommendations and reviews is read, one more element tells if there are more pages.
+                    // Products with huge numbers of recommendations or reviews are truncated instead of filling up the heap
+                    AggregationBudget budget = new AggregationBudget(aggregateMaxElements, aggregateMaxBytes);
+                    return Mono.zip(values -> createProductAggregate((Product) values[0],
+                                    ((BoundedList<Recommendation>) values[1]).limit(aggregatePageSize),
+                                    ((BoundedList<Review>) values[2]).limit(aggregatePageSize)),
+                            integration.getProduct(productId),
+                            budget.collect(recommendations, ProductCompositeServiceImpl::estimateSize),
+                            budget.collect(reviews, ProductCompositeServiceImpl::estimateSize));
+                })
+                .map(aggregate -> withFields(aggregate, fields))
                 .doOnError(ex -> LOG.warn("getCompositeProduct failed: {}", ex.toString()))
                 .log(LOG.getName(), Level.FINE);
     }
 
+    @Override
+    public Mono<DataBuffer> getProductPassthrough(int productId) {
+        LOG.debug("getCompositeProductPassthrough: assembles the product aggregate for productId: {} from raw JSON", productId);
+        int maxBytes = (int) Math.min(aggregateMaxBytes, Integer.MAX_VALUE);
+        return Mono.zip(
+                        integration.getProduct(productId),
+                        integration.getRecommendationsJson(productId, aggregatePageSize + 1, maxBytes),
+                        integration.getReviewsJson(productId, aggregatePageSize + 1, maxBytes))
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                .map(results -> passthroughAssembler.assemble(results.getT1(), results.getT2(), results.getT3(),
+                        aggregatePageSize, serviceUtil.getServiceAddress()))
+                // A list too large to be copied is read into objects instead, where it is truncated with a cursor
+                .onErrorResume(DataBufferLimitException.class, ex -> {
+                    LOG.debug("getCompositeProductPassthrough: falls back to binding objects for productId: {}, {}", productId, ex.toString());
+                    return loadProductAggregate(productId, ALL_FIELDS).map(passthroughAssembler::write);
+                })
+                .doOnError(ex -> LOG.warn("getCompositeProductPassthrough failed: {}", ex.toString()))
+                .log(LOG.getName(), Level.FINE);
+    }
+
+    @Override
+    public Flux<ProductAggregatePart> getProductStream(int productId) {
+        LOG.debug("getCompositeProductStream: streams the product aggregate for productId: {}", productId);
+        // All three calls start right away, but the recommendations and reviews are only read ahead
+        // by a few elements while the parts before them are written to the client
+        return Flux.mergeSequential(
+                        integration.getProduct(productId)
+                                .map(p -> ProductAggregatePart.of(new ProductSummary(p.getProductId(), p.getName(), p.getWeight()))),
+                        integration.streamRecommendations(productId)
+                                .map(r -> ProductAggregatePart.of(new RecommendationSummary(r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent()))),
+                        integration.streamReviews(productId)
+                                .map(r -> ProductAggregatePart.of(new ReviewSummary(r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent()))))
+                .doOnError(ex -> LOG.warn("getCompositeProductStream failed: {}", ex.toString()))
+                .log(LOG.getName(), Level.FINE);
+    }
+
+    @Override
+    public Flux<ProductAggregate> getProducts(List<Integer> ids) {
+        LOG.debug("getCompositeProducts: lookup product aggregates for productIds: {}", ids);
+        List<Integer> productIds = ids.stream().distinct().toList();
+        if (productIds.size() > MAX_BATCH_SIZE) throw new InvalidInputException("Too many productIds: " + productIds.size() + ", max is: " + MAX_BATCH_SIZE);
+        if (productIds.isEmpty()) return Flux.empty();
+
+        // One call per core service for the whole batch, the results are split per product as they arrive, and the
+        // aggregate of a product is returned once its lists are read. As for a single product, only the first page of
+        // each product is read, and each list of the batch is limited by the aggregation budget
+        AggregationBudget budget = new AggregationBudget(aggregateMaxElements, aggregateMaxBytes);
+        ProductLists<Recommendation> recommendations = new ProductLists<>(productIds, Recommendation::getProductId);
+        ProductLists<Review> reviews = new ProductLists<>(productIds, Review::getProductId);
+        Mono<Map<Integer, Product>> products = integration.getProducts(productIds).collectMap(Product::getProductId).cache();
+        Flux<ProductAggregate> aggregates = Flux.fromIterable(productIds)
+                .flatMapSequential(productId -> Mono.zip(
+                                products.flatMap(found -> Mono.justOrEmpty(found.get(productId))),
+                                recommendations.of(productId),
+                                reviews.of(productId))
+                        .map(results -> createProductAggregate(results.getT1(),
+                                results.getT2().limit(aggregatePageSize),
+                                results.getT3().limit(aggregatePageSize))));
+        return Flux.merge(
+                        readLists(recommendations, integration.getRecommendations(productIds, aggregatePageSize + 1), budget,
+                                ProductCompositeServiceImpl::estimateSize),
+                        readLists(reviews, integration.getReviews(productIds, aggregatePageSize + 1), budget,
+                                ProductCompositeServiceImpl::estimateSize),
+                        aggregates)
+                .doOnError(ex -> LOG.warn("getCompositeProducts failed: {}", ex.toString()))
+                .log(LOG.getName(), Level.FINE);
+    }
+
+    /**
+     * Reads the values of a batch call into the lists of the products. The lists end early if the budget truncated the
+     * values, or if the call failed or fell back to an empty result, so that the aggregates are returned as truncated,
+     * with a cursor to the rest of their lists, instead of as complete with missing elements.
+     */
+    private static <T, A> Flux<A> readLists(ProductLists<T> lists, Flux<T> values, AggregationBudget budget, ToLongFunction<T> sizeEstimator) {
+        return Mono.defer(() -> {
+                    VersionTags call = new VersionTags();
+                    AtomicBoolean truncated = new AtomicBoolean();
+                    return lists.read(budget.limit(values, sizeEstimator, () -> truncated.set(true)).contextWrite(call::writeTo),
+                            () -> truncated.get() || call.isPartial());
+                })
+                .thenMany(Flux.empty());
+    }
+
     @Override
     public Mono<Void> createProduct(ProductAggregate body) {
         try {
@@ -91,8 +271,51 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
         }
     }
 
+    private ProductAggregate createProductAggregate(Product product, BoundedList<Recommendation> recommendations,
+                                                    BoundedList<Review> reviews) {
+        PageInfo recommendationsPage = pageInfo(product.getProductId(), recommendations, Recommendation::getRecommendationId, truncatedRecommendations);
+        PageInfo reviewsPage = pageInfo(product.getProductId(), reviews, Review::getReviewId, truncatedReviews);
+        return createProductAggregate(product, recommendations.values(), reviews.values(), serviceUtil.getServiceAddress(),
+                recommendationsPage, reviewsPage);
+    }
+
+    private <T> PageInfo pageInfo(int productId, BoundedList<T> list, ToIntFunction<T> idOf, Counter truncations) {
+        List<T> values = list.values();
+        if (!list.truncated()) return new PageInfo(values.size(), false, null);
+
+        LOG.info("Truncated a list of the product aggregate for productId: {} after {} elements", productId, values.size());
+        truncations.increment();
+        int lastId = values.isEmpty() ? Integer.MIN_VALUE : idOf.applyAsInt(values.get(values.size() - 1));
+        return new PageInfo(values.size(), true, new Cursor(productId, lastId).encode());
+    }
+
+    private static ProductAggregate withFields(ProductAggregate aggregate, Set<ProductAggregateField> fields) {
+        if (fields.containsAll(ALL_FIELDS)) return aggregate;
+        boolean recommendations = fields.contains(RECOMMENDATIONS);
+        boolean reviews = fields.contains(REVIEWS);
+        return new ProductAggregate(aggregate.productId(), aggregate.name(), aggregate.weight(),
+                recommendations ? aggregate.recommendations() : null,
+                reviews ? aggregate.reviews() : null,
+                fields.contains(SERVICE_ADDRESSES) ? aggregate.serviceAddresses() : null,
+                recommendations ? aggregate.recommendationsPage() : null,
+                reviews ? aggregate.reviewsPage() : null);
+    }
+
+    private static long estimateSize(Recommendation r) {
+        return ELEMENT_OVERHEAD_BYTES + 4L * (length(r.getAuthor()) + length(r.getContent()) + length(r.getServiceAddress()));
+    }
+
+    private static long estimateSize(Review r) {
+        return ELEMENT_OVERHEAD_BYTES + 4L * (length(r.getAuthor()) + length(r.getSubject()) + length(r.getContent()) + length(r.getServiceAddress()));
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
     private ProductAggregate createProductAggregate(Product product, List<Recommendation> recommendations,
-                                                    List<Review> reviews, String serviceAddress) {
+                                                    List<Review> reviews, String serviceAddress,
+                                                    PageInfo recommendationsPage, PageInfo reviewsPage) {
         // 1. Setup product info
         int productId = product.getProductId();
         String name = product.getName();
@@ -116,6 +339,7 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
         String recommendationAddress = (recommendations != null && !recommendations.isEmpty()) ? recommendations.get(0).getServiceAddress() : "";
         ServiceAddresses serviceAddresses = new ServiceAddresses(serviceAddress, productAddress, reviewAddress, recommendationAddress);
 
-        return new ProductAggregate(productId, name, weight, recommendationSummaries, reviewSummaries, serviceAddresses);
+        return new ProductAggregate(productId, name, weight, recommendationSummaries, reviewSummaries, serviceAddresses,
+                recommendationsPage, reviewsPage);
     }
 }
@@ -0,0 +1,80 @@
+package re.elio.microservices.composite.product.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import re.elio.microservices.composite.product.services.AggregationBudget.BoundedList;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Splits the values of a batch call, ordered by the productIds, into the list of each product. The list of a product
+ * is emitted as soon as a value of a later product arrives, so that its aggregate does not wait for the whole batch.
+ * If the values end early, e.g. when the budget truncated them or when the call failed, the list of the product of
+ * the last value and the lists of the products after it are truncated.
+ */
+public class ProductLists<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(ProductLists.class);
+
+    private final List<Integer> productIds;
+    private final ToIntFunction<T> productIdOf;
+    private final Map<Integer, Sinks.One<BoundedList<T>>> lists = new LinkedHashMap<>();
+    private int current;
+    private List<T> values = new ArrayList<>();
+
+    public ProductLists(List<Integer> productIds, ToIntFunction<T> productIdOf) {
+        this.productIds = productIds;
+        this.productIdOf = productIdOf;
+        productIds.forEach(productId -> lists.put(productId, Sinks.one()));
+    }
+
+    /**
+     * @return the list of the product, emitted once the values of the product are read
+     */
+    public Mono<BoundedList<T>> of(int productId) {
+        Sinks.One<BoundedList<T>> list = lists.get(productId);
+        return list == null ? Mono.empty() : list.asMono();
+    }
+
+    /**
+     * Reads the values of a batch call. A failed call ends the values early, its error is not passed on.
+     *
+     * @param values     the values of the batch call, ordered by the productIds
+     * @param endedEarly tells, once the values are read, if they ended before the last value of the batch
+     */
+    public Mono<Void> read(Flux<T> values, BooleanSupplier endedEarly) {
+        return values.doOnNext(this::add)
+                .then(Mono.fromRunnable(() -> end(endedEarly.getAsBoolean())))
+                .onErrorResume(ex -> {
+                    LOG.debug("Reading the lists of productIds: {} failed: {}", productIds, ex.toString());
+                    end(true);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private synchronized void add(T value) {
+        int offset = productIds.subList(current, productIds.size()).indexOf(productIdOf.applyAsInt(value));
+        // Values of unexpected products, or out of order, are ignored
+        if (offset < 0) return;
+        int index = current + offset;
+        while (current < index) emit(false);
+        values.add(value);
+    }
+
+    private synchronized void end(boolean early) {
+        while (current < productIds.size()) emit(early);
+    }
+
+    private void emit(boolean truncated) {
+        lists.get(productIds.get(current++)).tryEmitValue(new BoundedList<>(values, truncated));
+        values = new ArrayList<>();
+    }
+}
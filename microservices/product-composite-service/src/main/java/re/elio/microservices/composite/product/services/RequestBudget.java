@@ -0,0 +1,38 @@
+package re.elio.microservices.composite.product.services;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket limiting extra calls, e.g. hedges or retries, to a ratio of the regular calls.
+ * Every regular call deposits ratio tokens, up to maxTokens, and every extra call withdraws one token.
+ */
+public class RequestBudget {
+    private static final long SCALE = 1000;
+
+    private final long depositPerCall;
+    private final long maxTokens;
+    private final AtomicLong tokens;
+
+    public RequestBudget(double ratio, int maxTokens) {
+        this.depositPerCall = Math.round(ratio * SCALE);
+        this.maxTokens = maxTokens * SCALE;
+        this.tokens = new AtomicLong(this.maxTokens);
+    }
+
+    public void deposit() {
+        tokens.getAndUpdate(current -> Math.min(maxTokens, current + depositPerCall));
+    }
+
+    public boolean tryWithdraw() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < SCALE) return false;
+        } while (!tokens.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    public double available() {
+        return (double) tokens.get() / SCALE;
+    }
+}
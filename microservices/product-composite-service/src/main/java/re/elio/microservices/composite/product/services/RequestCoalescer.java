@@ -0,0 +1,60 @@
+package re.elio.microservices.composite.product.services;
+
+import re.elio.api.exceptions.DeadlineExceededException;
+import re.elio.util.http.Deadline;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent subscribers for the same key share one in-flight call.
+ * <p>
+ * Subscribers joining while the call is in flight get the complete result replayed.
+ * The call is cancelled only when all of its subscribers have cancelled, and it is
+ * forgotten as soon as it terminates, so a later subscriber triggers a new call.
+ * <p>
+ * The call runs without the {@link Deadline} of the subscriber that started it, a short deadline of one
+ * subscriber must not fail the others. Each subscriber gives up on its own deadline instead, the call itself
+ * is bounded by the timeouts of the core service calls.
+ *
+ * @param <K> type of the key, e.g. a productId
+ */
+public class RequestCoalescer<K> {
+    private final Map<K, Flux<?>> inFlight = new ConcurrentHashMap<>();
+
+    public <T> Mono<T> coalesce(K key, Supplier<Mono<T>> call) {
+        return coalesceMany(key, () -> call.get().flux()).singleOrEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Flux<T> coalesceMany(K key, Supplier<Flux<T>> call) {
+        return Flux.deferContextual(context -> {
+            Flux<T> shared = (Flux<T>) inFlight.computeIfAbsent(key, k -> {
+                AtomicReference<Flux<T>> ref = new AtomicReference<>();
+                ref.set(call.get()
+                        .contextWrite(callContext -> callContext.delete(Deadline.class))
+                        .doFinally(signal -> inFlight.remove(k, ref.get()))
+                        .replay()
+                        .refCount());
+                return ref.get();
+            });
+            return withDeadline(shared, Deadline.from(context));
+        });
+    }
+
+    private static <T> Flux<T> withDeadline(Flux<T> shared, Optional<Deadline> deadline) {
+        if (deadline.isEmpty()) return shared;
+        // The first and each next element must arrive before the deadline
+        return shared.timeout(Mono.delay(deadline.get().remaining()), value -> Mono.delay(deadline.get().remaining()),
+                Flux.error(() -> new DeadlineExceededException("Deadline of the request exceeded")));
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,123 @@
+package re.elio.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.rsocket.exceptions.ApplicationErrorException;
+import io.rsocket.exceptions.ConnectionCloseException;
+import io.rsocket.exceptions.ConnectionErrorException;
+import io.rsocket.exceptions.RejectedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import re.elio.util.http.Deadline;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.netty.http.client.PrematureCloseException;
+import reactor.util.retry.Retry;
+
+import java.nio.channels.ClosedChannelException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Retries idempotent calls to a core service that failed on the connection level or with a 5xx response.
+ * Over RSocket, lost connections and the errors of a responder that failed or rejected the request count
+ * as 5xx responses, the application defined error codes of {@link re.elio.util.rsocket.RSocketErrors} as 4xx responses.
+ * <p>
+ * Retries are delayed by a jittered exponential backoff, are only made if they can start within
+ * the remaining {@link Deadline} of the request and withdraw a token from a {@link RequestBudget} shared by
+ * all downstreams, so that retries can't multiply the load on a service that is already failing.
+ * A call that has already emitted values is not retried.
+ * <p>
+ * Retries are counted in "composite.retry.attempts" and retries denied by the budget in "composite.retry.budget.exhausted".
+ */
+public class RetryPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(RetryPolicy.class);
+
+    private final String name;
+    private final int maxRetries;
+    private final Duration minBackoff;
+    private final Duration maxBackoff;
+    private final RequestBudget budget;
+    private final Scheduler scheduler;
+    private final Counter attempts;
+    private final Counter budgetExhausted;
+
+    public RetryPolicy(String name, int maxRetries, Duration minBackoff, Duration maxBackoff,
+                       RequestBudget budget, Scheduler scheduler, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxRetries = maxRetries;
+        this.minBackoff = minBackoff;
+        this.maxBackoff = maxBackoff;
+        this.budget = budget;
+        this.scheduler = scheduler;
+        this.attempts = Counter.builder("composite.retry.attempts")
+                .description("Number of retried calls to a core service")
+                .tag("downstream", name)
+                .register(meterRegistry);
+        this.budgetExhausted = Counter.builder("composite.retry.budget.exhausted")
+                .description("Number of retries not made since the retry budget was exhausted")
+                .tag("downstream", name)
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> apply(Mono<T> call) {
+        return Mono.from(apply(call.flux()));
+    }
+
+    public <T> Flux<T> apply(Flux<T> call) {
+        if (maxRetries < 1) return call;
+
+        return Flux.deferContextual(context -> {
+            budget.deposit();
+            Optional<Deadline> deadline = Deadline.from(context);
+            AtomicBoolean emitted = new AtomicBoolean();
+            return call
+                    .doOnNext(value -> emitted.set(true))
+                    .retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+                        Throwable failure = signal.failure();
+                        if (emitted.get() || !isRetryable(failure) || signal.totalRetries() >= maxRetries) {
+                            return Mono.error(failure);
+                        }
+                        Duration backoff = backoff(signal.totalRetries());
+                        if (deadline.isPresent() && deadline.get().remaining().compareTo(backoff) <= 0) {
+                            return Mono.error(failure);
+                        }
+                        if (!budget.tryWithdraw()) {
+                            budgetExhausted.increment();
+                            return Mono.error(failure);
+                        }
+                        attempts.increment();
+                        LOG.debug("Retries call to {} in {} ms after: {}", name, backoff.toMillis(), failure.toString());
+                        return Mono.delay(backoff, scheduler);
+                    })));
+        });
+    }
+
+    private Duration backoff(long retriesSoFar) {
+        long ceiling = Math.min(maxBackoff.toNanos(), minBackoff.toNanos() << Math.min(retriesSoFar, 20));
+        return Duration.ofNanos(ThreadLocalRandom.current().nextLong(minBackoff.toNanos() / 2, Math.max(ceiling, minBackoff.toNanos() / 2 + 1)));
+    }
+
+    private boolean isRetryable(Throwable ex) {
+        if (ex instanceof WebClientRequestException || ex instanceof PrematureCloseException) return true;
+        if (ex instanceof WebClientResponseException responseEx) return responseEx.getStatusCode().is5xxServerError();
+        return isRSocketServerError(ex);
+    }
+
+    /**
+     * @return true for the RSocket errors of a lost connection, of a responder that failed processing the request
+     * (APPLICATION_ERROR) and of a responder that rejected it without processing it (REJECTED)
+     */
+    public static boolean isRSocketServerError(Throwable ex) {
+        return ex instanceof ClosedChannelException
+                || ex instanceof ConnectionErrorException
+                || ex instanceof ConnectionCloseException
+                || ex instanceof RejectedException
+                || ex instanceof ApplicationErrorException;
+    }
+}
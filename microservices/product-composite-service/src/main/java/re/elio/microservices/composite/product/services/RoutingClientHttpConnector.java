@@ -0,0 +1,29 @@
+package re.elio.microservices.composite.product.services;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.http.client.reactive.ClientHttpResponse;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Sends the requests to a connector selected by the authority of their URL, or else to the default connector.
+ */
+public class RoutingClientHttpConnector implements ClientHttpConnector {
+    private final ClientHttpConnector defaultConnector;
+    private final Map<String, ClientHttpConnector> connectors;
+
+    public RoutingClientHttpConnector(ClientHttpConnector defaultConnector, Map<String, ClientHttpConnector> connectors) {
+        this.defaultConnector = defaultConnector;
+        this.connectors = Map.copyOf(connectors);
+    }
+
+    @Override
+    public Mono<ClientHttpResponse> connect(HttpMethod method, URI uri, Function<? super ClientHttpRequest, Mono<Void>> requestCallback) {
+        return connectors.getOrDefault(uri.getAuthority(), defaultConnector).connect(method, uri, requestCallback);
+    }
+}
@@ -0,0 +1,79 @@
+package re.elio.microservices.composite.product.services;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * The ETags of the core service responses that a product aggregate was built from, keyed by URL.
+ * Collected by {@link VersionTagsExchangeFilter} for the calls made with the VersionTags in their Reactor context.
+ * Calls that fall back to an empty result mark the aggregate as partial.
+ */
+public class VersionTags {
+    private final Map<String, String> eTags = new TreeMap<>();
+    private boolean incomplete;
+    private boolean partial;
+
+    public static Optional<VersionTags> from(ContextView context) {
+        return context.getOrEmpty(VersionTags.class);
+    }
+
+    public Context writeTo(Context context) {
+        return context.put(VersionTags.class, this);
+    }
+
+    synchronized void record(String url, String eTag) {
+        if (eTag == null) incomplete = true;
+        else eTags.put(url, eTag);
+    }
+
+    synchronized void markIncomplete() {
+        incomplete = true;
+    }
+
+    /**
+     * Adds the ETags recorded by a call shared with other requests, e.g. a batch call.
+     */
+    void addAll(VersionTags shared) {
+        Map<String, String> sharedETags;
+        boolean sharedIncomplete;
+        synchronized (shared) {
+            sharedETags = new TreeMap<>(shared.eTags);
+            sharedIncomplete = shared.incomplete;
+        }
+        synchronized (this) {
+            eTags.putAll(sharedETags);
+            incomplete |= sharedIncomplete;
+        }
+    }
+
+    synchronized void markPartial() {
+        incomplete = true;
+        partial = true;
+    }
+
+    /**
+     * @return true if a call fell back to an empty result, e.g. after a timeout or with an open circuit breaker
+     */
+    public synchronized boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * @param expectedCalls number of core service calls the aggregate was built from
+     * @return true if all the calls returned an ETag. Coalesced calls shared with other requests may not have been recorded.
+     */
+    public synchronized boolean isComplete(int expectedCalls) {
+        return !incomplete && eTags.size() == expectedCalls;
+    }
+
+    /**
+     * @return the ETags by URL, ordered by URL
+     */
+    public synchronized Map<String, String> getETags() {
+        return new TreeMap<>(eTags);
+    }
+}
@@ -0,0 +1,28 @@
+package re.elio.microservices.composite.product.services;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Records the ETag of each successful GET response in the {@link VersionTags} of the Reactor context, if any.
+ */
+public class VersionTagsExchangeFilter implements ExchangeFilterFunction {
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.deferContextual(context -> VersionTags.from(context)
+                .filter(tags -> request.method() == HttpMethod.GET)
+                .map(tags -> next.exchange(request).doOnNext(response -> {
+                    if (response.statusCode().is2xxSuccessful()) {
+                        tags.record(request.url().toString(), response.headers().asHttpHeaders().getETag());
+                    } else {
+                        tags.markIncomplete();
+                    }
+                }))
+                .orElseGet(() -> next.exchange(request)));
+    }
+}
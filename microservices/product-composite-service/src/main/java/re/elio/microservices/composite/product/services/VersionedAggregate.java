@@ -0,0 +1,11 @@
+package re.elio.microservices.composite.product.services;
+
+import re.elio.api.composite.product.ProductAggregate;
+
+/**
+ * A product aggregate with the ETags of the core service responses it was built from.
+ *
+ * @param partial true if the recommendations or reviews are missing because their call failed
+ */
+public record VersionedAggregate(ProductAggregate aggregate, VersionTags versions, boolean partial) {
+}
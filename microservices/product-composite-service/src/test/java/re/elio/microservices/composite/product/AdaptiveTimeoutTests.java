@@ -0,0 +1,72 @@
+package re.elio.microservices.composite.product;
+
+import org.junit.jupiter.api.Test;
+import re.elio.api.exceptions.DeadlineExceededException;
+import re.elio.microservices.composite.product.services.AdaptiveTimeout;
+import re.elio.microservices.composite.product.services.LatencyTracker;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdaptiveTimeoutTests {
+
+    private final LatencyTracker latencies = new LatencyTracker(100);
+    private final AdaptiveTimeout timeout = new AdaptiveTimeout("test", latencies, 0.99, 3,
+            Duration.ofMillis(100), Duration.ofMillis(2000), 100);
+
+    @Test
+    void ceilingIsUsedUntilEnoughLatenciesAreRecorded() {
+        assertEquals(Duration.ofMillis(2000), timeout.current());
+    }
+
+    @Test
+    void timeoutFollowsThePercentile() {
+        record(Duration.ofMillis(50));
+        assertEquals(Duration.ofMillis(150), timeout.current());
+    }
+
+    @Test
+    void timeoutIsBounded() {
+        LatencyTracker fast = new LatencyTracker(100);
+        for (int i = 0; i < 100; i++) fast.record(Duration.ofMillis(1).toNanos());
+        assertEquals(Duration.ofMillis(100), new AdaptiveTimeout("fast", fast, 0.99, 3,
+                Duration.ofMillis(100), Duration.ofMillis(2000), 100).current());
+
+        record(Duration.ofSeconds(1));
+        assertEquals(Duration.ofMillis(2000), timeout.current());
+    }
+
+    @Test
+    void timedOutCallsRaiseTheTimeout() throws InterruptedException {
+        LatencyTracker tracker = new LatencyTracker(100);
+        AdaptiveTimeout slow = new AdaptiveTimeout("slow", tracker, 0.99, 3,
+                Duration.ofMillis(100), Duration.ofMillis(2000), 1);
+        tracker.record(Duration.ofMillis(50).toNanos());
+        assertEquals(Duration.ofMillis(150), slow.current());
+
+        StepVerifier.withVirtualTime(() -> slow.apply(Mono.never()))
+                .thenAwait(Duration.ofSeconds(1))
+                .verifyError(DeadlineExceededException.class);
+
+        // Percentiles are recomputed at most every 100 ms
+        Thread.sleep(150);
+        assertEquals(Duration.ofMillis(450), slow.current());
+    }
+
+    @Test
+    void oldLatenciesAreLeftOut() throws InterruptedException {
+        LatencyTracker tracker = new LatencyTracker(100, Duration.ofMillis(50));
+        for (int i = 0; i < 100; i++) tracker.record(Duration.ofMillis(50).toNanos());
+        assertEquals(100, tracker.sampleCount());
+
+        Thread.sleep(150);
+        assertEquals(0, tracker.sampleCount());
+    }
+
+    private void record(Duration latency) {
+        for (int i = 0; i < 100; i++) latencies.record(latency.toNanos());
+    }
+}
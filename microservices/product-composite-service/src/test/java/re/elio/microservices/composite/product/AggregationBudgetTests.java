@@ -0,0 +1,35 @@
+package re.elio.microservices.composite.product;
+
+import org.junit.jupiter.api.Test;
+import re.elio.microservices.composite.product.services.AggregationBudget;
+import re.elio.microservices.composite.product.services.AggregationBudget.BoundedList;
+import reactor.core.publisher.Flux;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AggregationBudgetTests {
+
+    private final AggregationBudget budget = new AggregationBudget(3, 1000);
+
+    @Test
+    void eachListHasItsOwnBudget() {
+        BoundedList<Integer> first = budget.collect(Flux.range(1, 3), value -> 10).block();
+        BoundedList<Integer> second = budget.collect(Flux.range(1, 3), value -> 10).block();
+
+        assertEquals(3, first.values().size());
+        assertFalse(first.truncated());
+        assertEquals(3, second.values().size());
+        assertFalse(second.truncated());
+    }
+
+    @Test
+    void listsAboveTheBudgetAreTruncated() {
+        BoundedList<Integer> tooMany = budget.collect(Flux.range(1, 4), value -> 10).block();
+        assertEquals(3, tooMany.values().size());
+        assertTrue(tooMany.truncated());
+
+        BoundedList<Integer> tooLarge = budget.collect(Flux.range(1, 3), value -> 400).block();
+        assertEquals(2, tooLarge.values().size());
+        assertTrue(tooLarge.truncated());
+    }
+}
@@ -0,0 +1,39 @@
+package re.elio.microservices.composite.product;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+class ConcurrencyLimitWebFilterTests {
+
+    private final ConcurrencyLimitWebFilter filter =
+            new ConcurrencyLimitWebFilter(new SimpleMeterRegistry(), true, 1, 1, 1, 1.5, 1, 1);
+
+    @Test
+    void streamsDoNotHoldThePermitsOfShortRequests() {
+        Disposable stream = filter.filter(exchange("/product-composite/1/stream"), exchange -> Mono.never()).subscribe();
+
+        MockServerWebExchange request = exchange("/product-composite/1");
+        filter.filter(request, exchange -> Mono.empty()).block();
+        assertNull(request.getResponse().getStatusCode());
+
+        MockServerWebExchange secondStream = exchange("/product-composite/2/stream");
+        filter.filter(secondStream, exchange -> Mono.empty()).block();
+        assertEquals(SERVICE_UNAVAILABLE, secondStream.getResponse().getStatusCode());
+
+        stream.dispose();
+        MockServerWebExchange thirdStream = exchange("/product-composite/3/stream");
+        filter.filter(thirdStream, exchange -> Mono.empty()).block();
+        assertNull(thirdStream.getResponse().getStatusCode());
+    }
+
+    private static MockServerWebExchange exchange(String path) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get(path));
+    }
+}
@@ -0,0 +1,26 @@
+package re.elio.microservices.composite.product;
+
+import org.junit.jupiter.api.Test;
+import re.elio.microservices.composite.product.services.CoreServiceAddress;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoreServiceAddressTests {
+
+    @Test
+    void tcpAddress() {
+        CoreServiceAddress address = new CoreServiceAddress("product-service", "product", 8080);
+
+        assertFalse(address.isUnixSocket());
+        assertEquals("http://product:8080", address.getUrl());
+    }
+
+    @Test
+    void unixSocketAddress() {
+        CoreServiceAddress address = new CoreServiceAddress("product-service", "unix:/var/run/product.sock", 8080);
+
+        assertTrue(address.isUnixSocket());
+        assertEquals("/var/run/product.sock", address.getSocketPath());
+        assertEquals("http://product-service", address.getUrl());
+    }
+}
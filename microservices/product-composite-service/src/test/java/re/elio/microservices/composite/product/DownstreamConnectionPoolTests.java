@@ -0,0 +1,100 @@
+package re.elio.microservices.composite.product;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import re.elio.microservices.composite.product.services.DownstreamConnectionPool;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownstreamConnectionPoolTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private DisposableServer server;
+    private DownstreamConnectionPool pool;
+
+    @BeforeEach
+    void startServer() {
+        server = healthServer();
+        pool = new DownstreamConnectionPool("product", List.of("http://localhost:" + server.port()),
+                ConnectionProvider.builder("product").maxConnections(10), client -> client, false, 3, meterRegistry);
+    }
+
+    private static DisposableServer healthServer() {
+        return HttpServer.create()
+                .port(0)
+                .route(routes -> routes.get("/actuator/health", (request, response) -> response.sendString(
+                        Mono.just("{\"status\":\"UP\"}").delayElement(Duration.ofMillis(50)))))
+                .bindNow();
+    }
+
+    @AfterEach
+    void stopServer() {
+        pool.close();
+        server.disposeNow();
+    }
+
+    @Test
+    void warmupOpensConnections() {
+        pool.warmup().block(Duration.ofSeconds(5));
+
+        // The warmup calls are concurrent, each gets a connection of its own
+        assertEquals(3, gauge("composite.pool.connections.total"));
+        assertEquals(0, gauge("composite.pool.connections.pending"));
+        assertEquals(3, meterRegistry.get("composite.pool.acquire.time").tag("downstream", "product").timer().count());
+    }
+
+    @Test
+    void gaugesAreRemovedWhenThePoolIsClosed() {
+        pool.warmup().block(Duration.ofSeconds(5));
+        System.gc();
+        // The gauges keep the pool metrics they read from
+        assertEquals(3, gauge("composite.pool.connections.total"));
+
+        pool.close();
+
+        assertTrue(meterRegistry.find("composite.pool.connections.total").tag("downstream", "product").gauges().isEmpty());
+        assertTrue(meterRegistry.find("composite.pool.connections.active").tag("downstream", "product").gauges().isEmpty());
+    }
+
+    @Test
+    void warmupOfUnavailableServiceIsIgnored() {
+        server.disposeNow();
+
+        assertDoesNotThrow(() -> pool.warmup().block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void warmupOpensConnectionsToEachInstance() {
+        DisposableServer instance = healthServer();
+        DisposableServer unavailableInstance = healthServer();
+        unavailableInstance.disposeNow();
+        DownstreamConnectionPool instancesPool = new DownstreamConnectionPool("review",
+                List.of("http://localhost:" + unavailableInstance.port(), "http://localhost:" + server.port(), "http://localhost:" + instance.port()),
+                ConnectionProvider.builder("review").maxConnections(10), client -> client, false, 2, meterRegistry);
+        try {
+            instancesPool.warmup().block(Duration.ofSeconds(5));
+
+            // An instance that is down does not keep the others from being warmed up
+            List<Double> connections = meterRegistry.get("composite.pool.connections.total").tag("downstream", "review").gauges()
+                    .stream().map(Gauge::value).filter(value -> value > 0).toList();
+            assertEquals(List.of(2.0, 2.0), connections);
+        } finally {
+            instancesPool.close();
+            instance.disposeNow();
+        }
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).tag("downstream", "product").gauge().value();
+    }
+}
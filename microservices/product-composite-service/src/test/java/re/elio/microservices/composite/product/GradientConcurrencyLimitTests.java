@@ -0,0 +1,59 @@
+package re.elio.microservices.composite.product;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GradientConcurrencyLimitTests {
+
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = Duration.ofMillis(100).toNanos();
+
+    private final GradientConcurrencyLimit limit = new GradientConcurrencyLimit(100, 10, 1000, 1.5);
+
+    @Test
+    void requestsAboveTheLimitAreRejected() {
+        GradientConcurrencyLimit small = new GradientConcurrencyLimit(10, 10, 1000, 1.5);
+        for (int i = 0; i < 10; i++) assertTrue(small.tryAcquire());
+        assertFalse(small.tryAcquire());
+
+        small.release(FAST, true);
+        assertTrue(small.tryAcquire());
+    }
+
+    @Test
+    void limitGrowsWhileLatencyIsStable() {
+        for (int i = 0; i < 80; i++) limit.tryAcquire();
+        for (int i = 0; i < 20; i++) limit.release(FAST, true);
+
+        assertTrue(limit.getLimit() > 100);
+        assertEquals(60, limit.getInFlight());
+    }
+
+    @Test
+    void unusedLimitDoesNotGrow() {
+        for (int i = 0; i < 20; i++) {
+            limit.tryAcquire();
+            limit.release(FAST, true);
+        }
+
+        assertEquals(100, limit.getLimit());
+    }
+
+    @Test
+    void limitShrinksWhenLatencyRises() {
+        for (int i = 0; i < 20; i++) {
+            limit.tryAcquire();
+            limit.release(FAST, true);
+        }
+        for (int i = 0; i < 20; i++) {
+            limit.tryAcquire();
+            limit.release(SLOW, true);
+        }
+
+        assertTrue(limit.getLimit() < 100);
+        assertTrue(limit.getLimit() >= 10);
+    }
+}
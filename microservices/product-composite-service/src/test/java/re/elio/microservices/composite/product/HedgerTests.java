@@ -0,0 +1,132 @@
+package re.elio.microservices.composite.product;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import re.elio.microservices.composite.product.services.Hedger;
+import re.elio.microservices.composite.product.services.LatencyTracker;
+import re.elio.microservices.composite.product.services.RequestBudget;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgerTests {
+
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final LatencyTracker latencies = new LatencyTracker(100);
+
+    @BeforeEach
+    void setupLatencies() {
+        for (int i = 0; i < 100; i++) latencies.record(Duration.ofMillis(10).toNanos());
+    }
+
+    @Test
+    void slowCallIsHedgedAndCancelled() {
+        Hedger hedger = hedger(new RequestBudget(0.05, 10));
+        AtomicInteger calls = new AtomicInteger();
+        AtomicBoolean slowCallCancelled = new AtomicBoolean();
+        Sinks.Many<String> slowResponse = Sinks.many().unicast().onBackpressureBuffer();
+
+        List<String> results = new ArrayList<>();
+        hedger.hedge(() -> calls.incrementAndGet() == 1
+                        ? slowResponse.asFlux().doOnCancel(() -> slowCallCancelled.set(true))
+                        : Flux.just("hedged"))
+                .subscribe(results::add);
+
+        scheduler.advanceTimeBy(Duration.ofMillis(9));
+        assertEquals(1, calls.get());
+
+        scheduler.advanceTimeBy(Duration.ofMillis(1));
+        assertEquals(2, calls.get());
+        assertEquals(List.of("hedged"), results);
+        assertTrue(slowCallCancelled.get());
+        assertEquals(1, meterRegistry.get("composite.hedge.fired").counter().count());
+        assertEquals(1, meterRegistry.get("composite.hedge.won").counter().count());
+    }
+
+    @Test
+    void failedHedgeDoesNotCancelTheCall() {
+        Hedger hedger = hedger(new RequestBudget(0.05, 10));
+        AtomicInteger calls = new AtomicInteger();
+        AtomicBoolean slowCallCancelled = new AtomicBoolean();
+        Sinks.Many<String> slowResponse = Sinks.many().unicast().onBackpressureBuffer();
+
+        List<String> results = new ArrayList<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        hedger.hedge(() -> calls.incrementAndGet() == 1
+                        ? slowResponse.asFlux().doOnCancel(() -> slowCallCancelled.set(true))
+                        : Flux.<String>error(new IllegalStateException("Connection reset")))
+                .subscribe(results::add, error::set);
+
+        scheduler.advanceTimeBy(Duration.ofMillis(10));
+        assertEquals(2, calls.get());
+        assertFalse(slowCallCancelled.get());
+        assertNull(error.get());
+
+        slowResponse.tryEmitNext("original");
+        slowResponse.tryEmitComplete();
+        assertEquals(List.of("original"), results);
+        assertNull(error.get());
+        assertEquals(0, meterRegistry.get("composite.hedge.won").counter().count());
+    }
+
+    @Test
+    void errorIsReturnedWhenBothCallsFail() {
+        Hedger hedger = hedger(new RequestBudget(0.05, 10));
+        AtomicInteger calls = new AtomicInteger();
+        Sinks.Many<String> slowResponse = Sinks.many().unicast().onBackpressureBuffer();
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        hedger.hedge(() -> calls.incrementAndGet() == 1
+                        ? slowResponse.asFlux()
+                        : Flux.<String>error(new IllegalStateException("hedged")))
+                .subscribe(value -> {}, error::set);
+
+        scheduler.advanceTimeBy(Duration.ofMillis(10));
+        assertNull(error.get());
+
+        slowResponse.tryEmitError(new IllegalStateException("original"));
+        assertEquals("original", error.get().getMessage());
+    }
+
+    @Test
+    void fastCallIsNotHedged() {
+        Hedger hedger = hedger(new RequestBudget(0.05, 10));
+        AtomicInteger calls = new AtomicInteger();
+
+        List<String> results = new ArrayList<>();
+        hedger.hedge(() -> Flux.just("call " + calls.incrementAndGet())).subscribe(results::add);
+        scheduler.advanceTimeBy(Duration.ofMillis(100));
+
+        assertEquals(List.of("call 1"), results);
+        assertEquals(0, meterRegistry.get("composite.hedge.fired").counter().count());
+    }
+
+    @Test
+    void noHedgeWhenBudgetIsExhausted() {
+        Hedger hedger = hedger(new RequestBudget(0.05, 1));
+        AtomicInteger calls = new AtomicInteger();
+
+        hedger.hedge(() -> Flux.<String>never().doOnSubscribe(s -> calls.incrementAndGet())).subscribe();
+        hedger.hedge(() -> Flux.<String>never().doOnSubscribe(s -> calls.incrementAndGet())).subscribe();
+        scheduler.advanceTimeBy(Duration.ofMillis(100));
+
+        assertEquals(3, calls.get(), "only the first call is hedged");
+        assertEquals(1, meterRegistry.get("composite.hedge.fired").counter().count());
+    }
+
+    private Hedger hedger(RequestBudget budget) {
+        return new Hedger("test", true, 0.95, Duration.ofMillis(5), 100,
+                latencies, budget, scheduler, meterRegistry);
+    }
+}
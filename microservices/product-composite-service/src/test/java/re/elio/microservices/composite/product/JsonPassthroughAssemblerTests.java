@@ -0,0 +1,65 @@
+package re.elio.microservices.composite.product;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import re.elio.api.composite.product.*;
+import re.elio.api.core.Cursor;
+import re.elio.api.core.product.Product;
+import re.elio.api.core.recommendation.Recommendation;
+import re.elio.api.core.review.Review;
+import re.elio.microservices.composite.product.services.JsonPassthroughAssembler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JsonPassthroughAssemblerTests {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonPassthroughAssembler assembler = new JsonPassthroughAssembler(mapper);
+    private final Product product = new Product(1, "name", 2, "product-address");
+
+    @Test
+    void givesTheSameJsonAsTheProductAggregate() throws Exception {
+        List<Recommendation> recommendations = List.of(
+                new Recommendation(1, 1, "a", 3, "c", "recommendation-address"),
+                new Recommendation(1, 2, "a", 4, "c", "recommendation-address"));
+        List<Review> reviews = List.of(new Review(1, 1, "a", "s", "c", "review-address"));
+
+        ProductAggregate expected = new ProductAggregate(1, "name", 2,
+                List.of(new RecommendationSummary(1, "a", 3, "c"), new RecommendationSummary(2, "a", 4, "c")),
+                List.of(new ReviewSummary(1, "a", "s", "c")),
+                new ServiceAddresses("composite-address", "product-address", "review-address", "recommendation-address"),
+                new PageInfo(2, false, null), new PageInfo(1, false, null));
+
+        assertEquals(mapper.writeValueAsString(expected), assemble(recommendations, reviews, 2));
+    }
+
+    @Test
+    void truncatesListsLongerThanThePageSize() throws Exception {
+        List<Recommendation> recommendations = List.of(
+                new Recommendation(1, 1, "a", 3, "c", "recommendation-address"),
+                new Recommendation(1, 2, "a", 4, "c", "recommendation-address"),
+                new Recommendation(1, 3, "a", 5, "c", "recommendation-address"));
+
+        ProductAggregate expected = new ProductAggregate(1, "name", 2,
+                List.of(new RecommendationSummary(1, "a", 3, "c"), new RecommendationSummary(2, "a", 4, "c")),
+                List.of(),
+                new ServiceAddresses("composite-address", "product-address", "", "recommendation-address"),
+                new PageInfo(2, true, new Cursor(1, 2).encode()), new PageInfo(0, false, null));
+
+        assertEquals(mapper.writeValueAsString(expected), assemble(recommendations, List.of(), 2));
+    }
+
+    private String assemble(List<Recommendation> recommendations, List<Review> reviews, int pageSize) throws Exception {
+        DataBuffer result = assembler.assemble(product, toJson(recommendations), toJson(reviews), pageSize, "composite-address");
+        return result.toString(StandardCharsets.UTF_8);
+    }
+
+    private DataBuffer toJson(Object value) throws Exception {
+        return DefaultDataBufferFactory.sharedInstance.wrap(mapper.writeValueAsBytes(value));
+    }
+}
@@ -0,0 +1,190 @@
+package re.elio.microservices.composite.product;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import re.elio.microservices.composite.product.services.LoadBalancer;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadBalancerTests {
+
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void fasterInstanceIsPreferred() {
+        LoadBalancer loadBalancer = loadBalancer(10);
+        measure(loadBalancer, Duration.ofMillis(10), Duration.ofMillis(50));
+
+        for (int i = 0; i < 10; i++) {
+            LoadBalancer.Instance instance = loadBalancer.choose();
+            assertEquals("fast:8080", instance.getAddress());
+            loadBalancer.complete(instance, Duration.ofMillis(10).toNanos(), false);
+        }
+    }
+
+    @Test
+    void lessLoadedInstanceIsPreferred() {
+        LoadBalancer loadBalancer = loadBalancer(10);
+        measure(loadBalancer, Duration.ofMillis(10), Duration.ofMillis(10));
+
+        LoadBalancer.Instance first = loadBalancer.choose();
+        LoadBalancer.Instance second = loadBalancer.choose();
+        assertNotEquals(first.getAddress(), second.getAddress());
+    }
+
+    @Test
+    void laterAttemptsAvoidTheInstancesOfEarlierOnes() {
+        LoadBalancer loadBalancer = loadBalancer(10);
+        measure(loadBalancer, Duration.ofMillis(10), Duration.ofMillis(50));
+
+        LoadBalancer.Attempts attempts = new LoadBalancer.Attempts();
+        LoadBalancer.Instance first = loadBalancer.choose(attempts);
+        LoadBalancer.Instance second = loadBalancer.choose(attempts);
+        assertEquals("fast:8080", first.getAddress());
+        assertEquals("slow:8080", second.getAddress());
+
+        // With no instance left that was not attempted, any instance is chosen
+        assertNotNull(loadBalancer.choose(attempts));
+    }
+
+    @Test
+    void failingInstanceIsEjected() {
+        LoadBalancer loadBalancer = loadBalancer(10);
+        measure(loadBalancer, Duration.ofMillis(1), Duration.ofMillis(10));
+
+        // The failing calls are fast, the instance keeps being chosen until it is ejected
+        for (int i = 0; i < 5; i++) {
+            LoadBalancer.Instance instance = loadBalancer.choose();
+            assertEquals("fast:8080", instance.getAddress());
+            loadBalancer.complete(instance, Duration.ofMillis(1).toNanos(), true);
+        }
+        assertEquals(1, ejections("fast:8080"));
+
+        for (int i = 0; i < 10; i++) {
+            LoadBalancer.Instance instance = loadBalancer.choose();
+            assertEquals("slow:8080", instance.getAddress());
+            loadBalancer.complete(instance, Duration.ofMillis(10).toNanos(), false);
+        }
+
+        // Back after the ejection time with the latency of the other instance, it does not get all calls
+        scheduler.advanceTimeBy(Duration.ofSeconds(30));
+        LoadBalancer.Instance first = loadBalancer.choose();
+        LoadBalancer.Instance second = loadBalancer.choose();
+        assertNotEquals(first.getAddress(), second.getAddress());
+    }
+
+    @Test
+    void slowInstanceIsEjected() {
+        LoadBalancer loadBalancer = loadBalancer(3);
+        measure(loadBalancer, Duration.ofMillis(10), Duration.ofMillis(50));
+        measure(loadBalancer, Duration.ofMillis(10), Duration.ofMillis(50));
+        assertEquals(0, ejections("slow:8080"));
+
+        measure(loadBalancer, Duration.ofMillis(10), Duration.ofMillis(50));
+        assertEquals(1, ejections("slow:8080"));
+        assertEquals(0, ejections("fast:8080"));
+    }
+
+    @Test
+    void singleSlowCallDoesNotEject() {
+        LoadBalancer loadBalancer = loadBalancer(3);
+        for (int i = 0; i < 3; i++) {
+            scheduler.advanceTimeBy(Duration.ofMillis(100));
+            measure(loadBalancer, Duration.ofMillis(10), Duration.ofMillis(10));
+        }
+
+        // E.g. a GC pause
+        scheduler.advanceTimeBy(Duration.ofMillis(100));
+        measure(loadBalancer, Duration.ofMillis(10), Duration.ofMillis(500));
+
+        assertEquals(0, ejections("slow:8080"));
+    }
+
+    @Test
+    void cancelledCallIsNotMeasured() {
+        LoadBalancer loadBalancer = loadBalancer(10);
+        measure(loadBalancer, Duration.ofMillis(10), Duration.ofMillis(10));
+
+        // E.g. the losing call of a hedge, cancelled after 5 seconds
+        LoadBalancer.Instance cancelled = loadBalancer.choose();
+        scheduler.advanceTimeBy(Duration.ofSeconds(5));
+        loadBalancer.cancel(cancelled);
+
+        LoadBalancer.Instance first = loadBalancer.choose();
+        LoadBalancer.Instance second = loadBalancer.choose();
+        assertNotEquals(first.getAddress(), second.getAddress());
+    }
+
+    @Test
+    void idleInstanceIsMeasuredAgain() {
+        LoadBalancer loadBalancer = loadBalancer(10);
+        measure(loadBalancer, Duration.ofMillis(10), Duration.ofMillis(50));
+
+        // The latency of the idle slow instance decays until it gets a call again
+        for (int i = 0; i < 30; i++) {
+            scheduler.advanceTimeBy(Duration.ofSeconds(1));
+            LoadBalancer.Instance instance = loadBalancer.choose();
+            loadBalancer.complete(instance, Duration.ofMillis(10).toNanos(), false);
+            if (instance.getAddress().equals("slow:8080")) return;
+        }
+        fail("The idle instance got no call");
+    }
+
+    @Test
+    void trafficShareIsReported() {
+        LoadBalancer loadBalancer = loadBalancer(10);
+        measure(loadBalancer, Duration.ofMillis(10), Duration.ofMillis(50));
+        for (int i = 0; i < 18; i++) {
+            loadBalancer.complete(loadBalancer.choose(), Duration.ofMillis(10).toNanos(), false);
+        }
+
+        assertEquals(0.95, trafficShare("fast:8080"), 0.01);
+        assertEquals(0.05, trafficShare("slow:8080"), 0.01);
+        assertEquals(19, meterRegistry.get("composite.loadbalancer.calls").tag("instance", "fast:8080").counter().count());
+    }
+
+    @Test
+    void callIsSentToChosenInstance() {
+        LoadBalancer.Instance instance = loadBalancer(10).choose();
+
+        URI uri = instance.resolve(URI.create("http://product-service/product/1?limit=10&cursor=a%2Bb"));
+
+        assertEquals("http://" + instance.getAddress() + "/product/1?limit=10&cursor=a%2Bb", uri.toString());
+    }
+
+    private LoadBalancer loadBalancer(double slowFactor) {
+        return new LoadBalancer("product", List.of("fast:8080", "slow:8080"), Duration.ofSeconds(10), 5, slowFactor,
+                3, Duration.ofSeconds(30), scheduler, meterRegistry);
+    }
+
+    /**
+     * Sends calls until each instance has at least one in flight, the calls to the fast instance answer first
+     */
+    private void measure(LoadBalancer loadBalancer, Duration fastLatency, Duration slowLatency) {
+        List<LoadBalancer.Instance> instances = new ArrayList<>();
+        while (instances.stream().map(LoadBalancer.Instance::getAddress).distinct().count() < 2) {
+            instances.add(loadBalancer.choose());
+        }
+        instances.sort(Comparator.comparing(LoadBalancer.Instance::getAddress));
+        for (LoadBalancer.Instance instance : instances) {
+            Duration latency = instance.getAddress().equals("fast:8080") ? fastLatency : slowLatency;
+            loadBalancer.complete(instance, latency.toNanos(), false);
+        }
+    }
+
+    private double ejections(String instance) {
+        return meterRegistry.get("composite.loadbalancer.ejections").tag("instance", instance).counter().count();
+    }
+
+    private double trafficShare(String instance) {
+        return meterRegistry.get("composite.loadbalancer.traffic.share").tag("instance", instance).gauge().value();
+    }
+}
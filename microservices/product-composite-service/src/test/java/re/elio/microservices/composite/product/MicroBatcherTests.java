@@ -0,0 +1,103 @@
+package re.elio.microservices.composite.product;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import re.elio.microservices.composite.product.services.MicroBatcher;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicroBatcherTests {
+
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<List<Integer>> batchCalls = new ArrayList<>();
+
+    private final MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test", Duration.ofMillis(2), 3,
+            keys -> {
+                batchCalls.add(keys);
+                // Two values per key, except for key 99 that is unknown
+                return Flux.fromIterable(keys).filter(key -> key != 99).flatMap(key -> Flux.just(key + "a", key + "b"));
+            },
+            value -> Integer.valueOf(value.substring(0, value.length() - 1)),
+            scheduler, meterRegistry);
+
+    @Test
+    void lookupsWithinTheWindowAreBatched() {
+        List<String> results = new ArrayList<>();
+        batcher.load(1).subscribe(results::add);
+        batcher.load(2).subscribe(results::add);
+        batcher.load(99).subscribe(results::add);
+        assertEquals(1, batchCalls.size(), "max batch size reached, the batch is sent without waiting");
+
+        batcher.load(1).subscribe(results::add);
+        assertEquals(1, batchCalls.size());
+
+        scheduler.advanceTimeBy(Duration.ofMillis(2));
+        assertEquals(2, batchCalls.size());
+
+        assertEquals(List.of(1, 2, 99), batchCalls.get(0));
+        assertEquals(List.of(1), batchCalls.get(1));
+        assertEquals(List.of("1a", "1b", "2a", "2b", "1a", "1b"), results);
+        assertEquals(2, meterRegistry.get("composite.batch.size").summary().count());
+    }
+
+    @Test
+    void cancelledLookupIsLeftOutOfTheBatch() {
+        batcher.load(1).subscribe().dispose();
+        batcher.load(2).subscribe();
+
+        scheduler.advanceTimeBy(Duration.ofMillis(2));
+
+        assertEquals(List.of(List.of(2)), batchCalls);
+    }
+
+    @Test
+    void batchCallIsCancelledWhenAllLookupsCancel() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        MicroBatcher<Integer, String> slowBatcher = new MicroBatcher<>("slow", Duration.ofMillis(2), 3,
+                keys -> Flux.<String>never().doOnCancel(() -> cancelled.set(true)),
+                value -> 0, scheduler, meterRegistry);
+
+        Disposable first = slowBatcher.load(1).subscribe();
+        Disposable second = slowBatcher.load(2).subscribe();
+        scheduler.advanceTimeBy(Duration.ofMillis(2));
+
+        first.dispose();
+        assertFalse(cancelled.get());
+
+        second.dispose();
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void batchCallIsCancelledWhenAllLookupsCancelDuringItsDispatch() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        List<Disposable> lookups = new ArrayList<>();
+        MicroBatcher<Integer, String> slowBatcher = new MicroBatcher<>("slow", Duration.ofMillis(2), 2,
+                keys -> {
+                    // The lookups cancel after they were taken out of the pending lookups, before the call is started
+                    lookups.forEach(Disposable::dispose);
+                    return Flux.<String>never().doOnCancel(() -> cancelled.set(true));
+                },
+                value -> 0, scheduler, meterRegistry);
+
+        // The second lookup fills the batch, which is dispatched while it subscribes
+        for (int key = 1; key <= 2; key++) {
+            BaseSubscriber<String> lookup = new BaseSubscriber<>() {
+            };
+            lookups.add(lookup);
+            slowBatcher.load(key).subscribe(lookup);
+        }
+
+        assertTrue(cancelled.get());
+    }
+}
@@ -0,0 +1,64 @@
+package re.elio.microservices.composite.product;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import re.elio.api.composite.product.ProductAggregate;
+import re.elio.microservices.composite.product.services.ProductAggregateCache;
+import re.elio.microservices.composite.product.services.VersionTags;
+import re.elio.microservices.composite.product.services.VersionedAggregate;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProductAggregateCacheTests {
+
+    private final ProductAggregateCache cache = new ProductAggregateCache(new SimpleMeterRegistry(), true, 100, 60, 10, 60);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void aggregateIsCached() {
+        get(1, false);
+        get(1, false);
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void partialAggregateIsNotCached() {
+        get(1, true);
+        get(1, true);
+        assertEquals(2, loads.get());
+
+        get(1, false);
+        get(1, false);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void aggregateIsNotCachedUntilTheEventIsApplied() {
+        get(1, false);
+        cache.invalidate(1);
+
+        get(1, false);
+        get(1, false);
+        assertEquals(3, loads.get());
+
+        get(2, false);
+        get(2, false);
+        assertEquals(4, loads.get());
+    }
+
+    private void get(int productId, boolean partial) {
+        cache.get(productId,
+                        id -> Mono.fromSupplier(() -> {
+                            loads.incrementAndGet();
+                            return new VersionedAggregate(new ProductAggregate(id, "name", 1, List.of(), List.of(), null),
+                                    new VersionTags(), partial);
+                        }),
+                        versions -> Mono.just(true))
+                .block();
+    }
+}
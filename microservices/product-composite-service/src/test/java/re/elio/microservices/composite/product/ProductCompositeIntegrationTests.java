@@ -0,0 +1,98 @@
+package re.elio.microservices.composite.product;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import re.elio.api.core.Cursor;
+import re.elio.api.core.recommendation.Recommendation;
+import re.elio.microservices.composite.product.services.ProductCompositeIntegration;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {"app.recommendation-service.batching.enabled=true"})
+class ProductCompositeIntegrationTests {
+
+    private static final int PRODUCT_ID = 1;
+    private static final int RECOMMENDATIONS = 5;
+    private static final int LIMIT = 2;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final List<String> REQUESTS = new CopyOnWriteArrayList<>();
+
+    // Serves the keyset pages of the recommendation service, ordered by recommendationId, and batches of first pages
+    private static final DisposableServer RECOMMENDATION_SERVICE = HttpServer.create()
+            .port(0)
+            .route(routes -> routes.get("/recommendation", ProductCompositeIntegrationTests::getRecommendations))
+            .bindNow();
+
+    @Autowired
+    private ProductCompositeIntegration integration;
+
+    @DynamicPropertySource
+    static void recommendationServiceProperties(DynamicPropertyRegistry registry) {
+        registry.add("app.recommendation-service.host", RECOMMENDATION_SERVICE::host);
+        registry.add("app.recommendation-service.port", RECOMMENDATION_SERVICE::port);
+    }
+
+    @AfterAll
+    static void stopRecommendationService() {
+        RECOMMENDATION_SERVICE.disposeNow();
+    }
+
+    @Test
+    void firstPagesAreBatchedAndLaterPagesReadWithTheKeysetQuery() {
+        List<Integer> recommendationIds = new ArrayList<>();
+        String cursor = null;
+        do {
+            List<Recommendation> page = integration.getRecommendations(PRODUCT_ID, LIMIT, cursor).collectList().block();
+            assertTrue(page.size() <= LIMIT);
+            page.forEach(recommendation -> recommendationIds.add(recommendation.getRecommendationId()));
+            cursor = page.size() < LIMIT ? null
+                    : new Cursor(PRODUCT_ID, page.get(page.size() - 1).getRecommendationId()).encode();
+        } while (cursor != null);
+
+        assertEquals(IntStream.rangeClosed(1, RECOMMENDATIONS).boxed().toList(), recommendationIds);
+        assertEquals(3, REQUESTS.size());
+        REQUESTS.forEach(uri -> assertTrue(uri.contains("limit=" + LIMIT), uri));
+        assertTrue(REQUESTS.get(0).contains("productIds=" + PRODUCT_ID), REQUESTS.get(0));
+        assertTrue(REQUESTS.get(1).contains("cursor="), REQUESTS.get(1));
+    }
+
+    private static Mono<Void> getRecommendations(HttpServerRequest request, HttpServerResponse response) {
+        REQUESTS.add(request.uri());
+        QueryStringDecoder query = new QueryStringDecoder(request.uri());
+        // A batch of first pages has the productIds, pages have the productId
+        int productId = Integer.parseInt(query.parameters().getOrDefault("productIds", query.parameters().get("productId")).get(0));
+        int limit = Integer.parseInt(query.parameters().get("limit").get(0));
+        int afterId = query.parameters().containsKey("cursor")
+                ? Cursor.decode(query.parameters().get("cursor").get(0), productId).afterId() : 0;
+        List<Recommendation> page = IntStream.rangeClosed(afterId + 1, RECOMMENDATIONS)
+                .limit(limit)
+                .mapToObj(id -> new Recommendation(productId, id, "author", 1, "content", "mock address"))
+                .toList();
+        try {
+            return response.header("Content-Type", "application/json")
+                    .sendString(Mono.just(MAPPER.writeValueAsString(page)))
+                    .then();
+        } catch (JsonProcessingException ex) {
+            return Mono.error(ex);
+        }
+    }
+}
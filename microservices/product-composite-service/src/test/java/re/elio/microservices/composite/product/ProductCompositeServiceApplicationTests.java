@@ -5,31 +5,55 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import re.elio.api.composite.product.ProductAggregate;
+import re.elio.api.composite.product.ProductAggregatePart;
+import re.elio.api.core.Cursor;
 import re.elio.api.core.product.Product;
 import re.elio.api.core.recommendation.Recommendation;
 import re.elio.api.core.review.Review;
 import re.elio.api.exceptions.InvalidInputException;
 import re.elio.api.exceptions.NotFoundException;
+import re.elio.api.exceptions.ServiceUnavailableException;
 import re.elio.microservices.composite.product.services.ProductCompositeIntegration;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
 import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
+import static re.elio.api.composite.product.ProductAggregatePart.Type.*;
 import static reactor.core.publisher.Mono.just;
 
-@SpringBootTest(webEnvironment = RANDOM_PORT)
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {"app.aggregate.maxElements=3", "app.aggregate.pageSize=2"})
 class ProductCompositeServiceApplicationTests {
 
     private static final int PRODUCT_ID_OK = 1;
     private static final int PRODUCT_ID_NOT_FOUND = 2;
     private static final int PRODUCT_ID_INVALID = 3;
+    private static final int PRODUCT_ID_CACHED = 4;
+    private static final int PRODUCT_ID_UNAVAILABLE = 5;
+    private static final int PRODUCT_ID_TRUNCATED = 6;
+    private static final int PRODUCT_ID_PAGED = 7;
+    private static final int PRODUCT_ID_SPARSE = 8;
+    private static final int PRODUCT_ID_TOO_LARGE = 9;
+    private static final int PAGE_SIZE = 2;
 
     @Autowired
     private WebTestClient client;
@@ -45,15 +69,17 @@ class ProductCompositeServiceApplicationTests {
     void setUp() {
         when(integration.getProduct(PRODUCT_ID_OK))
                 .thenReturn(Mono.just(new Product(PRODUCT_ID_OK, "name", 1, "mock-address")));
-        when(integration.getRecommendations(PRODUCT_ID_OK))
+        when(integration.getRecommendations(PRODUCT_ID_OK, PAGE_SIZE + 1, null))
                 .thenReturn(Flux.fromIterable(singletonList(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock address"))));
-        when(integration.getReviews(PRODUCT_ID_OK))
+        when(integration.getReviews(PRODUCT_ID_OK, PAGE_SIZE + 1, null))
                 .thenReturn(Flux.fromIterable(singletonList(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock address"))));
 
         when(integration.getProduct(PRODUCT_ID_NOT_FOUND))
                 .thenThrow(new NotFoundException("NOT FOUND: " + PRODUCT_ID_NOT_FOUND));
         when(integration.getProduct(PRODUCT_ID_INVALID))
                 .thenThrow(new InvalidInputException("INVALID: " + PRODUCT_ID_INVALID));
+        when(integration.getProduct(PRODUCT_ID_UNAVAILABLE))
+                .thenThrow(new ServiceUnavailableException("UNAVAILABLE: " + PRODUCT_ID_UNAVAILABLE));
     }
 
     @Test
@@ -64,6 +90,190 @@ class ProductCompositeServiceApplicationTests {
                 .jsonPath("$.reviews.length()").isEqualTo(1);
     }
 
+    @Test
+    void getProductIsTruncated() {
+        when(integration.getProduct(PRODUCT_ID_TRUNCATED))
+                .thenReturn(Mono.just(new Product(PRODUCT_ID_TRUNCATED, "name", 1, "mock-address")));
+        when(integration.getRecommendations(PRODUCT_ID_TRUNCATED, PAGE_SIZE + 1, null))
+                .thenReturn(Flux.just(new Recommendation(PRODUCT_ID_TRUNCATED, 1, "author", 1, "content", "mock address")));
+        when(integration.getReviews(PRODUCT_ID_TRUNCATED, PAGE_SIZE + 1, null))
+                .thenReturn(Flux.range(1, 3).map(i -> new Review(PRODUCT_ID_TRUNCATED, i, "author", "subject", "content", "mock address")));
+
+        getAndVerifyProduct(PRODUCT_ID_TRUNCATED, OK)
+                .jsonPath("$.recommendations.length()").isEqualTo(1)
+                .jsonPath("$.recommendationsPage.truncated").isEqualTo(false)
+                .jsonPath("$.reviews.length()").isEqualTo(2)
+                .jsonPath("$.reviewsPage.count").isEqualTo(2)
+                .jsonPath("$.reviewsPage.truncated").isEqualTo(true)
+                .jsonPath("$.reviewsPage.nextCursor").isEqualTo(new Cursor(PRODUCT_ID_TRUNCATED, 2).encode());
+    }
+
+    @Test
+    void getProductPassthroughFallsBackToObjectsForTooLargeLists() {
+        when(integration.getProduct(PRODUCT_ID_TOO_LARGE))
+                .thenReturn(Mono.just(new Product(PRODUCT_ID_TOO_LARGE, "name", 1, "mock-address")));
+        when(integration.getRecommendationsJson(eq(PRODUCT_ID_TOO_LARGE), eq(PAGE_SIZE + 1), anyInt()))
+                .thenReturn(Mono.error(new DataBufferLimitException("Exceeded limit on max bytes to buffer")));
+        when(integration.getReviewsJson(eq(PRODUCT_ID_TOO_LARGE), eq(PAGE_SIZE + 1), anyInt()))
+                .thenReturn(Mono.fromSupplier(() -> DefaultDataBufferFactory.sharedInstance.wrap("[]".getBytes(StandardCharsets.UTF_8))));
+        when(integration.getRecommendations(PRODUCT_ID_TOO_LARGE, PAGE_SIZE + 1, null))
+                .thenReturn(Flux.range(1, PAGE_SIZE + 1).map(i -> new Recommendation(PRODUCT_ID_TOO_LARGE, i, "author", 1, "content", "mock address")));
+        when(integration.getReviews(PRODUCT_ID_TOO_LARGE, PAGE_SIZE + 1, null)).thenReturn(Flux.empty());
+
+        getAndVerifyProduct(PRODUCT_ID_TOO_LARGE + "/passthrough", OK)
+                .jsonPath("$.recommendations.length()").isEqualTo(PAGE_SIZE)
+                .jsonPath("$.recommendationsPage.truncated").isEqualTo(true)
+                .jsonPath("$.recommendationsPage.nextCursor").isEqualTo(new Cursor(PRODUCT_ID_TOO_LARGE, PAGE_SIZE).encode())
+                .jsonPath("$.reviewsPage.truncated").isEqualTo(false);
+    }
+
+    @Test
+    void getProductFirstPage() {
+        when(integration.getProduct(PRODUCT_ID_PAGED))
+                .thenReturn(Mono.just(new Product(PRODUCT_ID_PAGED, "name", 1, "mock-address")));
+        when(integration.getRecommendations(PRODUCT_ID_PAGED, PAGE_SIZE + 1, null))
+                .thenReturn(Flux.range(1, PAGE_SIZE + 1).map(i -> new Recommendation(PRODUCT_ID_PAGED, i, "author", 1, "content", "mock address")));
+        when(integration.getReviews(PRODUCT_ID_PAGED, PAGE_SIZE + 1, null)).thenReturn(Flux.empty());
+
+        getAndVerifyProduct(PRODUCT_ID_PAGED, OK)
+                .jsonPath("$.recommendations.length()").isEqualTo(PAGE_SIZE)
+                .jsonPath("$.recommendationsPage.truncated").isEqualTo(true)
+                .jsonPath("$.recommendationsPage.nextCursor").isEqualTo(new Cursor(PRODUCT_ID_PAGED, PAGE_SIZE).encode())
+                .jsonPath("$.reviewsPage.count").isEqualTo(0)
+                .jsonPath("$.reviewsPage.truncated").isEqualTo(false);
+    }
+
+    @Test
+    void getProductWithIncludedFieldsOnly() {
+        when(integration.getProduct(PRODUCT_ID_SPARSE))
+                .thenReturn(Mono.just(new Product(PRODUCT_ID_SPARSE, "name", 1, "mock-address")));
+        when(integration.getReviews(PRODUCT_ID_SPARSE, PAGE_SIZE + 1, null))
+                .thenReturn(Flux.just(new Review(PRODUCT_ID_SPARSE, 1, "author", "subject", "content", "mock address")));
+
+        getAndVerifyProduct(PRODUCT_ID_SPARSE + "?include=reviews", OK)
+                .jsonPath("$.productId").isEqualTo(PRODUCT_ID_SPARSE)
+                .jsonPath("$.reviews.length()").isEqualTo(1)
+                .jsonPath("$.recommendations").doesNotExist()
+                .jsonPath("$.recommendationsPage").doesNotExist()
+                .jsonPath("$.serviceAddresses").doesNotExist();
+
+        getAndVerifyProduct(PRODUCT_ID_SPARSE + "?include=", OK)
+                .jsonPath("$.name").isEqualTo("name")
+                .jsonPath("$.reviews").doesNotExist();
+
+        verify(integration, never()).getRecommendations(eq(PRODUCT_ID_SPARSE), anyInt(), any());
+        verify(integration, times(1)).getReviews(PRODUCT_ID_SPARSE, PAGE_SIZE + 1, null);
+    }
+
+    @Test
+    void getProductInvalidInclude() {
+        getAndVerifyProduct(PRODUCT_ID_OK + "?include=price", UNPROCESSABLE_ENTITY)
+                .jsonPath("$.message").isEqualTo("Invalid include: price");
+    }
+
+    @Test
+    void getProductAsStream() {
+        when(integration.streamRecommendations(PRODUCT_ID_OK))
+                .thenReturn(Flux.just(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock address")));
+        when(integration.streamReviews(PRODUCT_ID_OK))
+                .thenReturn(Flux.just(
+                        new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock address"),
+                        new Review(PRODUCT_ID_OK, 2, "author", "subject", "content", "mock address")));
+
+        List<ProductAggregatePart> parts = client.get()
+                .uri("/product-composite/" + PRODUCT_ID_OK + "/stream")
+                .accept(APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().contentType(APPLICATION_NDJSON)
+                .returnResult(ProductAggregatePart.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertEquals(List.of(PRODUCT, RECOMMENDATION, REVIEW, REVIEW), parts.stream().map(ProductAggregatePart::type).toList());
+        assertEquals(PRODUCT_ID_OK, parts.get(0).product().productId());
+    }
+
+    @Test
+    void getProductsByIds() {
+        List<Integer> productIds = List.of(PRODUCT_ID_OK, PRODUCT_ID_NOT_FOUND);
+        when(integration.getProducts(productIds))
+                .thenReturn(Flux.just(new Product(PRODUCT_ID_OK, "name", 1, "mock-address")));
+        when(integration.getRecommendations(productIds, PAGE_SIZE + 1))
+                .thenReturn(Flux.just(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock address")));
+        when(integration.getReviews(productIds, PAGE_SIZE + 1))
+                .thenReturn(Flux.just(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock address")));
+
+        client.get()
+                .uri("/product-composite?ids=" + PRODUCT_ID_OK + "," + PRODUCT_ID_NOT_FOUND)
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().contentType(APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].productId").isEqualTo(PRODUCT_ID_OK)
+                .jsonPath("$[0].recommendations.length()").isEqualTo(1)
+                .jsonPath("$[0].reviews.length()").isEqualTo(1);
+    }
+
+    @Test
+    void getProductsByIdsAreTruncated() {
+        List<Integer> productIds = List.of(PRODUCT_ID_OK, PRODUCT_ID_TRUNCATED);
+        when(integration.getProducts(productIds))
+                .thenReturn(Flux.just(new Product(PRODUCT_ID_OK, "name", 1, "mock-address"),
+                        new Product(PRODUCT_ID_TRUNCATED, "name", 1, "mock-address")));
+        // More than a page for the first product, and more than maxElements for the batch
+        when(integration.getRecommendations(productIds, PAGE_SIZE + 1))
+                .thenReturn(Flux.concat(
+                        Flux.range(1, PAGE_SIZE + 1).map(i -> new Recommendation(PRODUCT_ID_OK, i, "author", 1, "content", "mock address")),
+                        Flux.just(new Recommendation(PRODUCT_ID_TRUNCATED, 1, "author", 1, "content", "mock address"))));
+        when(integration.getReviews(productIds, PAGE_SIZE + 1))
+                .thenReturn(Flux.just(new Review(PRODUCT_ID_TRUNCATED, 1, "author", "subject", "content", "mock address")));
+
+        client.get()
+                .uri("/product-composite?ids=" + PRODUCT_ID_OK + "," + PRODUCT_ID_TRUNCATED)
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].recommendations.length()").isEqualTo(PAGE_SIZE)
+                .jsonPath("$[0].recommendationsPage.truncated").isEqualTo(true)
+                .jsonPath("$[0].recommendationsPage.nextCursor").isEqualTo(new Cursor(PRODUCT_ID_OK, PAGE_SIZE).encode())
+                .jsonPath("$[0].reviewsPage.truncated").isEqualTo(false)
+                .jsonPath("$[1].recommendations.length()").isEqualTo(0)
+                .jsonPath("$[1].recommendationsPage.truncated").isEqualTo(true)
+                .jsonPath("$[1].reviews.length()").isEqualTo(1)
+                .jsonPath("$[1].reviewsPage.truncated").isEqualTo(false);
+    }
+
+    @Test
+    void getProductsByIdsWithAFailedBatchAreTruncated() {
+        List<Integer> productIds = List.of(PRODUCT_ID_OK, PRODUCT_ID_TRUNCATED);
+        when(integration.getProducts(productIds))
+                .thenReturn(Flux.just(new Product(PRODUCT_ID_OK, "name", 1, "mock-address"),
+                        new Product(PRODUCT_ID_TRUNCATED, "name", 1, "mock-address")));
+        when(integration.getRecommendations(productIds, PAGE_SIZE + 1))
+                .thenReturn(Flux.just(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock address")));
+        when(integration.getReviews(productIds, PAGE_SIZE + 1))
+                .thenReturn(Flux.error(new ServiceUnavailableException("review-service")));
+
+        client.get()
+                .uri("/product-composite?ids=" + PRODUCT_ID_OK + "," + PRODUCT_ID_TRUNCATED)
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].recommendationsPage.truncated").isEqualTo(false)
+                .jsonPath("$[0].reviews.length()").isEqualTo(0)
+                .jsonPath("$[0].reviewsPage.truncated").isEqualTo(true)
+                .jsonPath("$[0].reviewsPage.nextCursor").isEqualTo(new Cursor(PRODUCT_ID_OK, Integer.MIN_VALUE).encode())
+                .jsonPath("$[1].reviewsPage.truncated").isEqualTo(true);
+    }
+
     @Test
     void getProductNotFound() {
         getAndVerifyProduct(PRODUCT_ID_NOT_FOUND, NOT_FOUND)
@@ -78,6 +288,26 @@ class ProductCompositeServiceApplicationTests {
                 .jsonPath("$.message").isEqualTo("INVALID: " + PRODUCT_ID_INVALID);
     }
 
+    @Test
+    void getProductServiceUnavailable() {
+        getAndVerifyProduct(PRODUCT_ID_UNAVAILABLE, SERVICE_UNAVAILABLE)
+                .jsonPath("$.path").isEqualTo("/product-composite/" + PRODUCT_ID_UNAVAILABLE)
+                .jsonPath("$.message").isEqualTo("UNAVAILABLE: " + PRODUCT_ID_UNAVAILABLE);
+    }
+
+    @Test
+    void getProductIsCached() {
+        when(integration.getProduct(PRODUCT_ID_CACHED))
+                .thenReturn(Mono.just(new Product(PRODUCT_ID_CACHED, "name", 1, "mock-address")));
+        when(integration.getRecommendations(PRODUCT_ID_CACHED, PAGE_SIZE + 1, null)).thenReturn(Flux.empty());
+        when(integration.getReviews(PRODUCT_ID_CACHED, PAGE_SIZE + 1, null)).thenReturn(Flux.empty());
+
+        getAndVerifyProduct(PRODUCT_ID_CACHED, OK).jsonPath("$.productId").isEqualTo(PRODUCT_ID_CACHED);
+        getAndVerifyProduct(PRODUCT_ID_CACHED, OK).jsonPath("$.productId").isEqualTo(PRODUCT_ID_CACHED);
+
+        verify(integration, times(1)).getProduct(PRODUCT_ID_CACHED);
+    }
+
 //    @Test
 //    void createCompositeProduct1() {
 //        ProductAggregate compositeProduct = new ProductAggregate(1, "name", 1, null, null, null);
@@ -103,8 +333,12 @@ class ProductCompositeServiceApplicationTests {
 //    }
 
     private WebTestClient.BodyContentSpec getAndVerifyProduct(int productId, HttpStatus expectedStatus) {
+        return getAndVerifyProduct(String.valueOf(productId), expectedStatus);
+    }
+
+    private WebTestClient.BodyContentSpec getAndVerifyProduct(String productIdAndQuery, HttpStatus expectedStatus) {
         return client.get()
-                .uri("/product-composite/" + productId)
+                .uri("/product-composite/" + productIdAndQuery)
                 .accept(APPLICATION_JSON)
                 .exchange()
                 .expectStatus().isEqualTo(expectedStatus)
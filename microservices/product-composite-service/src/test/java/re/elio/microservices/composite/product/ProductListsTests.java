@@ -0,0 +1,65 @@
+package re.elio.microservices.composite.product;
+
+import org.junit.jupiter.api.Test;
+import re.elio.microservices.composite.product.services.AggregationBudget.BoundedList;
+import re.elio.microservices.composite.product.services.ProductLists;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductListsTests {
+
+    // The product of a value is its tens
+    private final ProductLists<Integer> lists = new ProductLists<>(List.of(1, 2, 3), value -> value / 10);
+
+    @Test
+    void listIsEmittedWhenTheNextProductArrives() {
+        Sinks.Many<Integer> values = Sinks.many().unicast().onBackpressureBuffer();
+        AtomicReference<BoundedList<Integer>> first = new AtomicReference<>();
+        AtomicReference<BoundedList<Integer>> second = new AtomicReference<>();
+        lists.of(1).subscribe(first::set);
+        lists.of(2).subscribe(second::set);
+        lists.read(values.asFlux(), () -> false).subscribe();
+
+        values.tryEmitNext(11);
+        values.tryEmitNext(12);
+        assertNull(first.get());
+
+        values.tryEmitNext(31);
+        assertEquals(new BoundedList<>(List.of(11, 12), false), first.get());
+        assertEquals(new BoundedList<>(List.of(), false), second.get());
+
+        values.tryEmitComplete();
+        assertEquals(new BoundedList<>(List.of(31), false), lists.of(3).block());
+    }
+
+    @Test
+    void listsAreTruncatedFromTheLastProductWhenTheValuesEndEarly() {
+        lists.read(Flux.just(11, 21), () -> true).block();
+
+        assertEquals(new BoundedList<>(List.of(11), false), lists.of(1).block());
+        assertEquals(new BoundedList<>(List.of(21), true), lists.of(2).block());
+        assertEquals(new BoundedList<>(List.of(), true), lists.of(3).block());
+    }
+
+    @Test
+    void failedCallTruncatesTheRemainingLists() {
+        lists.read(Flux.concat(Flux.just(11), Flux.error(new IllegalStateException("failed"))), () -> false).block();
+
+        assertEquals(new BoundedList<>(List.of(11), true), lists.of(1).block());
+        assertEquals(new BoundedList<>(List.of(), true), lists.of(2).block());
+        assertEquals(new BoundedList<>(List.of(), true), lists.of(3).block());
+    }
+
+    @Test
+    void valuesOfUnexpectedProductsAreIgnored() {
+        lists.read(Flux.just(11, 41, 21), () -> false).block();
+
+        assertEquals(new BoundedList<>(List.of(11), false), lists.of(1).block());
+        assertEquals(new BoundedList<>(List.of(21), false), lists.of(2).block());
+    }
+}
@@ -0,0 +1,112 @@
+package re.elio.microservices.composite.product;
+
+import org.junit.jupiter.api.Test;
+import re.elio.api.exceptions.DeadlineExceededException;
+import re.elio.microservices.composite.product.services.RequestCoalescer;
+import re.elio.util.http.Deadline;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestCoalescerTests {
+
+    private final RequestCoalescer<Integer> coalescer = new RequestCoalescer<>();
+
+    @Test
+    void concurrentSubscribersShareOneCall() {
+        AtomicInteger calls = new AtomicInteger();
+        Sinks.One<String> response = Sinks.one();
+
+        List<String> results = new ArrayList<>();
+        coalescer.coalesce(1, () -> response.asMono().doOnSubscribe(s -> calls.incrementAndGet())).subscribe(results::add);
+        coalescer.coalesce(1, () -> response.asMono().doOnSubscribe(s -> calls.incrementAndGet())).subscribe(results::add);
+
+        response.tryEmitValue("product 1");
+
+        assertEquals(1, calls.get());
+        assertEquals(List.of("product 1", "product 1"), results);
+        assertEquals(0, coalescer.inFlight());
+    }
+
+    @Test
+    void resultIsNotKeptAfterCompletion() {
+        AtomicInteger calls = new AtomicInteger();
+
+        coalescer.coalesce(1, () -> Mono.fromCallable(calls::incrementAndGet)).block();
+        Integer second = coalescer.coalesce(1, () -> Mono.fromCallable(calls::incrementAndGet)).block();
+
+        assertEquals(2, second);
+        assertEquals(0, coalescer.inFlight());
+    }
+
+    @Test
+    void lateSubscriberGetsCompleteFlux() {
+        Sinks.Many<Integer> response = Sinks.many().unicast().onBackpressureBuffer();
+
+        List<Integer> first = new ArrayList<>();
+        List<Integer> second = new ArrayList<>();
+        coalescer.coalesceMany(1, response::asFlux).subscribe(first::add);
+        response.tryEmitNext(1);
+        coalescer.coalesceMany(1, () -> Flux.just(-1)).subscribe(second::add);
+        response.tryEmitNext(2);
+        response.tryEmitComplete();
+
+        assertEquals(List.of(1, 2), first);
+        assertEquals(List.of(1, 2), second);
+    }
+
+    @Test
+    void callIsCancelledOnlyWhenAllSubscribersCancel() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Sinks.One<String> response = Sinks.one();
+
+        Disposable first = coalescer.coalesce(1, () -> response.asMono().doOnCancel(() -> cancelled.set(true))).subscribe();
+        Disposable second = coalescer.coalesce(1, () -> response.asMono().doOnCancel(() -> cancelled.set(true))).subscribe();
+
+        first.dispose();
+        assertFalse(cancelled.get());
+
+        second.dispose();
+        assertTrue(cancelled.get());
+        assertEquals(0, coalescer.inFlight());
+    }
+
+    @Test
+    void shortDeadlineOfOneSubscriberDoesNotFailTheOthers() {
+        VirtualTimeScheduler scheduler = VirtualTimeScheduler.getOrSet();
+        try {
+            Sinks.One<String> response = Sinks.one();
+            AtomicBoolean callHasDeadline = new AtomicBoolean();
+            Supplier<Mono<String>> call = () -> Mono.deferContextual(context -> {
+                callHasDeadline.set(Deadline.from(context).isPresent());
+                return response.asMono();
+            });
+
+            List<Object> first = new ArrayList<>();
+            List<Object> second = new ArrayList<>();
+            coalescer.coalesce(1, call).contextWrite(Deadline.after(Duration.ofMillis(10))::writeTo).subscribe(first::add, first::add);
+            coalescer.coalesce(1, call).contextWrite(Deadline.after(Duration.ofSeconds(10))::writeTo).subscribe(second::add, second::add);
+
+            scheduler.advanceTimeBy(Duration.ofMillis(20));
+            response.tryEmitValue("product 1");
+
+            assertFalse(callHasDeadline.get());
+            assertEquals(1, first.size());
+            assertInstanceOf(DeadlineExceededException.class, first.get(0));
+            assertEquals(List.of("product 1"), second);
+        } finally {
+            VirtualTimeScheduler.reset();
+        }
+    }
+}
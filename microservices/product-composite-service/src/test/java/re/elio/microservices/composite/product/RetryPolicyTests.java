@@ -0,0 +1,121 @@
+package re.elio.microservices.composite.product;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.rsocket.exceptions.ApplicationErrorException;
+import io.rsocket.exceptions.CustomRSocketException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import re.elio.microservices.composite.product.services.RequestBudget;
+import re.elio.microservices.composite.product.services.RetryPolicy;
+import re.elio.util.rsocket.RSocketErrors;
+import reactor.core.publisher.Mono;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.ClosedChannelException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTests {
+
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void connectionErrorIsRetried() {
+        RetryPolicy retry = retryPolicy(new RequestBudget(0.1, 10));
+        Mono<String> call = Mono.defer(() -> calls.incrementAndGet() == 1 ? Mono.error(connectionReset()) : Mono.just("ok"));
+
+        List<String> results = new ArrayList<>();
+        retry.apply(call).subscribe(results::add);
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+
+        assertEquals(List.of("ok"), results);
+        assertEquals(2, calls.get());
+        assertEquals(1, meterRegistry.get("composite.retry.attempts").counter().count());
+    }
+
+    @Test
+    void clientErrorIsNotRetried() {
+        RetryPolicy retry = retryPolicy(new RequestBudget(0.1, 10));
+        Mono<String> call = Mono.defer(() -> {
+            calls.incrementAndGet();
+            return Mono.error(WebClientResponseException.create(404, "Not Found", null, null, null));
+        });
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        retry.apply(call).subscribe(value -> {}, error::set);
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+
+        assertInstanceOf(WebClientResponseException.NotFound.class, error.get());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void rsocketConnectionAndServerErrorsAreRetried() {
+        RetryPolicy retry = retryPolicy(new RequestBudget(0.1, 10));
+        Mono<String> call = Mono.defer(() -> switch (calls.incrementAndGet()) {
+            case 1 -> Mono.error(new ClosedChannelException());
+            case 2 -> Mono.error(new ApplicationErrorException("Failed"));
+            default -> Mono.just("ok");
+        });
+
+        List<String> results = new ArrayList<>();
+        retry.apply(call).subscribe(results::add);
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+
+        assertEquals(List.of("ok"), results);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void rsocketApplicationErrorCodeIsNotRetried() {
+        RetryPolicy retry = retryPolicy(new RequestBudget(0.1, 10));
+        Mono<String> call = Mono.defer(() -> {
+            calls.incrementAndGet();
+            return Mono.error(new CustomRSocketException(RSocketErrors.NOT_FOUND, "Not found"));
+        });
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        retry.apply(call).subscribe(value -> {}, error::set);
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+
+        assertInstanceOf(CustomRSocketException.class, error.get());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void retriesStopWhenBudgetIsExhausted() {
+        RetryPolicy retry = retryPolicy(new RequestBudget(0.1, 1));
+        Mono<String> call = Mono.defer(() -> {
+            calls.incrementAndGet();
+            return Mono.error(WebClientResponseException.create(503, "Service Unavailable", null, null, null));
+        });
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        retry.apply(call).subscribe(value -> {}, error::set);
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+
+        assertInstanceOf(WebClientResponseException.ServiceUnavailable.class, error.get());
+        assertEquals(2, calls.get());
+        assertEquals(1, meterRegistry.get("composite.retry.budget.exhausted").counter().count());
+    }
+
+    private RetryPolicy retryPolicy(RequestBudget budget) {
+        return new RetryPolicy("test", 2, Duration.ofMillis(10), Duration.ofMillis(100), budget, scheduler, meterRegistry);
+    }
+
+    private WebClientRequestException connectionReset() {
+        return new WebClientRequestException(new IOException("Connection reset"), HttpMethod.GET, URI.create("http://product/product/1"), new HttpHeaders());
+    }
+}
@@ -0,0 +1,58 @@
+package re.elio.microservices.composite.product;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import re.elio.api.core.recommendation.Recommendation;
+import re.elio.api.core.review.Review;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SmilePayloadTests {
+    private static final Logger LOG = LoggerFactory.getLogger(SmilePayloadTests.class);
+
+    // Configured as the object mappers of the default Jackson JSON and Smile codecs
+    private final ObjectMapper jsonMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final ObjectMapper smileMapper = Jackson2ObjectMapperBuilder.smile().build();
+
+    @Test
+    void smileIsSmallerThanJsonForAPageOfRecommendations() throws Exception {
+        List<Recommendation> recommendations = IntStream.rangeClosed(1, 100)
+                .mapToObj(id -> new Recommendation(1, id, "author " + id, id % 5, "recommendation content " + id,
+                        "recommendation/172.18.0.4:8080"))
+                .toList();
+
+        byte[] json = jsonMapper.writeValueAsBytes(recommendations);
+        byte[] smile = smileMapper.writeValueAsBytes(recommendations);
+        LOG.info("100 recommendations, JSON: {} bytes, Smile: {} bytes", json.length, smile.length);
+
+        assertTrue(smile.length < json.length);
+        List<Recommendation> decoded = smileMapper.readValue(smile, new TypeReference<>() {});
+        assertEquals(100, decoded.size());
+        assertEquals("recommendation content 100", decoded.get(99).getContent());
+    }
+
+    @Test
+    void smileIsSmallerThanJsonForAPageOfReviews() throws Exception {
+        List<Review> reviews = IntStream.rangeClosed(1, 100)
+                .mapToObj(id -> new Review(1, id, "author " + id, "subject " + id, "review content " + id,
+                        "review/172.18.0.5:8080"))
+                .toList();
+
+        byte[] json = jsonMapper.writeValueAsBytes(reviews);
+        byte[] smile = smileMapper.writeValueAsBytes(reviews);
+        LOG.info("100 reviews, JSON: {} bytes, Smile: {} bytes", json.length, smile.length);
+
+        assertTrue(smile.length < json.length);
+        List<Review> decoded = smileMapper.readValue(smile, new TypeReference<>() {});
+        assertEquals(100, decoded.size());
+        assertEquals("subject 100", decoded.get(99).getSubject());
+    }
+}
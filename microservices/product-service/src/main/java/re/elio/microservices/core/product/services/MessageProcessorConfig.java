@@ -3,14 +3,26 @@ package re.elio.microservices.core.product.services;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
 import re.elio.api.core.product.Product;
 import re.elio.api.core.product.ProductService;
 import re.elio.api.event.Event;
 import re.elio.api.exceptions.EventProcessingException;
+import re.elio.util.messaging.DeadLetterPublisher;
+import re.elio.util.messaging.EventBatchProcessor;
+import re.elio.util.messaging.ReactiveEventProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Configuration
 public class MessageProcessorConfig {
@@ -24,26 +36,60 @@ public class MessageProcessorConfig {
     }
 
     @Bean
+    @ConditionalOnProperty(name = "app.messaging.mode", havingValue = "consumer", matchIfMissing = true)
     public Consumer<Event<Integer, Product>> messageProcessor() {
         return event -> {
-            LOG.info("Process message created at {}...", event.getEventCreatedAt());
-            switch (event.getEventType()) {
-                case CREATE:
-                    Product product = event.getData();
-                    LOG.info("Create product with ID: {}", product.getProductId());
-                    productService.createProduct(product).block();
-                    break;
-                case DELETE:
-                    int productId = event.getKey();
-                    LOG.info("Delete product with Product ID: {}", productId);
-                    productService.deleteProduct(productId).block();
-                    break;
-                default:
-                    String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
-                    LOG.warn(errorMessage);
-                    throw new EventProcessingException(errorMessage);
-            }
+            processEvent(event).block();
             LOG.info("Message processing done!");
         };
     }
+
+    /**
+     * Processes the events without blocking the binder thread, see {@link ReactiveEventProcessor}.
+     * The binding is configured for manual acknowledgements by the reactive_messaging profile. With Kafka, events
+     * that still fail are sent to the dead letter topic of the binding, with RabbitMQ the queue dead letters them.
+     */
+    @Bean("messageProcessor")
+    @ConditionalOnProperty(name = "app.messaging.mode", havingValue = "reactive")
+    public Function<Flux<Message<Event<Integer, Product>>>, Mono<Void>> reactiveMessageProcessor(
+            @Value("${app.messaging.reactive.concurrency:16}") int concurrency,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.maxAttempts:3}") int maxAttempts,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffInitialInterval:1000}") long minBackoffMillis,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffMaxInterval:10000}") long maxBackoffMillis,
+            StreamBridge streamBridge,
+            @Value("${spring.cloud.stream.kafka.bindings.messageProcessor-in-0.consumer.dlqName:error.${spring.cloud.stream.bindings.messageProcessor-in-0.destination}.${spring.cloud.stream.bindings.messageProcessor-in-0.group}}") String deadLetterTopic) {
+        return new ReactiveEventProcessor<>(this::processEvent, concurrency, maxAttempts,
+                Duration.ofMillis(minBackoffMillis), Duration.ofMillis(maxBackoffMillis), new DeadLetterPublisher<>(streamBridge, deadLetterTopic));
+    }
+
+    /**
+     * Processes the records of a Kafka poll as one batch with bulk writes, see {@link EventBatchProcessor}.
+     * Events that fail on their own are sent to the dead letter topic of the binding.
+     */
+    @Bean("messageProcessor")
+    @ConditionalOnProperty(name = "app.messaging.mode", havingValue = "batch")
+    public Consumer<List<Event<Integer, Product>>> batchMessageProcessor(
+            ProductBatchWriter batchWriter,
+            StreamBridge streamBridge,
+            @Value("${spring.cloud.stream.kafka.bindings.messageProcessor-in-0.consumer.dlqName:error.${spring.cloud.stream.bindings.messageProcessor-in-0.destination}.${spring.cloud.stream.bindings.messageProcessor-in-0.group}}") String deadLetterTopic) {
+        return new EventBatchProcessor<>(batchWriter, new DeadLetterPublisher<>(streamBridge, deadLetterTopic));
+    }
+
+    private Mono<Void> processEvent(Event<Integer, Product> event) {
+        LOG.info("Process message created at {}...", event.getEventCreatedAt());
+        switch (event.getEventType()) {
+            case CREATE:
+                Product product = event.getData();
+                LOG.info("Create product with ID: {}", product.getProductId());
+                return productService.createProduct(product).then();
+            case DELETE:
+                int productId = event.getKey();
+                LOG.info("Delete product with Product ID: {}", productId);
+                return productService.deleteProduct(productId);
+            default:
+                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
+                LOG.warn(errorMessage);
+                throw new EventProcessingException(errorMessage);
+        }
+    }
 }
@@ -0,0 +1,113 @@
+package re.elio.microservices.core.product.services;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.stereotype.Component;
+import re.elio.api.core.product.Product;
+import re.elio.api.exceptions.EventProcessingException;
+import re.elio.api.exceptions.InvalidInputException;
+import re.elio.microservices.core.product.persistence.ProductEntity;
+import re.elio.util.messaging.EventBatchProcessor;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Writes the products of a batch of events with one unordered bulk insert and one delete of all their productIds.
+ * A product with the productId of a stored product is a duplicate key, unless it equals the stored product.
+ */
+@Component
+public class ProductBatchWriter implements EventBatchProcessor.BatchWriter<Integer, Product> {
+    private static final Logger LOG = LoggerFactory.getLogger(ProductBatchWriter.class);
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final ReactiveMongoOperations mongoTemplate;
+    private final ProductMapper mapper;
+
+    public ProductBatchWriter(ReactiveMongoOperations mongoTemplate, ProductMapper mapper) {
+        this.mongoTemplate = mongoTemplate;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public Mono<Map<Integer, Throwable>> create(List<Product> products) {
+        Map<Integer, Throwable> failures = new HashMap<>();
+        List<ProductEntity> entities = new ArrayList<>();
+        // Index of the product of each entity, the bulk write errors refer to the entities
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            if (product.getProductId() < 1) {
+                failures.put(i, new InvalidInputException("Invalid productId: " + product.getProductId()));
+                continue;
+            }
+            ProductEntity entity = mapper.apiToEntity(product);
+            entity.setVersion(0);
+            entities.add(entity);
+            indexes.add(i);
+        }
+        if (entities.isEmpty()) return Mono.just(failures);
+
+        LOG.debug("create: inserts {} products", entities.size());
+        return mongoTemplate.bulkOps(BulkMode.UNORDERED, ProductEntity.class)
+                .insert(entities)
+                .execute()
+                .log(LOG.getName(), Level.FINE)
+                .thenReturn(failures)
+                .onErrorResume(ex -> writeErrors(ex) != null, ex -> {
+                    Map<Integer, Product> duplicates = new HashMap<>();
+                    writeErrors(ex).forEach(error -> {
+                        int index = indexes.get(error.getIndex());
+                        if (error.getCode() == DUPLICATE_KEY) duplicates.put(index, products.get(index));
+                        else failures.put(index, new EventProcessingException(error.getMessage()));
+                    });
+                    return findStored(duplicates.values()).map(stored -> {
+                        // A duplicate equal to the stored product, e.g. of a batch processed again, is already applied
+                        duplicates.forEach((index, product) -> {
+                            if (!isSame(stored.get(product.getProductId()), product)) {
+                                failures.put(index, new InvalidInputException("Duplicate key, Product ID: " + product.getProductId()));
+                            }
+                        });
+                        return failures;
+                    });
+                });
+    }
+
+    private Mono<Map<Integer, ProductEntity>> findStored(Collection<Product> products) {
+        if (products.isEmpty()) return Mono.just(Map.of());
+        return mongoTemplate.find(query(where("productId").in(products.stream().map(Product::getProductId).distinct().toList())), ProductEntity.class)
+                .collectMap(ProductEntity::getProductId);
+    }
+
+    private static boolean isSame(ProductEntity stored, Product product) {
+        return stored != null && Objects.equals(stored.getName(), product.getName()) && stored.getWeight() == product.getWeight();
+    }
+
+    @Override
+    public Mono<Void> delete(List<Integer> productIds) {
+        LOG.debug("delete: deletes the products with productIds: {}", productIds);
+        return mongoTemplate.remove(query(where("productId").in(productIds)), ProductEntity.class)
+                .log(LOG.getName(), Level.FINE)
+                .then();
+    }
+
+    private static List<BulkWriteError> writeErrors(Throwable ex) {
+        if (ex instanceof BulkOperationException bulkEx) return bulkEx.getErrors();
+        if (ex instanceof MongoBulkWriteException bulkEx) return bulkEx.getWriteErrors();
+        return null;
+    }
+}
@@ -0,0 +1,30 @@
+package re.elio.microservices.core.product.services;
+
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.stereotype.Controller;
+import re.elio.api.core.product.Product;
+import re.elio.api.core.product.ProductService;
+import re.elio.util.http.Deadline;
+import re.elio.util.rsocket.RSocketDeadlines;
+import re.elio.util.rsocket.RSocketErrors;
+import reactor.core.publisher.Mono;
+
+/**
+ * Serves product lookups over RSocket as request-response, next to the HTTP API.
+ * The deadline sent by the requester applies as with the HTTP API.
+ */
+@Controller
+public class ProductRSocketController {
+    private final ProductService service;
+
+    public ProductRSocketController(ProductService service) {
+        this.service = service;
+    }
+
+    @MessageMapping("product.get")
+    public Mono<Product> getProduct(Integer productId, @Header(name = Deadline.TIMEOUT_HEADER, required = false) String timeoutMs) {
+        return RSocketDeadlines.withDeadlineMono(timeoutMs, () -> service.getProduct(productId))
+                .onErrorMap(RSocketErrors::toRSocketException);
+    }
+}
@@ -10,15 +10,21 @@ import re.elio.api.exceptions.InvalidInputException;
 import re.elio.api.exceptions.NotFoundException;
 import re.elio.microservices.core.product.persistence.ProductEntity;
 import re.elio.microservices.core.product.persistence.ProductRepository;
+import re.elio.util.http.ConditionalGet;
+import re.elio.util.http.ETagBuilder;
 import re.elio.util.http.ServiceUtil;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Comparator;
+import java.util.List;
 import java.util.logging.Level;
 
 @RestController
 public class ProductServiceImpl implements ProductService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ProductServiceImpl.class);
+    private static final int MAX_BATCH_SIZE = 100;
 
     private final ServiceUtil serviceUtil;
     private final ProductRepository repository;
@@ -37,6 +43,38 @@ public class ProductServiceImpl implements ProductService {
         LOG.info("Will get product info for id: {}", productId);
         return repository.findByProductId(productId)
                 .switchIfEmpty(Mono.error(new NotFoundException("No product found for productId: " + productId)))
+                .flatMap(entity -> ConditionalGet.check(eTag(entity)).thenReturn(entity))
+                .log(LOG.getName(), Level.FINE)
+                .map(mapper::entityToApi)
+                .map(e -> {
+                    e.setServiceAddress(serviceUtil.getServiceAddress());
+                    return e;
+                });
+    }
+
+    // The id changes when a product is deleted and created again, the version when it is updated
+    private static String eTag(ProductEntity entity) {
+        return new ETagBuilder().add(entity.getId()).add(entity.getVersion()).build();
+    }
+
+    private static String eTag(List<ProductEntity> entities) {
+        ETagBuilder eTag = new ETagBuilder();
+        entities.forEach(entity -> eTag.add(entity.getId()).add(entity.getVersion()));
+        return eTag.build();
+    }
+
+    @Override
+    public Flux<Product> getProducts(List<Integer> productIds) {
+        if (productIds.size() > MAX_BATCH_SIZE) throw new InvalidInputException("Too many productIds: " + productIds.size() + ", max is: " + MAX_BATCH_SIZE);
+        productIds.forEach(productId -> {
+            if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        });
+        LOG.info("Will get product info for ids: {}", productIds);
+        // At most MAX_BATCH_SIZE products are read before the response is written, to give it an ETag
+        return repository.findByProductIdIn(productIds)
+                .collectSortedList(Comparator.comparingInt(ProductEntity::getProductId))
+                .flatMap(entities -> ConditionalGet.check(eTag(entities)).thenReturn(entities))
+                .flatMapIterable(entities -> entities)
                 .log(LOG.getName(), Level.FINE)
                 .map(mapper::entityToApi)
                 .map(e -> {
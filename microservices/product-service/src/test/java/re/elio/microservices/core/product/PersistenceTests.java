@@ -11,6 +11,7 @@ import re.elio.microservices.core.product.persistence.ProductRepository;
 import reactor.core.publisher.Flux;
 import reactor.test.StepVerifier;
 
+import java.util.List;
 import java.util.Objects;
 
 @DataMongoTest
@@ -69,6 +70,14 @@ public class PersistenceTests extends MongoDbTestBase {
                 .verifyComplete();
     }
 
+    @Test
+    void getByProductIdIn() {
+        StepVerifier.create(repository.save(new ProductEntity(2, "n", 2))).expectNextCount(1).verifyComplete();
+        StepVerifier.create(repository.findByProductIdIn(List.of(savedEntity.getProductId(), 2, 3)))
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
     @Test
     void duplicateError() {
         ProductEntity entity = new ProductEntity(savedEntity.getProductId(), "n", 1);
@@ -5,31 +5,44 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import re.elio.api.core.product.Product;
 import re.elio.api.event.Event;
 import re.elio.api.exceptions.InvalidInputException;
 import re.elio.microservices.core.product.persistence.ProductRepository;
+import re.elio.microservices.core.product.services.ProductBatchWriter;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.HttpHeaders.CACHE_CONTROL;
+import static org.springframework.http.HttpHeaders.ETAG;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static reactor.core.publisher.Mono.just;
 
-@SpringBootTest(webEnvironment = RANDOM_PORT)
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {"spring.rsocket.server.port=0"})
 class ProductServiceApplicationTests extends MongoDbTestBase {
     @Autowired
     private WebTestClient client;
     @Autowired
     private ProductRepository repository;
+    @LocalServerPort
+    private int port;
 
     @Autowired
     @Qualifier("messageProcessor")
     private Consumer<Event<Integer, Product>> messageProcessor;
+    @Autowired
+    private ProductBatchWriter batchWriter;
 
     @Test
     void contextLoads() {
@@ -56,6 +69,98 @@ class ProductServiceApplicationTests extends MongoDbTestBase {
         getAndVerifyProduct(productId, OK).jsonPath("$.productId").isEqualTo(productId);
     }
 
+    @Test
+    void getProductNotModified() {
+
+        int productId = 1;
+
+        sendCreateProductEvent(productId);
+
+        String eTag = client.get()
+                .uri("/product/" + productId)
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().valueEquals(CACHE_CONTROL, "no-cache")
+                .returnResult(String.class)
+                .getResponseHeaders().getETag();
+        assertNotNull(eTag);
+        // The body holds the address of the instance, the ETag only tells that the responses of all instances are equivalent
+        assertTrue(eTag.startsWith("W/\""));
+
+        client.get()
+                .uri("/product/" + productId)
+                .accept(APPLICATION_JSON)
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus().isEqualTo(NOT_MODIFIED)
+                .expectHeader().valueEquals(ETAG, eTag)
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    void getProductOverH2c() {
+
+        int productId = 1;
+
+        sendCreateProductEvent(productId);
+
+        // Prior knowledge h2c, as used by the composite service
+        String version = HttpClient.create()
+                .protocol(HttpProtocol.H2C)
+                .get()
+                .uri("http://localhost:" + port + "/product/" + productId)
+                .responseSingle((response, body) -> body.asString().map(json -> response.version().text()))
+                .block();
+        assertEquals("HTTP/2.0", version);
+    }
+
+    @Test
+    void getProductsByIds() {
+        sendCreateProductEvent(1);
+        sendCreateProductEvent(2);
+
+        client.get()
+                .uri("/product?productIds=1,2,3")
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().contentType(APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2);
+    }
+
+    @Test
+    void getProductsByIdsNotModified() {
+        sendCreateProductEvent(1);
+        sendCreateProductEvent(2);
+
+        String eTag = client.get()
+                .uri("/product?productIds=1,2")
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .returnResult(String.class)
+                .getResponseHeaders().getETag();
+        assertNotNull(eTag);
+
+        client.get()
+                .uri("/product?productIds=2,1")
+                .accept(APPLICATION_JSON)
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus().isEqualTo(NOT_MODIFIED);
+
+        sendDeleteProductEvent(2);
+
+        client.get()
+                .uri("/product?productIds=1,2")
+                .accept(APPLICATION_JSON)
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus().isEqualTo(OK);
+    }
+
     @Test
     void duplicateError() {
 
@@ -112,6 +217,34 @@ class ProductServiceApplicationTests extends MongoDbTestBase {
         return getAndVerifyProduct("/" + productId, expectedStatus);
     }
 
+    @Test
+    void createAndDeleteProductsInBulk() {
+        sendCreateProductEvent(1);
+
+        Map<Integer, Throwable> failures = batchWriter.create(List.of(
+                new Product(2, "Name 2", 2, "SA"),
+                new Product(1, "Other name", 1, "SA"),
+                new Product(-1, "Name -1", 1, "SA"),
+                new Product(3, "Name 3", 3, "SA"))).block();
+
+        assertEquals(Set.of(1, 2), failures.keySet());
+        assertInstanceOf(InvalidInputException.class, failures.get(1));
+        assertEquals("Duplicate key, Product ID: 1", failures.get(1).getMessage());
+        assertInstanceOf(InvalidInputException.class, failures.get(2));
+        assertEquals(3, (long) repository.count().block());
+
+        // Processing the same products again, e.g. after a failed commit of the offsets, is not an error
+        assertEquals(Map.of(), batchWriter.create(List.of(
+                new Product(2, "Name 2", 2, "SA"),
+                new Product(1, "Name 1", 1, "SA"))).block());
+        assertEquals(3, (long) repository.count().block());
+
+        batchWriter.delete(List.of(1, 3)).block();
+
+        assertEquals(1, (long) repository.count().block());
+        assertNotNull(repository.findByProductId(2).block());
+    }
+
     private WebTestClient.BodyContentSpec getAndVerifyProduct(String productIdPath, HttpStatus expectedStatus) {
         return client.get()
                 .uri("/product" + productIdPath)
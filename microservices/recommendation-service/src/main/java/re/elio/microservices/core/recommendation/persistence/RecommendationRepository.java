@@ -1,8 +1,14 @@
 package re.elio.microservices.core.recommendation.persistence;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import reactor.core.publisher.Flux;
 
 public interface RecommendationRepository extends ReactiveCrudRepository<RecommendationEntity, String> {
     Flux<RecommendationEntity> findByProductId(int productId);
+
+    /**
+     * Keyset paging over the (productId, recommendationId) index.
+     */
+    Flux<RecommendationEntity> findByProductIdAndRecommendationIdGreaterThanOrderByRecommendationId(int productId, int recommendationId, Pageable pageable);
 }
@@ -0,0 +1,122 @@
+package re.elio.microservices.core.recommendation.services;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.stereotype.Component;
+import re.elio.api.core.recommendation.Recommendation;
+import re.elio.api.exceptions.EventProcessingException;
+import re.elio.api.exceptions.InvalidInputException;
+import re.elio.microservices.core.recommendation.persistence.RecommendationEntity;
+import re.elio.util.messaging.EventBatchProcessor;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Writes the recommendations of a batch of events with one unordered bulk insert and one delete of all the
+ * recommendations of their productIds. A recommendation with the key of a stored recommendation is a duplicate key,
+ * unless it equals the stored recommendation.
+ */
+@Component
+public class RecommendationBatchWriter implements EventBatchProcessor.BatchWriter<Integer, Recommendation> {
+    private static final Logger LOG = LoggerFactory.getLogger(RecommendationBatchWriter.class);
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final ReactiveMongoOperations mongoTemplate;
+    private final RecommendationMapper mapper;
+
+    public RecommendationBatchWriter(ReactiveMongoOperations mongoTemplate, RecommendationMapper mapper) {
+        this.mongoTemplate = mongoTemplate;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public Mono<Map<Integer, Throwable>> create(List<Recommendation> recommendations) {
+        Map<Integer, Throwable> failures = new HashMap<>();
+        List<RecommendationEntity> entities = new ArrayList<>();
+        // Index of the recommendation of each entity, the bulk write errors refer to the entities
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < recommendations.size(); i++) {
+            Recommendation recommendation = recommendations.get(i);
+            if (recommendation.getProductId() < 1) {
+                failures.put(i, new InvalidInputException("Invalid productId: " + recommendation.getProductId()));
+                continue;
+            }
+            RecommendationEntity entity = mapper.apiToEntity(recommendation);
+            entity.setVersion(0);
+            entities.add(entity);
+            indexes.add(i);
+        }
+        if (entities.isEmpty()) return Mono.just(failures);
+
+        LOG.debug("create: inserts {} recommendations", entities.size());
+        return mongoTemplate.bulkOps(BulkMode.UNORDERED, RecommendationEntity.class)
+                .insert(entities)
+                .execute()
+                .log(LOG.getName(), Level.FINE)
+                .thenReturn(failures)
+                .onErrorResume(ex -> writeErrors(ex) != null, ex -> {
+                    Map<Integer, Recommendation> duplicates = new HashMap<>();
+                    writeErrors(ex).forEach(error -> {
+                        int index = indexes.get(error.getIndex());
+                        if (error.getCode() == DUPLICATE_KEY) duplicates.put(index, recommendations.get(index));
+                        else failures.put(index, new EventProcessingException(error.getMessage()));
+                    });
+                    return findStored(duplicates.values()).map(stored -> {
+                        // A duplicate equal to the stored recommendation, e.g. of a batch processed again, is already applied
+                        duplicates.forEach((index, recommendation) -> {
+                            if (!isSame(stored.get(new Key(recommendation.getProductId(), recommendation.getRecommendationId())), recommendation)) {
+                                failures.put(index, new InvalidInputException("Duplicate key, Product ID: " + recommendation.getProductId()
+                                        + ", Recommendation ID: " + recommendation.getRecommendationId()));
+                            }
+                        });
+                        return failures;
+                    });
+                });
+    }
+
+    private Mono<Map<Key, RecommendationEntity>> findStored(Collection<Recommendation> recommendations) {
+        if (recommendations.isEmpty()) return Mono.just(Map.of());
+        return mongoTemplate.find(query(where("productId").in(recommendations.stream().map(Recommendation::getProductId).distinct().toList())),
+                        RecommendationEntity.class)
+                .collectMap(entity -> new Key(entity.getProductId(), entity.getRecommendationId()));
+    }
+
+    private static boolean isSame(RecommendationEntity stored, Recommendation recommendation) {
+        return stored != null
+                && Objects.equals(stored.getAuthor(), recommendation.getAuthor())
+                && stored.getRating() == recommendation.getRate()
+                && Objects.equals(stored.getContent(), recommendation.getContent());
+    }
+
+    @Override
+    public Mono<Void> delete(List<Integer> productIds) {
+        LOG.debug("delete: deletes the recommendations of the products with productIds: {}", productIds);
+        return mongoTemplate.remove(query(where("productId").in(productIds)), RecommendationEntity.class)
+                .log(LOG.getName(), Level.FINE)
+                .then();
+    }
+
+    private static List<BulkWriteError> writeErrors(Throwable ex) {
+        if (ex instanceof BulkOperationException bulkEx) return bulkEx.getErrors();
+        if (ex instanceof MongoBulkWriteException bulkEx) return bulkEx.getWriteErrors();
+        return null;
+    }
+
+    private record Key(int productId, int recommendationId) {
+    }
+}
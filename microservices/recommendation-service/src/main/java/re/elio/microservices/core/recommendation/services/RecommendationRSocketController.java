@@ -0,0 +1,37 @@
+package re.elio.microservices.core.recommendation.services;
+
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.stereotype.Controller;
+import re.elio.api.core.PageQuery;
+import re.elio.api.core.recommendation.Recommendation;
+import re.elio.api.core.recommendation.RecommendationService;
+import re.elio.util.http.Deadline;
+import re.elio.util.rsocket.RSocketDeadlines;
+import re.elio.util.rsocket.RSocketErrors;
+import reactor.core.publisher.Flux;
+
+/**
+ * Serves the recommendations of a product over RSocket as request-stream, next to the HTTP API.
+ * The deadline sent by the requester applies as with the HTTP API.
+ */
+@Controller
+public class RecommendationRSocketController {
+    private final RecommendationService service;
+
+    public RecommendationRSocketController(RecommendationService service) {
+        this.service = service;
+    }
+
+    @MessageMapping("recommendation.get")
+    public Flux<Recommendation> getRecommendations(Integer productId, @Header(name = Deadline.TIMEOUT_HEADER, required = false) String timeoutMs) {
+        return RSocketDeadlines.withDeadline(timeoutMs, () -> service.getRecommendations(productId))
+                .onErrorMap(RSocketErrors::toRSocketException);
+    }
+
+    @MessageMapping("recommendation.page")
+    public Flux<Recommendation> getRecommendations(PageQuery query, @Header(name = Deadline.TIMEOUT_HEADER, required = false) String timeoutMs) {
+        return RSocketDeadlines.withDeadline(timeoutMs, () -> service.getRecommendations(query.productId(), query.limit(), query.cursor()))
+                .onErrorMap(RSocketErrors::toRSocketException);
+    }
+}
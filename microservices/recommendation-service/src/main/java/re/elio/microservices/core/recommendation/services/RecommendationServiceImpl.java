@@ -3,21 +3,28 @@ package re.elio.microservices.core.recommendation.services;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.web.bind.annotation.RestController;
+import re.elio.api.core.Cursor;
 import re.elio.api.core.recommendation.Recommendation;
 import re.elio.api.core.recommendation.RecommendationService;
 import re.elio.api.exceptions.InvalidInputException;
 import re.elio.microservices.core.recommendation.persistence.RecommendationEntity;
 import re.elio.microservices.core.recommendation.persistence.RecommendationRepository;
+import re.elio.util.http.ConditionalGet;
+import re.elio.util.http.ETagBuilder;
 import re.elio.util.http.ServiceUtil;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.logging.Level;
 
 @RestController
 public class RecommendationServiceImpl implements RecommendationService {
     private static final Logger LOG = LoggerFactory.getLogger(RecommendationServiceImpl.class);
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int MAX_LIMIT = 1000;
     private final ServiceUtil serviceUtil;
     private final RecommendationRepository repository;
     private final RecommendationMapper mapper;
@@ -32,6 +39,7 @@ public class RecommendationServiceImpl implements RecommendationService {
     public Flux<Recommendation> getRecommendations(int productId) {
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
         LOG.info("Will get recommendations for product with ID: {}", productId);
+        // The list has no ETag, it would take all recommendations to build it before the first one is returned
         return repository.findByProductId(productId)
                 .log(LOG.getName(), Level.FINE)
                 .map(mapper::entityToApi)
@@ -41,6 +49,54 @@ public class RecommendationServiceImpl implements RecommendationService {
                 });
     }
 
+    @Override
+    public Flux<Recommendation> getRecommendations(int productId, int limit, String cursor) {
+        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        if (limit < 1 || limit > MAX_LIMIT) throw new InvalidInputException("Invalid limit: " + limit + ", max is: " + MAX_LIMIT);
+        int afterRecommendationId = cursor == null ? Integer.MIN_VALUE : Cursor.decode(cursor, productId).afterId();
+        LOG.info("Will get a page of {} recommendations for product with ID: {}", limit, productId);
+        return repository.findByProductIdAndRecommendationIdGreaterThanOrderByRecommendationId(productId, afterRecommendationId, PageRequest.of(0, limit))
+                .collectList()
+                .flatMap(entities -> ConditionalGet.check(eTag(entities)).thenReturn(entities))
+                .flatMapMany(Flux::fromIterable)
+                .log(LOG.getName(), Level.FINE)
+                .map(mapper::entityToApi)
+                .map(e -> {
+                    e.setServiceAddress(serviceUtil.getServiceAddress());
+                    return e;
+                });
+    }
+
+    /**
+     * The ETag of a page is built from the ids and versions of the recommendations on it.
+     */
+    private static String eTag(List<RecommendationEntity> entities) {
+        ETagBuilder eTag = new ETagBuilder();
+        entities.forEach(entity -> eTag.add(entity.getId()).add(entity.getVersion()));
+        return eTag.build();
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendations(List<Integer> productIds, int limit) {
+        if (productIds.size() > MAX_BATCH_SIZE) throw new InvalidInputException("Too many productIds: " + productIds.size() + ", max is: " + MAX_BATCH_SIZE);
+        if (limit < 1 || limit > MAX_LIMIT) throw new InvalidInputException("Invalid limit: " + limit + ", max is: " + MAX_LIMIT);
+        productIds.forEach(productId -> {
+            if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        });
+        LOG.info("Will get the first {} recommendations for products with IDs: {}", limit, productIds);
+        // One keyset query per product, a product with many recommendations must not blow up the response
+        return Flux.fromIterable(productIds)
+                .distinct()
+                .flatMapSequential(productId -> repository.findByProductIdAndRecommendationIdGreaterThanOrderByRecommendationId(
+                        productId, Integer.MIN_VALUE, PageRequest.of(0, limit)))
+                .log(LOG.getName(), Level.FINE)
+                .map(mapper::entityToApi)
+                .map(e -> {
+                    e.setServiceAddress(serviceUtil.getServiceAddress());
+                    return e;
+                });
+    }
+
     @Override
     public Mono<Recommendation> createRecommendation(Recommendation body) {
         if (body.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + body.getProductId());
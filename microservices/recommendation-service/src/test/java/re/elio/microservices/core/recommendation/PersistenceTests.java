@@ -6,6 +6,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import re.elio.microservices.core.recommendation.persistence.RecommendationEntity;
 import re.elio.microservices.core.recommendation.persistence.RecommendationRepository;
 
@@ -62,6 +63,27 @@ public class PersistenceTests extends MongoDbTestBase {
         assertEqualsRecommendation(savedEntity, entityList.get(0));
     }
 
+    @Test
+    void getByProductIdIn() {
+        repository.save(new RecommendationEntity(2, 1, "a", 3, "c")).block();
+        repository.save(new RecommendationEntity(3, 1, "a", 3, "c")).block();
+        List<RecommendationEntity> entityList = repository.findByProductIdIn(List.of(savedEntity.getProductId(), 2)).collectList().block();
+        assertThat(entityList, hasSize(2));
+    }
+
+    @Test
+    void getPagesByProductId() {
+        repository.save(new RecommendationEntity(1, 3, "a", 3, "c")).block();
+        repository.save(new RecommendationEntity(1, 1, "a", 3, "c")).block();
+        repository.save(new RecommendationEntity(2, 4, "a", 3, "c")).block();
+
+        List<RecommendationEntity> firstPage = repository.findByProductIdAndRecommendationIdGreaterThanOrderByRecommendationId(1, Integer.MIN_VALUE, PageRequest.of(0, 2)).collectList().block();
+        assertEquals(List.of(1, 2), firstPage.stream().map(RecommendationEntity::getRecommendationId).toList());
+
+        List<RecommendationEntity> secondPage = repository.findByProductIdAndRecommendationIdGreaterThanOrderByRecommendationId(1, 2, PageRequest.of(0, 2)).collectList().block();
+        assertEquals(List.of(3), secondPage.stream().map(RecommendationEntity::getRecommendationId).toList());
+    }
+
     @Test
     void duplicateError() {
         assertThrows(DuplicateKeyException.class, () -> {
@@ -1,32 +1,49 @@
 package re.elio.microservices.core.recommendation;
 
+import io.rsocket.exceptions.CustomRSocketException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.rsocket.context.LocalRSocketServerPort;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.messaging.rsocket.RSocketRequester;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import re.elio.api.core.Cursor;
+import re.elio.api.core.PageQuery;
 import re.elio.api.core.recommendation.Recommendation;
 import re.elio.api.event.Event;
 import re.elio.api.exceptions.InvalidInputException;
 import re.elio.microservices.core.recommendation.persistence.RecommendationRepository;
+import re.elio.util.rsocket.RSocketErrors;
 
+import java.util.List;
 import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.HttpHeaders.ACCEPT;
+import static org.springframework.http.HttpHeaders.VARY;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static reactor.core.publisher.Mono.just;
 
-@SpringBootTest(webEnvironment = RANDOM_PORT)
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {"spring.rsocket.server.port=0"})
 class RecommendationServiceApplicationTests extends MongoDbTestBase {
+    private static final MediaType APPLICATION_SMILE = MediaType.valueOf("application/x-jackson-smile");
+
     @Autowired
     private WebTestClient client;
     @Autowired
     private RecommendationRepository repository;
+    @Autowired
+    private RSocketRequester.Builder rsocketRequester;
+    @LocalRSocketServerPort
+    private int rsocketPort;
 
     @Autowired
     @Qualifier("messageProcessor")
@@ -58,6 +75,144 @@ class RecommendationServiceApplicationTests extends MongoDbTestBase {
                 .jsonPath("$[2].recommendationId").isEqualTo(3);
     }
 
+    @Test
+    void getRecommendationsByPage() {
+
+        int productId = 1;
+
+        postAndVerifyRecommendation(productId, 1, OK);
+        postAndVerifyRecommendation(productId, 2, OK);
+        postAndVerifyRecommendation(productId, 3, OK);
+
+        getAndVerifyRecommendationsByProductId("?productId=" + productId + "&limit=2", OK)
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[1].recommendationId").isEqualTo(2);
+
+        getAndVerifyRecommendationsByProductId("?productId=" + productId + "&limit=2&cursor=" + new Cursor(productId, 2).encode(), OK)
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].recommendationId").isEqualTo(3);
+    }
+
+    @Test
+    void getRecommendationsByPageInvalidCursor() {
+
+        getAndVerifyRecommendationsByProductId("?productId=1&limit=2&cursor=" + new Cursor(2, 1).encode(), UNPROCESSABLE_ENTITY)
+                .jsonPath("$.path").isEqualTo("/recommendation");
+    }
+
+    @Test
+    void getRecommendationsNotModified() {
+
+        int productId = 1;
+
+        postAndVerifyRecommendation(productId, 1, OK);
+        String eTag = getETag("?productId=" + productId + "&limit=10");
+
+        client.get()
+                .uri("/recommendation?productId=" + productId + "&limit=10")
+                .accept(APPLICATION_JSON)
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus().isEqualTo(NOT_MODIFIED)
+                .expectHeader().valueEquals(VARY, ACCEPT)
+                .expectBody().isEmpty();
+
+        // The Smile representation has an ETag of its own
+        client.get()
+                .uri("/recommendation?productId=" + productId + "&limit=10")
+                .accept(APPLICATION_SMILE)
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().valueEquals(VARY, ACCEPT);
+
+        postAndVerifyRecommendation(productId, 2, OK);
+        assertNotEquals(eTag, getETag("?productId=" + productId + "&limit=10"));
+        assertEquals(eTag, getETag("?productId=" + productId + "&limit=1"));
+    }
+
+    private String getETag(String productIdQuery) {
+        return client.get()
+                .uri("/recommendation" + productIdQuery)
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .returnResult(String.class)
+                .getResponseHeaders().getETag();
+    }
+
+    @Test
+    void getRecommendationsByProductIds() {
+        postAndVerifyRecommendation(1, 1, OK);
+        postAndVerifyRecommendation(1, 2, OK);
+        postAndVerifyRecommendation(2, 1, OK);
+        postAndVerifyRecommendation(3, 1, OK);
+
+        getAndVerifyRecommendationsByProductId("?productIds=1,2&limit=10", OK)
+                .jsonPath("$.length()").isEqualTo(3);
+        getAndVerifyRecommendationsByProductId("?productIds=2,1&limit=1", OK)
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].productId").isEqualTo(2)
+                .jsonPath("$[1].productId").isEqualTo(1)
+                .jsonPath("$[1].recommendationId").isEqualTo(1);
+    }
+
+    @Test
+    void getRecommendationsOverRSocket() {
+        postAndVerifyRecommendation(1, 1, OK);
+        postAndVerifyRecommendation(1, 2, OK);
+
+        RSocketRequester requester = rsocketRequester.tcp("localhost", rsocketPort);
+        try {
+            List<Recommendation> recommendations = requester.route("recommendation.get")
+                    .data(1)
+                    .retrieveFlux(Recommendation.class)
+                    .collectList().block();
+            assertEquals(2, recommendations.size());
+
+            List<Recommendation> page = requester.route("recommendation.page")
+                    .data(new PageQuery(1, 1, new Cursor(1, 1).encode()))
+                    .retrieveFlux(Recommendation.class)
+                    .collectList().block();
+            assertEquals(1, page.size());
+            assertEquals(2, page.get(0).getRecommendationId());
+
+            CustomRSocketException error = assertThrows(CustomRSocketException.class, () -> requester.route("recommendation.get")
+                    .data(-1)
+                    .retrieveFlux(Recommendation.class)
+                    .blockLast());
+            assertEquals(RSocketErrors.INVALID_INPUT, error.errorCode());
+            assertEquals("Invalid productId: -1", error.getMessage());
+        } finally {
+            requester.dispose();
+        }
+    }
+
+    @Test
+    void getRecommendationsAsSmile() {
+        postAndVerifyRecommendation(1, 1, OK);
+        postAndVerifyRecommendation(1, 2, OK);
+
+        List<Recommendation> recommendations = client.get()
+                .uri("/recommendation?productId=1")
+                .accept(APPLICATION_SMILE)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().contentType(APPLICATION_SMILE)
+                .expectBodyList(Recommendation.class)
+                .returnResult().getResponseBody();
+
+        assertEquals(2, recommendations.size());
+        assertEquals(2, recommendations.get(1).getRecommendationId());
+
+        // JSON is returned to clients that do not ask for a format
+        client.get()
+                .uri("/recommendation?productId=1")
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().contentType(APPLICATION_JSON);
+    }
+
     @Test
     void duplicateError() {
 
@@ -6,6 +6,8 @@ import jakarta.persistence.*;
 @Table(name = "reviews", indexes = {@Index(name = "reviews_unique_idx",
         unique = true, columnList = "productId,reviewId")})
 public class ReviewEntity {
+    // Hibernate 6 maps a plain @GeneratedValue to the pooled sequence ReviewEntity_SEQ (a table on MySQL) with an
+    // allocationSize of 50, ids are not generated by inserts as with an identity column so the inserts are batched
     @Id
     @GeneratedValue
     private int id;
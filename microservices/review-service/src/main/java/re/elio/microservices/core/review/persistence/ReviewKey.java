@@ -0,0 +1,10 @@
+package re.elio.microservices.core.review.persistence;
+
+/**
+ * Projection of a review on its unique (productId, reviewId) key.
+ */
+public interface ReviewKey {
+    int getProductId();
+
+    int getReviewId();
+}
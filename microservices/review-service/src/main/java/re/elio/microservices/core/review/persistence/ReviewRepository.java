@@ -1,11 +1,36 @@
 package re.elio.microservices.core.review.persistence;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface ReviewRepository extends CrudRepository<ReviewEntity, Integer> {
     @Transactional(readOnly = true)
     List<ReviewEntity> findByProductId(int productId);
+
+    /**
+     * Keyset paging over the (productId, reviewId) index.
+     */
+    @Transactional(readOnly = true)
+    List<ReviewEntity> findByProductIdAndReviewIdGreaterThanOrderByReviewId(int productId, int reviewId, Pageable pageable);
+
+    @Transactional(readOnly = true)
+    List<ReviewEntity> findByProductIdIn(Collection<Integer> productIds);
+
+    @Transactional(readOnly = true)
+    @Query("select r.productId as productId, r.reviewId as reviewId from ReviewEntity r where r.productId in ?1")
+    List<ReviewKey> findKeysByProductIdIn(Collection<Integer> productIds);
+
+    /**
+     * Deletes the reviews of the products with one statement, without loading them first.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from ReviewEntity r where r.productId in ?1")
+    int deleteByProductIdIn(Collection<Integer> productIds);
 }
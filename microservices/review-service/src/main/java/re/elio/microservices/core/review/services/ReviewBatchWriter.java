@@ -0,0 +1,168 @@
+package re.elio.microservices.core.review.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import re.elio.api.core.review.Review;
+import re.elio.api.exceptions.InvalidInputException;
+import re.elio.microservices.core.review.persistence.ReviewEntity;
+import re.elio.microservices.core.review.persistence.ReviewRepository;
+import re.elio.util.messaging.EventBatchProcessor;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Writes the reviews of a batch of events with JDBC batched inserts in one transaction, and deletes the reviews of
+ * all their products with one statement.
+ * <p>
+ * Duplicate keys are detected up front, against the reviews of the products in the database and earlier reviews in
+ * the batch, so that one duplicate does not roll back the whole batch. A review equal to the review with its key is
+ * not a duplicate but already applied, e.g. when a batch is processed again.
+ * <p>
+ * If the batch still fails on a constraint, e.g. on a review created meanwhile by another consumer, the reviews are
+ * saved one at a time to find the failing ones. Only MySQL duplicate key errors are reported as duplicate keys, other
+ * errors are reported as they are.
+ */
+@Component
+public class ReviewBatchWriter implements EventBatchProcessor.BatchWriter<Integer, Review> {
+    private static final Logger LOG = LoggerFactory.getLogger(ReviewBatchWriter.class);
+    private static final int ER_DUP_ENTRY = 1062;
+
+    private final ReviewRepository repository;
+    private final ReviewMapper mapper;
+    private final Scheduler jdbcScheduler;
+
+    public ReviewBatchWriter(ReviewRepository repository, ReviewMapper mapper,
+                             @Qualifier("jdbcScheduler") Scheduler jdbcScheduler) {
+        this.repository = repository;
+        this.mapper = mapper;
+        this.jdbcScheduler = jdbcScheduler;
+    }
+
+    @Override
+    public Mono<Map<Integer, Throwable>> create(List<Review> reviews) {
+        return Mono.fromCallable(() -> internalCreateReviews(reviews))
+                .subscribeOn(jdbcScheduler);
+    }
+
+    private Map<Integer, Throwable> internalCreateReviews(List<Review> reviews) {
+        Map<Integer, Throwable> failures = new HashMap<>();
+        Set<Key> storedKeys = new HashSet<>();
+        repository.findKeysByProductIdIn(reviews.stream().map(Review::getProductId).distinct().toList())
+                .forEach(key -> storedKeys.add(new Key(key.getProductId(), key.getReviewId())));
+
+        // Index of each review to insert, and of each review with the key of a stored review
+        List<Integer> indexes = new ArrayList<>();
+        Map<Integer, Review> storedDuplicates = new HashMap<>();
+        Map<Key, Review> batch = new HashMap<>();
+        for (int i = 0; i < reviews.size(); i++) {
+            Review review = reviews.get(i);
+            Key key = new Key(review.getProductId(), review.getReviewId());
+            Review earlier = batch.putIfAbsent(key, review);
+            if (review.getProductId() < 1) {
+                failures.put(i, new InvalidInputException("Invalid productId: " + review.getProductId()));
+            } else if (earlier != null) {
+                // A review equal to an earlier one in the batch is the same event delivered twice
+                if (!isSame(earlier, review)) failures.put(i, duplicateKey(review));
+            } else if (storedKeys.contains(key)) {
+                storedDuplicates.put(i, review);
+            } else {
+                indexes.add(i);
+            }
+        }
+        failures.putAll(notApplied(storedDuplicates));
+        if (indexes.isEmpty()) return failures;
+
+        try {
+            repository.saveAll(indexes.stream().map(i -> mapper.apiToEntity(reviews.get(i))).toList());
+            LOG.debug("createReviews: created {} review entities", indexes.size());
+
+        } catch (DataIntegrityViolationException dive) {
+            // E.g. a review created meanwhile by another consumer, or a value too long for its column
+            LOG.debug("createReviews: the batch failed, creates the reviews one at a time: {}", dive.getMostSpecificCause().getMessage());
+            Map<Integer, Review> duplicates = new HashMap<>();
+            for (int i : indexes) {
+                Review review = reviews.get(i);
+                try {
+                    repository.save(mapper.apiToEntity(review));
+                } catch (DataIntegrityViolationException e) {
+                    if (isDuplicateKey(e)) duplicates.put(i, review);
+                    else failures.put(i, e);
+                }
+            }
+            failures.putAll(notApplied(duplicates));
+        }
+        return failures;
+    }
+
+    /**
+     * @return the duplicate key errors of the reviews that differ from the stored review with their key. A review
+     * equal to the stored review, e.g. of a batch processed again, is already applied
+     */
+    private Map<Integer, Throwable> notApplied(Map<Integer, Review> duplicates) {
+        if (duplicates.isEmpty()) return Map.of();
+        Map<Key, ReviewEntity> stored = new HashMap<>();
+        repository.findByProductIdIn(duplicates.values().stream().map(Review::getProductId).distinct().toList())
+                .forEach(entity -> stored.put(new Key(entity.getProductId(), entity.getReviewId()), entity));
+        Map<Integer, Throwable> failures = new HashMap<>();
+        duplicates.forEach((i, review) -> {
+            if (!isSame(stored.get(new Key(review.getProductId(), review.getReviewId())), review)) {
+                failures.put(i, duplicateKey(review));
+            }
+        });
+        return failures;
+    }
+
+    /**
+     * Spring translates MySQL's ER_DUP_ENTRY to a {@link DuplicateKeyException} with JDBC, through JPA it is only
+     * found as the error code of the SQLException causing the {@link DataIntegrityViolationException}.
+     */
+    private static boolean isDuplicateKey(DataIntegrityViolationException ex) {
+        if (ex instanceof DuplicateKeyException) return true;
+        for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlEx && sqlEx.getErrorCode() == ER_DUP_ENTRY) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Mono<Void> delete(List<Integer> productIds) {
+        return Mono.fromRunnable(() -> {
+                    int count = repository.deleteByProductIdIn(productIds);
+                    LOG.debug("deleteReviews: deleted {} reviews for the products with productIds: {}", count, productIds);
+                })
+                .subscribeOn(jdbcScheduler).then();
+    }
+
+    private static boolean isSame(Review earlier, Review review) {
+        return Objects.equals(earlier.getAuthor(), review.getAuthor())
+                && Objects.equals(earlier.getSubject(), review.getSubject())
+                && Objects.equals(earlier.getContent(), review.getContent());
+    }
+
+    private static boolean isSame(ReviewEntity stored, Review review) {
+        return stored != null
+                && Objects.equals(stored.getAuthor(), review.getAuthor())
+                && Objects.equals(stored.getSubject(), review.getSubject())
+                && Objects.equals(stored.getContent(), review.getContent());
+    }
+
+    private static InvalidInputException duplicateKey(Review review) {
+        return new InvalidInputException("Duplicate key, Product ID: " + review.getProductId() + ", Review ID: " + review.getReviewId());
+    }
+
+    private record Key(int productId, int reviewId) {
+    }
+}
@@ -0,0 +1,37 @@
+package re.elio.microservices.core.review.services;
+
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.stereotype.Controller;
+import re.elio.api.core.PageQuery;
+import re.elio.api.core.review.Review;
+import re.elio.api.core.review.ReviewService;
+import re.elio.util.http.Deadline;
+import re.elio.util.rsocket.RSocketDeadlines;
+import re.elio.util.rsocket.RSocketErrors;
+import reactor.core.publisher.Flux;
+
+/**
+ * Serves the reviews of a product over RSocket as request-stream, next to the HTTP API.
+ * The deadline sent by the requester applies as with the HTTP API.
+ */
+@Controller
+public class ReviewRSocketController {
+    private final ReviewService service;
+
+    public ReviewRSocketController(ReviewService service) {
+        this.service = service;
+    }
+
+    @MessageMapping("review.get")
+    public Flux<Review> getReviews(Integer productId, @Header(name = Deadline.TIMEOUT_HEADER, required = false) String timeoutMs) {
+        return RSocketDeadlines.withDeadline(timeoutMs, () -> service.getReviews(productId))
+                .onErrorMap(RSocketErrors::toRSocketException);
+    }
+
+    @MessageMapping("review.page")
+    public Flux<Review> getReviews(PageQuery query, @Header(name = Deadline.TIMEOUT_HEADER, required = false) String timeoutMs) {
+        return RSocketDeadlines.withDeadline(timeoutMs, () -> service.getReviews(query.productId(), query.limit(), query.cursor()))
+                .onErrorMap(RSocketErrors::toRSocketException);
+    }
+}
@@ -4,18 +4,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.web.bind.annotation.RestController;
+import re.elio.api.core.Cursor;
 import re.elio.api.core.review.Review;
 import re.elio.api.core.review.ReviewService;
 import re.elio.api.exceptions.InvalidInputException;
 import re.elio.microservices.core.review.persistence.ReviewEntity;
 import re.elio.microservices.core.review.persistence.ReviewRepository;
+import re.elio.util.http.ConditionalGet;
+import re.elio.util.http.Deadline;
+import re.elio.util.http.ETagBuilder;
 import re.elio.util.http.ServiceUtil;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 
@@ -23,34 +30,94 @@ import java.util.logging.Level;
 public class ReviewServiceImpl implements ReviewService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ReviewServiceImpl.class);
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int MAX_LIMIT = 1000;
 
     private final ServiceUtil serviceUtil;
     private final ReviewRepository repository;
     private final ReviewMapper mapper;
 
     private final Scheduler jdbcScheduler;
+    private final int pageSize;
 
     @Autowired
     public ReviewServiceImpl(ServiceUtil serviceUtil, ReviewRepository repository, ReviewMapper mapper,
-                             @Qualifier("jdbcScheduler") Scheduler jdbcScheduler) {
+                             @Qualifier("jdbcScheduler") Scheduler jdbcScheduler,
+                             @Value("${app.review.pageSize:500}") int pageSize) {
         this.serviceUtil = serviceUtil;
         this.repository = repository;
         this.mapper = mapper;
         this.jdbcScheduler = jdbcScheduler;
+        this.pageSize = pageSize;
     }
 
     @Override
     public Flux<Review> getReviews(int productId) {
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
         LOG.info("Will get reviews for product with ID: {}", productId);
-        return Mono.fromCallable(() -> internalGetReviews(productId))
+        // Reads one page at a time, the next page is only read when the previous one has been consumed,
+        // so a slow client of a product with many reviews holds neither a JDBC connection nor all reviews in memory.
+        // The list has no ETag, it would take all reviews to build it before the first one is returned
+        return getReviewPage(productId, Integer.MIN_VALUE, pageSize)
+                .map(ReviewPage::reviews)
+                .expand(page -> page.size() < pageSize ? Mono.empty()
+                        : getReviewPage(productId, page.get(page.size() - 1).getReviewId(), pageSize).map(ReviewPage::reviews))
+                .concatMapIterable(page -> page, 1)
+                .log(LOG.getName(), Level.FINE);
+    }
+
+    @Override
+    public Flux<Review> getReviews(int productId, int limit, String cursor) {
+        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        if (limit < 1 || limit > MAX_LIMIT) throw new InvalidInputException("Invalid limit: " + limit + ", max is: " + MAX_LIMIT);
+        int afterReviewId = cursor == null ? Integer.MIN_VALUE : Cursor.decode(cursor, productId).afterId();
+        LOG.info("Will get a page of {} reviews for product with ID: {}", limit, productId);
+        return getReviewPage(productId, afterReviewId, limit)
+                .flatMap(page -> ConditionalGet.check(page.eTag()).thenReturn(page.reviews()))
+                .flatMapMany(Flux::fromIterable)
+                .log(LOG.getName(), Level.FINE);
+    }
+
+    private Mono<ReviewPage> getReviewPage(int productId, int afterReviewId, int size) {
+        // Skipped if the caller has given up while the call waited for a JDBC thread
+        return Deadline.fromCallable(() -> internalGetReviewPage(productId, afterReviewId, size))
+                .subscribeOn(jdbcScheduler);
+    }
+
+    private ReviewPage internalGetReviewPage(int productId, int afterReviewId, int size) {
+        List<ReviewEntity> entityList = repository.findByProductIdAndReviewIdGreaterThanOrderByReviewId(productId, afterReviewId, PageRequest.of(0, size));
+        // The ETag of a page is built from the ids and versions of the reviews on it
+        ETagBuilder eTag = new ETagBuilder();
+        entityList.forEach(entity -> eTag.add(entity.getId()).add(entity.getVersion()));
+        List<Review> list = mapper.entityListToApiList(entityList);
+        list.forEach(e -> e.setServiceAddress(serviceUtil.getServiceAddress()));
+        LOG.debug("/reviews page size: {}", list.size());
+        return new ReviewPage(list, eTag.build());
+    }
+
+    private record ReviewPage(List<Review> reviews, String eTag) {
+    }
+
+    @Override
+    public Flux<Review> getReviews(List<Integer> productIds, int limit) {
+        if (productIds.size() > MAX_BATCH_SIZE) throw new InvalidInputException("Too many productIds: " + productIds.size() + ", max is: " + MAX_BATCH_SIZE);
+        if (limit < 1 || limit > MAX_LIMIT) throw new InvalidInputException("Invalid limit: " + limit + ", max is: " + MAX_LIMIT);
+        productIds.forEach(productId -> {
+            if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        });
+        LOG.info("Will get the first {} reviews for products with IDs: {}", limit, productIds);
+        // Skipped if the caller has given up while the call waited for a JDBC thread
+        return Deadline.fromCallable(() -> internalGetReviews(productIds, limit))
                 .flatMapMany(Flux::fromIterable)
                 .log(LOG.getName(), Level.FINE)
                 .subscribeOn(jdbcScheduler);
     }
 
-    private List<Review> internalGetReviews(int productId) {
-        List<ReviewEntity> entityList = repository.findByProductId(productId);
+    private List<Review> internalGetReviews(List<Integer> productIds, int limit) {
+        // One keyset query per product on the same JDBC thread, a product with many reviews must not blow up the response
+        List<ReviewEntity> entityList = new ArrayList<>();
+        productIds.stream().distinct().forEach(productId -> entityList.addAll(
+                repository.findByProductIdAndReviewIdGreaterThanOrderByReviewId(productId, Integer.MIN_VALUE, PageRequest.of(0, limit))));
         List<Review> list = mapper.entityListToApiList(entityList);
         list.forEach(e -> e.setServiceAddress(serviceUtil.getServiceAddress()));
         LOG.debug("/reviews response size: {}", list.size());
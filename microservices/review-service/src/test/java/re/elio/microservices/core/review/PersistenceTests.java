@@ -7,6 +7,7 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.transaction.annotation.Transactional;
 import re.elio.microservices.core.review.persistence.ReviewEntity;
 import re.elio.microservices.core.review.persistence.ReviewRepository;
@@ -75,6 +76,28 @@ class PersistenceTests extends MySqlTestBase {
         assertEqualsReview(savedEntity, entityList.get(0));
     }
 
+    @Test
+    void getByProductIdIn() {
+        repository.save(new ReviewEntity(2, 1, "a", "s", "c"));
+        repository.save(new ReviewEntity(3, 1, "a", "s", "c"));
+
+        List<ReviewEntity> entityList = repository.findByProductIdIn(List.of(savedEntity.getProductId(), 2));
+        assertThat(entityList, hasSize(2));
+    }
+
+    @Test
+    void getPagesByProductId() {
+        repository.save(new ReviewEntity(1, 3, "a", "s", "c"));
+        repository.save(new ReviewEntity(1, 1, "a", "s", "c"));
+        repository.save(new ReviewEntity(2, 4, "a", "s", "c"));
+
+        List<ReviewEntity> firstPage = repository.findByProductIdAndReviewIdGreaterThanOrderByReviewId(1, Integer.MIN_VALUE, PageRequest.of(0, 2));
+        assertEquals(List.of(1, 2), firstPage.stream().map(ReviewEntity::getReviewId).toList());
+
+        List<ReviewEntity> secondPage = repository.findByProductIdAndReviewIdGreaterThanOrderByReviewId(1, 2, PageRequest.of(0, 2));
+        assertEquals(List.of(3), secondPage.stream().map(ReviewEntity::getReviewId).toList());
+    }
+
     @Test
     void duplicateError() {
         assertThrows(DataIntegrityViolationException.class, () -> {
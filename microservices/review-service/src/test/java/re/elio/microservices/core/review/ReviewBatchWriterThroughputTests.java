@@ -0,0 +1,79 @@
+package re.elio.microservices.core.review;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import re.elio.api.core.review.Review;
+import re.elio.microservices.core.review.persistence.ReviewRepository;
+import re.elio.microservices.core.review.services.ReviewBatchWriter;
+import re.elio.microservices.core.review.services.ReviewMapper;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.NONE;
+
+/**
+ * Compares the ingest of reviews saved one at a time, as by the per event processor, with the batch path on MySQL.
+ */
+@SpringBootTest(webEnvironment = NONE, properties = {"spring.rsocket.server.port=0"})
+class ReviewBatchWriterThroughputTests extends MySqlTestBase {
+    private static final Logger LOG = LoggerFactory.getLogger(ReviewBatchWriterThroughputTests.class);
+
+    private static final int REVIEWS = 500;
+
+    @Autowired
+    private ReviewRepository repository;
+    @Autowired
+    private ReviewMapper mapper;
+    @Autowired
+    private ReviewBatchWriter batchWriter;
+
+    @BeforeEach
+    void setupDb() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void batchesAreWrittenFasterThanSingleReviews() {
+        // Warms up the connections and the generator of the ids
+        saveOneAtATime(reviews(1, 50));
+        createInBatch(reviews(2, 50));
+
+        long oneAtATimeNanos = saveOneAtATime(reviews(3, REVIEWS));
+        long batchNanos = createInBatch(reviews(4, REVIEWS));
+        LOG.info("Wrote {} reviews in {} ms one at a time, in {} ms as a batch",
+                REVIEWS, oneAtATimeNanos / 1_000_000, batchNanos / 1_000_000);
+
+        assertEquals(REVIEWS, repository.findByProductId(3).size());
+        assertEquals(REVIEWS, repository.findByProductId(4).size());
+        assertTrue(batchNanos * 2 < oneAtATimeNanos,
+                "batch: " + batchNanos / 1_000_000 + " ms, one at a time: " + oneAtATimeNanos / 1_000_000 + " ms");
+    }
+
+    private long saveOneAtATime(List<Review> reviews) {
+        long start = System.nanoTime();
+        reviews.forEach(review -> repository.save(mapper.apiToEntity(review)));
+        return System.nanoTime() - start;
+    }
+
+    private long createInBatch(List<Review> reviews) {
+        long start = System.nanoTime();
+        Map<Integer, Throwable> failures = batchWriter.create(reviews).block();
+        long nanos = System.nanoTime() - start;
+        assertEquals(Map.of(), failures);
+        return nanos;
+    }
+
+    private static List<Review> reviews(int productId, int count) {
+        return IntStream.rangeClosed(1, count)
+                .mapToObj(reviewId -> new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content " + reviewId, null))
+                .toList();
+    }
+}
@@ -6,21 +6,40 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import re.elio.api.core.Cursor;
 import re.elio.api.core.review.Review;
+import re.elio.api.core.review.ReviewService;
+import re.elio.api.exceptions.DeadlineExceededException;
+import re.elio.api.exceptions.InvalidInputException;
 import re.elio.microservices.core.review.persistence.ReviewRepository;
+import re.elio.microservices.core.review.services.ReviewBatchWriter;
+import re.elio.util.http.Deadline;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.HttpHeaders.CACHE_CONTROL;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
 import static reactor.core.publisher.Mono.just;
 
-@SpringBootTest(webEnvironment = RANDOM_PORT)
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {"app.review.pageSize=2", "spring.rsocket.server.port=0"})
 class ReviewServiceApplicationTests extends MySqlTestBase {
     @Autowired
     private WebTestClient client;
     @Autowired
     private ReviewRepository repository;
+    @Autowired
+    private ReviewBatchWriter batchWriter;
+    @Autowired
+    private ReviewService reviewService;
 
     @Test
     void contextLoads() {
@@ -50,6 +69,96 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
                 .jsonPath("$[2].reviewId").isEqualTo(3);
     }
 
+    @Test
+    void getReviewsAsStream() {
+
+        int productId = 1;
+
+        postAndVerifyReview(productId, 1, OK);
+        postAndVerifyReview(productId, 2, OK);
+        postAndVerifyReview(productId, 3, OK);
+
+        List<Review> reviews = client.get()
+                .uri("/review?productId=" + productId)
+                .accept(APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().contentType(APPLICATION_NDJSON)
+                .returnResult(Review.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertEquals(List.of(1, 2, 3), reviews.stream().map(Review::getReviewId).toList());
+    }
+
+    @Test
+    void getReviewsByPage() {
+
+        int productId = 1;
+
+        postAndVerifyReview(productId, 1, OK);
+        postAndVerifyReview(productId, 2, OK);
+        postAndVerifyReview(productId, 3, OK);
+
+        getAndVerifyReviewsByProductId("?productId=" + productId + "&limit=2", OK)
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[1].reviewId").isEqualTo(2);
+
+        getAndVerifyReviewsByProductId("?productId=" + productId + "&limit=2&cursor=" + new Cursor(productId, 2).encode(), OK)
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].reviewId").isEqualTo(3);
+    }
+
+    @Test
+    void getReviewsByPageInvalidLimit() {
+
+        getAndVerifyReviewsByProductId("?productId=1&limit=0", UNPROCESSABLE_ENTITY)
+                .jsonPath("$.path").isEqualTo("/review")
+                .jsonPath("$.message").isEqualTo("Invalid limit: 0, max is: 1000");
+    }
+
+    @Test
+    void getReviewsNotModified() {
+
+        int productId = 1;
+
+        postAndVerifyReview(productId, 1, OK);
+        String eTag = client.get()
+                .uri("/review?productId=" + productId + "&limit=10")
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().valueEquals(CACHE_CONTROL, "no-cache")
+                .returnResult(String.class)
+                .getResponseHeaders().getETag();
+
+        client.get()
+                .uri("/review?productId=" + productId + "&limit=10")
+                .accept(APPLICATION_JSON)
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus().isEqualTo(NOT_MODIFIED)
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    void getReviewsByProductIds() {
+
+        postAndVerifyReview(1, 1, OK);
+        postAndVerifyReview(1, 2, OK);
+        postAndVerifyReview(2, 1, OK);
+        postAndVerifyReview(3, 1, OK);
+
+        getAndVerifyReviewsByProductId("?productIds=1,2&limit=10", OK)
+                .jsonPath("$.length()").isEqualTo(3);
+        getAndVerifyReviewsByProductId("?productIds=2,1&limit=1", OK)
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].productId").isEqualTo(2)
+                .jsonPath("$[1].productId").isEqualTo(1)
+                .jsonPath("$[1].reviewId").isEqualTo(1);
+    }
+
     @Test
     void duplicateError() {
 
@@ -119,6 +228,64 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
                 .jsonPath("$.message").isEqualTo("Invalid productId: " + productIdInvalid);
     }
 
+    @Test
+    void getReviewsRejectedWithoutTimeLeft() {
+
+        client.get()
+                .uri("/review?productId=1")
+                .header(Deadline.TIMEOUT_HEADER, "0")
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(GATEWAY_TIMEOUT);
+    }
+
+    @Test
+    void getReviewsSkippedAfterDeadline() {
+        // A valid deadline that has expired by the time the read gets a JDBC thread
+        Deadline deadline = Deadline.after(Duration.ofMillis(1));
+
+        assertThrows(DeadlineExceededException.class, () -> reviewService.getReviews(List.of(1))
+                .delaySubscription(Duration.ofMillis(10))
+                .contextWrite(deadline::writeTo)
+                .blockLast());
+    }
+
+    @Test
+    void createAndDeleteReviewsInBatch() {
+        postAndVerifyReview(1, 1, OK);
+
+        Map<Integer, Throwable> failures = batchWriter.create(List.of(
+                review(1, 2),
+                review(1, 1, "Other content"),
+                review(2, 1),
+                review(1, 2, "Other content"),
+                review(2, 1),
+                review(-1, 1))).block();
+
+        assertEquals(Set.of(1, 3, 5), failures.keySet());
+        assertEquals("Duplicate key, Product ID: 1, Review ID: 1", failures.get(1).getMessage());
+        assertEquals("Duplicate key, Product ID: 1, Review ID: 2", failures.get(3).getMessage());
+        assertInstanceOf(InvalidInputException.class, failures.get(5));
+        assertEquals(3, repository.count());
+
+        // Processing the same reviews again, e.g. after a failed commit of the offsets, is not an error
+        assertEquals(Map.of(), batchWriter.create(List.of(review(1, 1), review(1, 2), review(2, 1))).block());
+        assertEquals(3, repository.count());
+
+        batchWriter.delete(List.of(1, 3)).block();
+
+        assertEquals(0, repository.findByProductId(1).size());
+        assertEquals(1, repository.findByProductId(2).size());
+    }
+
+    private Review review(int productId, int reviewId) {
+        return review(productId, reviewId, "Content " + reviewId);
+    }
+
+    private Review review(int productId, int reviewId, String content) {
+        return new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, content, null);
+    }
+
     private WebTestClient.BodyContentSpec getAndVerifyReviewsByProductId(int productId, HttpStatus expectedStatus) {
         return getAndVerifyReviewsByProductId("?productId=" + productId, expectedStatus);
     }
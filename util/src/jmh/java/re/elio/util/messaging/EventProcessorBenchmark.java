@@ -0,0 +1,67 @@
+package re.elio.util.messaging;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import re.elio.api.event.Event;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static re.elio.api.event.Event.Type.CREATE;
+
+/**
+ * Compares the throughput of processing a batch of events with the blocking consumer, one database write at a time,
+ * and with the {@link ReactiveEventProcessor}. The database write is simulated by a delay of writeMicros.
+ * Run with: ./gradlew :util:jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventProcessorBenchmark {
+    private static final int EVENTS = 1000;
+
+    @Param({"500", "2000"})
+    private long writeMicros;
+
+    @Param({"16", "64"})
+    private int concurrency;
+
+    private List<Message<Event<Integer, String>>> messages;
+    private Consumer<Event<Integer, String>> blockingConsumer;
+    private ReactiveEventProcessor<Integer, String> reactiveProcessor;
+
+    @Setup
+    public void setup() {
+        messages = IntStream.range(0, EVENTS)
+                .mapToObj(i -> MessageBuilder.withPayload(new Event<>(CREATE, i, "event " + i)).build())
+                .toList();
+        blockingConsumer = event -> write(event).block();
+        reactiveProcessor = new ReactiveEventProcessor<>(this::write, concurrency, 1, Duration.ofMillis(1), Duration.ofMillis(1),
+                (event, ex) -> {});
+    }
+
+    private Mono<Void> write(Event<Integer, String> event) {
+        return Mono.delay(Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(writeMicros))).then();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void blockingConsumer() {
+        messages.forEach(message -> blockingConsumer.accept(message.getPayload()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void reactiveProcessor() {
+        reactiveProcessor.apply(Flux.fromIterable(messages)).block();
+    }
+}
@@ -0,0 +1,72 @@
+package re.elio.util.http;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.reactive.ServerWebExchangeContextFilter;
+import org.springframework.web.server.ServerWebExchange;
+import re.elio.api.exceptions.NotModifiedException;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Conditional GET support for handlers that return the body instead of a ResponseEntity. The current
+ * exchange is taken from the Reactor context, where {@link ExchangeContextWebFilter} has put it.
+ * <p>
+ * The same resource may be returned as JSON or Smile, the ETag therefore also covers the Accept header
+ * of the request and the responses vary by Accept.
+ */
+public final class ConditionalGet {
+    // Clients may keep a response, but must revalidate it with If-None-Match before using it
+    private static final String CACHE_CONTROL = CacheControl.noCache().getHeaderValue();
+
+    private ConditionalGet() {
+    }
+
+    /**
+     * Sets the ETag, Cache-Control and Vary headers of the response to the current request.
+     *
+     * @param eTag weak ETag of the resource, see {@link ETagBuilder}, the ETag of the response is built from it
+     *             and the Accept header
+     * @return empty, or a {@link NotModifiedException} if the If-None-Match header of the request matches the ETag
+     */
+    public static Mono<Void> check(String eTag) {
+        return Mono.deferContextual(context -> {
+            Optional<ServerWebExchange> exchange = ServerWebExchangeContextFilter.getExchange(context);
+            if (exchange.isEmpty()) return Mono.empty();
+
+            HttpHeaders requestHeaders = exchange.get().getRequest().getHeaders();
+            HttpHeaders responseHeaders = exchange.get().getResponse().getHeaders();
+            String representationETag = representationETag(eTag, requestHeaders.getAccept());
+            responseHeaders.setETag(representationETag);
+            responseHeaders.setCacheControl(CACHE_CONTROL);
+            if (!responseHeaders.getVary().contains(HttpHeaders.ACCEPT)) responseHeaders.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+            if (matches(requestHeaders.getIfNoneMatch(), representationETag)) {
+                return Mono.error(new NotModifiedException(representationETag));
+            }
+            return Mono.empty();
+        });
+    }
+
+    public static String getCacheControl() {
+        return CACHE_CONTROL;
+    }
+
+    private static String representationETag(String eTag, List<MediaType> accept) {
+        return accept.isEmpty() ? eTag : new ETagBuilder().add(eTag).add(MediaType.toString(accept)).build();
+    }
+
+    // If-None-Match uses the weak comparison, the opaque tags are compared without their W/ prefix
+    private static boolean matches(List<String> ifNoneMatch, String eTag) {
+        for (String candidate : ifNoneMatch) {
+            if (candidate.equals("*") || opaqueTag(candidate).equals(opaqueTag(eTag))) return true;
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String eTag) {
+        return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+    }
+}
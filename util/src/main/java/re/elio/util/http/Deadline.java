@@ -0,0 +1,74 @@
+package re.elio.util.http;
+
+import re.elio.api.exceptions.DeadlineExceededException;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
+/**
+ * Point in time after which nobody is waiting for the result of a request anymore.
+ * <p>
+ * The deadline of the request being processed is kept in the Reactor context by the
+ * {@link DeadlineWebFilter} and passed on to other services as the remaining time, in milliseconds,
+ * in the {@value #TIMEOUT_HEADER} header by the {@link DeadlineExchangeFilter}.
+ */
+public final class Deadline {
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    public static Optional<Deadline> from(ContextView context) {
+        return context.getOrEmpty(Deadline.class);
+    }
+
+    /**
+     * @return the deadline that expires last, empty if any of them is empty, i.e. without a deadline
+     */
+    public static Optional<Deadline> latest(Iterable<Optional<Deadline>> deadlines) {
+        Deadline latest = null;
+        for (Optional<Deadline> deadline : deadlines) {
+            if (deadline.isEmpty()) return Optional.empty();
+            if (latest == null || deadline.get().expiresAtNanos - latest.expiresAtNanos > 0) latest = deadline.get();
+        }
+        return Optional.ofNullable(latest);
+    }
+
+    /**
+     * Like {@link Mono#fromCallable(Callable)}, but the callable is skipped with a {@link DeadlineExceededException}
+     * if the deadline of the subscriber has expired when it is about to run, e.g. after waiting for a thread.
+     */
+    public static <T> Mono<T> fromCallable(Callable<T> callable) {
+        return Mono.deferContextual(context -> Mono.fromCallable(() -> {
+            from(context).ifPresent(Deadline::check);
+            return callable.call();
+        }));
+    }
+
+    public Context writeTo(Context context) {
+        return context.put(Deadline.class, this);
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    public void check() {
+        if (isExpired()) throw new DeadlineExceededException("Deadline of the request exceeded");
+    }
+}
@@ -0,0 +1,40 @@
+package re.elio.util.http;
+
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import re.elio.api.exceptions.DeadlineExceededException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Passes the deadline of the current request on to the called service in the
+ * {@value Deadline#TIMEOUT_HEADER} header and gives up on the call when the deadline expires.
+ * Calls made after the deadline are not sent at all.
+ */
+public class DeadlineExchangeFilter implements ExchangeFilterFunction {
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.deferContextual(context -> {
+            Optional<Deadline> deadline = Deadline.from(context);
+            if (deadline.isEmpty()) return next.exchange(request);
+
+            Duration remaining = deadline.get().remaining();
+            if (remaining.isZero()) return Mono.error(deadlineExceeded(request));
+
+            ClientRequest requestWithDeadline = ClientRequest.from(request)
+                    .header(Deadline.TIMEOUT_HEADER, String.valueOf(remaining.toMillis()))
+                    .build();
+            return next.exchange(requestWithDeadline)
+                    .timeout(remaining, Mono.error(() -> deadlineExceeded(request)));
+        });
+    }
+
+    private DeadlineExceededException deadlineExceeded(ClientRequest request) {
+        return new DeadlineExceededException("Deadline exceeded calling: " + request.url());
+    }
+}
@@ -0,0 +1,103 @@
+package re.elio.util.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import re.elio.api.exceptions.DeadlineExceededException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.springframework.http.HttpStatus.GATEWAY_TIMEOUT;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM;
+
+/**
+ * Gives each request a {@link Deadline}, from the {@value Deadline#TIMEOUT_HEADER} header set by the caller
+ * or else from app.deadline.defaultTimeoutMs, if configured. The deadline is kept in the Reactor context
+ * and the processing of the request is cancelled with a 504 response once it expires.
+ * Requests arriving after their deadline are rejected without being processed.
+ * <p>
+ * Streaming requests, accepting NDJSON or server-sent events or matching app.deadline.streamingPaths, get no
+ * default deadline, a stream may take longer than any single response. A deadline set by their caller still applies.
+ */
+@Component
+public class DeadlineWebFilter implements WebFilter {
+    private static final Logger LOG = LoggerFactory.getLogger(DeadlineWebFilter.class);
+
+    private static final List<MediaType> STREAMING_MEDIA_TYPES = List.of(APPLICATION_NDJSON, TEXT_EVENT_STREAM);
+
+    private final long defaultTimeoutMs;
+    private final List<PathPattern> streamingPaths;
+
+    /**
+     * @param streamingPaths comma separated path patterns of the streaming endpoints, e.g. /product-composite/{productId}/stream
+     */
+    public DeadlineWebFilter(@Value("${app.deadline.defaultTimeoutMs:0}") long defaultTimeoutMs,
+                             @Value("${app.deadline.streamingPaths:}") List<String> streamingPaths) {
+        this.defaultTimeoutMs = defaultTimeoutMs;
+        this.streamingPaths = streamingPaths.stream()
+                .filter(pattern -> !pattern.isBlank())
+                .map(pattern -> PathPatternParser.defaultInstance.parse(pattern.trim()))
+                .toList();
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        Long timeoutMs = getTimeoutMs(exchange);
+        if (timeoutMs == null) return chain.filter(exchange);
+
+        String path = exchange.getRequest().getPath().pathWithinApplication().value();
+        if (timeoutMs <= 0) {
+            LOG.debug("Rejects request for path: {}, its deadline has already expired", path);
+            return respondWithTimeout(exchange.getResponse(), new DeadlineExceededException("Deadline of the request exceeded"));
+        }
+
+        Duration timeout = Duration.ofMillis(timeoutMs);
+        Deadline deadline = Deadline.after(timeout);
+        return chain.filter(exchange)
+                .timeout(timeout, Mono.error(() -> new DeadlineExceededException("Deadline of the request exceeded")))
+                .onErrorResume(DeadlineExceededException.class, ex -> {
+                    LOG.debug("Gives up on request for path: {}, its deadline of {} ms expired", path, timeoutMs);
+                    return respondWithTimeout(exchange.getResponse(), ex);
+                })
+                .contextWrite(deadline::writeTo);
+    }
+
+    private Long getTimeoutMs(ServerWebExchange exchange) {
+        String header = exchange.getRequest().getHeaders().getFirst(Deadline.TIMEOUT_HEADER);
+        if (header != null) {
+            try {
+                return Long.parseLong(header.trim());
+            } catch (NumberFormatException ex) {
+                LOG.warn("Ignores invalid {} header: {}", Deadline.TIMEOUT_HEADER, header);
+            }
+        }
+        return defaultTimeoutMs > 0 && !isStreaming(exchange) ? defaultTimeoutMs : null;
+    }
+
+    private boolean isStreaming(ServerWebExchange exchange) {
+        List<MediaType> accept = exchange.getRequest().getHeaders().getAccept();
+        if (STREAMING_MEDIA_TYPES.stream().anyMatch(type -> accept.stream().anyMatch(type::equalsTypeAndSubtype))) {
+            return true;
+        }
+        PathContainer path = exchange.getRequest().getPath().pathWithinApplication();
+        return streamingPaths.stream().anyMatch(pattern -> pattern.matches(path));
+    }
+
+    private Mono<Void> respondWithTimeout(ServerHttpResponse response, DeadlineExceededException ex) {
+        if (response.isCommitted()) return Mono.error(ex);
+        response.setStatusCode(GATEWAY_TIMEOUT);
+        return response.setComplete();
+    }
+}
@@ -0,0 +1,28 @@
+package re.elio.util.http;
+
+/**
+ * Builds a weak ETag from the parts that identify a version of a resource, e.g. the ids and
+ * {@code @Version} fields of its entities. The parts are hashed with 64-bit FNV-1a, so equal parts
+ * give the same ETag in all instances of a service. The ETag is weak because the body also holds the
+ * address of the instance, which is not hashed: the responses of two instances are equivalent, not equal.
+ */
+public class ETagBuilder {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private long hash = FNV_OFFSET_BASIS;
+
+    public ETagBuilder add(Object part) {
+        String value = String.valueOf(part);
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        // Separates the parts, "1" + "23" must not give the same ETag as "12" + "3"
+        hash = (hash ^ 0xffff) * FNV_PRIME;
+        return this;
+    }
+
+    public String build() {
+        return "W/\"" + Long.toHexString(hash) + "\"";
+    }
+}
@@ -0,0 +1,11 @@
+package re.elio.util.http;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.reactive.ServerWebExchangeContextFilter;
+
+/**
+ * Puts the current exchange in the Reactor context, used by {@link ConditionalGet}.
+ */
+@Component
+public class ExchangeContextWebFilter extends ServerWebExchangeContextFilter {
+}
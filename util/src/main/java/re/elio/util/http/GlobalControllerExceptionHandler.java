@@ -2,15 +2,20 @@ package re.elio.util.http;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import re.elio.api.exceptions.BadRequestException;
+import re.elio.api.exceptions.DeadlineExceededException;
 import re.elio.api.exceptions.InvalidInputException;
 import re.elio.api.exceptions.NotFoundException;
+import re.elio.api.exceptions.NotModifiedException;
+import re.elio.api.exceptions.ServiceUnavailableException;
 
 import static org.springframework.http.HttpStatus.*;
 
@@ -36,6 +41,27 @@ class GlobalControllerExceptionHandler {
         return createHttpErrorInfo(BAD_REQUEST, request, ex);
     }
 
+    @ResponseStatus(GATEWAY_TIMEOUT)
+    @ExceptionHandler(DeadlineExceededException.class)
+    public @ResponseBody HttpErrorInfo handleDeadlineExceededException(ServerHttpRequest request, DeadlineExceededException ex) {
+        return createHttpErrorInfo(GATEWAY_TIMEOUT, request, ex);
+    }
+
+    @ResponseStatus(SERVICE_UNAVAILABLE)
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public @ResponseBody HttpErrorInfo handleServiceUnavailableException(ServerHttpRequest request, ServiceUnavailableException ex) {
+        return createHttpErrorInfo(SERVICE_UNAVAILABLE, request, ex);
+    }
+
+    @ExceptionHandler(NotModifiedException.class)
+    public ResponseEntity<Void> handleNotModifiedException(NotModifiedException ex) {
+        return ResponseEntity.status(NOT_MODIFIED)
+                .eTag(ex.getETag())
+                .header(HttpHeaders.CACHE_CONTROL, ConditionalGet.getCacheControl())
+                .varyBy(HttpHeaders.ACCEPT)
+                .build();
+    }
+
     private HttpErrorInfo createHttpErrorInfo(HttpStatus httpStatus, ServerHttpRequest request, Exception ex) {
         final String path = request.getPath().pathWithinApplication().value();
         final String message = ex.getMessage();
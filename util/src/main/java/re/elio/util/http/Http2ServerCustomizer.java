@@ -0,0 +1,29 @@
+package re.elio.util.http;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * Sets the HTTP/2 stream and flow control settings of the Netty server. HTTP/2 is enabled with
+ * server.http2.enabled, without TLS the server accepts cleartext HTTP/2 (h2c) next to HTTP/1.1.
+ */
+@Component
+public class Http2ServerCustomizer implements NettyServerCustomizer {
+    private final long maxConcurrentStreams;
+    private final int initialWindowSize;
+
+    public Http2ServerCustomizer(@Value("${app.http2.maxConcurrentStreams:256}") long maxConcurrentStreams,
+                                 @Value("${app.http2.initialWindowSize:1048576}") int initialWindowSize) {
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        this.initialWindowSize = initialWindowSize;
+    }
+
+    @Override
+    public HttpServer apply(HttpServer httpServer) {
+        return httpServer.http2Settings(settings -> settings
+                .maxConcurrentStreams(maxConcurrentStreams)
+                .initialWindowSize(initialWindowSize));
+    }
+}
@@ -0,0 +1,32 @@
+package re.elio.util.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.HttpResources;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * Selects the transport of the Netty server. The native transport is opt-in, with app.nativeTransport.enabled the
+ * server runs on io_uring or epoll, if their native libraries are on the classpath and supported by the kernel,
+ * otherwise on NIO.
+ */
+@Component
+public class NativeTransportCustomizer implements NettyServerCustomizer {
+    private static final Logger LOG = LoggerFactory.getLogger(NativeTransportCustomizer.class);
+
+    private final boolean nativeTransport;
+
+    public NativeTransportCustomizer(@Value("${app.nativeTransport.enabled:false}") boolean nativeTransport) {
+        this.nativeTransport = nativeTransport;
+    }
+
+    @Override
+    public HttpServer apply(HttpServer httpServer) {
+        LOG.info("Runs the server on the {} transport", nativeTransport && LoopResources.hasNativeSupport() ? "native" : "NIO");
+        return httpServer.runOn(HttpResources.get(), nativeTransport);
+    }
+}
@@ -0,0 +1,78 @@
+package re.elio.util.http;
+
+import io.netty.channel.unix.DomainSocketAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.stereotype.Component;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.HttpResources;
+import reactor.netty.http.server.HttpServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Serves the application on a Unix domain socket at app.unixSocket.path, next to its TCP port, for callers on the
+ * same host. The {@link NettyServerCustomizer}s of the TCP server are applied too, e.g. its HTTP/2 settings, but
+ * Unix domain sockets always run on the native epoll or io_uring transport.
+ */
+@Component
+public class UnixDomainSocketServer implements SmartLifecycle {
+    private static final Logger LOG = LoggerFactory.getLogger(UnixDomainSocketServer.class);
+
+    private final ObjectProvider<HttpHandler> httpHandler;
+    private final ObjectProvider<NettyServerCustomizer> customizers;
+    private final String path;
+    private DisposableServer server;
+
+    public UnixDomainSocketServer(ObjectProvider<HttpHandler> httpHandler, ObjectProvider<NettyServerCustomizer> customizers,
+                                  @Value("${app.unixSocket.path:}") String path) {
+        this.httpHandler = httpHandler;
+        this.customizers = customizers;
+        this.path = path;
+    }
+
+    @Override
+    public void start() {
+        if (path.isEmpty()) return;
+
+        try {
+            // A socket file left by a previous run makes the bind fail
+            Files.deleteIfExists(Path.of(path));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        HttpServer httpServer = HttpServer.create()
+                .bindAddress(() -> new DomainSocketAddress(path))
+                .protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        for (NettyServerCustomizer customizer : customizers.orderedStream().toList()) {
+            httpServer = customizer.apply(httpServer);
+        }
+        server = httpServer
+                .runOn(HttpResources.get(), true)
+                .handle(new ReactorHttpHandlerAdapter(httpHandler.getObject()))
+                .bindNow();
+        LOG.info("Serves requests on the Unix domain socket: {}", path);
+    }
+
+    @Override
+    public void stop() {
+        if (server == null) return;
+        server.disposeNow();
+        server = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return server != null;
+    }
+}
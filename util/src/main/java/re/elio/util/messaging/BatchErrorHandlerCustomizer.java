@@ -0,0 +1,70 @@
+package re.elio.util.messaging;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.cloud.stream.config.ListenerContainerCustomizer;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.AbstractMessageListenerContainer;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.ExponentialBackOffWithMaxRetries;
+import org.springframework.stereotype.Component;
+
+/**
+ * Retries the batches of the Kafka binding in batch mode, the binder does not retry batches itself. A batch whose
+ * processing throws, e.g. on a database that is down, is processed again with the backoff of the binding, after
+ * maxAttempts the records of the batch are sent to the dead letter topic of the binding and committed.
+ * <p>
+ * Events that fail on their own are sent to the dead letter topic by the {@link EventBatchProcessor}, they do not
+ * fail the batch.
+ */
+@Component
+@ConditionalOnProperty(name = "app.messaging.mode", havingValue = "batch")
+public class BatchErrorHandlerCustomizer implements ListenerContainerCustomizer<AbstractMessageListenerContainer<?, ?>>, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchErrorHandlerCustomizer.class);
+
+    private final DefaultKafkaProducerFactory<byte[], byte[]> producerFactory;
+    private final DefaultErrorHandler errorHandler;
+
+    /**
+     * @param maxAttempts number of times a batch is processed before its records are sent to the dead letter topic,
+     *                    including the first time
+     */
+    public BatchErrorHandlerCustomizer(
+            KafkaProperties kafkaProperties,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.maxAttempts:3}") int maxAttempts,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffInitialInterval:1000}") long minBackoffMillis,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffMaxInterval:10000}") long maxBackoffMillis,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffMultiplier:2.0}") double backoffMultiplier,
+            @Value("${spring.cloud.stream.kafka.bindings.messageProcessor-in-0.consumer.dlqName:error.${spring.cloud.stream.bindings.messageProcessor-in-0.destination}.${spring.cloud.stream.bindings.messageProcessor-in-0.group}}") String deadLetterTopic) {
+        // The binder consumes the records as bytes, they are sent to the dead letter topic unchanged
+        this.producerFactory = new DefaultKafkaProducerFactory<>(kafkaProperties.buildProducerProperties(null),
+                new ByteArraySerializer(), new ByteArraySerializer());
+        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(new KafkaTemplate<>(producerFactory),
+                (consumerRecord, ex) -> new TopicPartition(deadLetterTopic, -1));
+
+        ExponentialBackOffWithMaxRetries backOff = new ExponentialBackOffWithMaxRetries(Math.max(0, maxAttempts - 1));
+        backOff.setInitialInterval(minBackoffMillis);
+        backOff.setMaxInterval(maxBackoffMillis);
+        backOff.setMultiplier(backoffMultiplier);
+        this.errorHandler = new DefaultErrorHandler(recoverer, backOff);
+        LOG.info("Retries failed batches {} times, then sends their records to {}", maxAttempts - 1, deadLetterTopic);
+    }
+
+    @Override
+    public void configure(AbstractMessageListenerContainer<?, ?> container, String destinationName, String group) {
+        container.setCommonErrorHandler(errorHandler);
+    }
+
+    @Override
+    public void destroy() {
+        producerFactory.destroy();
+    }
+}
@@ -0,0 +1,37 @@
+package re.elio.util.messaging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import re.elio.api.event.Event;
+import re.elio.api.exceptions.EventProcessingException;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Sends events that could not be processed to the dead letter topic of their binding, with the exception headers
+ * of the dead letters sent by the Kafka binder.
+ */
+public class DeadLetterPublisher<K, T> implements BiConsumer<Event<K, T>, Throwable> {
+    private static final Logger LOG = LoggerFactory.getLogger(DeadLetterPublisher.class);
+
+    private final StreamBridge streamBridge;
+    private final String destination;
+
+    public DeadLetterPublisher(StreamBridge streamBridge, String destination) {
+        this.streamBridge = streamBridge;
+        this.destination = destination;
+    }
+
+    @Override
+    public void accept(Event<K, T> event, Throwable ex) {
+        LOG.warn("Sends the {} event with key {} to {}: {}", event.getEventType(), event.getKey(), destination, ex.toString());
+        boolean sent = streamBridge.send(destination, MessageBuilder.withPayload(event)
+                .setHeader(KafkaHeaders.DLT_EXCEPTION_FQCN, ex.getClass().getName())
+                .setHeader(KafkaHeaders.DLT_EXCEPTION_MESSAGE, String.valueOf(ex.getMessage()))
+                .build());
+        if (!sent) throw new EventProcessingException("Failed to send the event with key " + event.getKey() + " to " + destination);
+    }
+}
@@ -0,0 +1,90 @@
+package re.elio.util.messaging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import re.elio.api.event.Event;
+import re.elio.api.exceptions.EventProcessingException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Batch message processor for the events of a core service, for bindings in batch mode. Consecutive CREATE events
+ * are written with one bulk insert and consecutive DELETE events with one bulk delete, the runs are written in the
+ * order of the events so that a product deleted and created again in the same batch ends up created.
+ * <p>
+ * Events that fail on their own, e.g. invalid ones or duplicate keys of other data, are handed to the dead letters and
+ * the rest of the batch is processed. An event creating what is already stored, e.g. when a batch is processed again,
+ * is already applied and not a failure. Failures of a whole bulk write, e.g. a database that is down, are thrown, the
+ * {@link BatchErrorHandlerCustomizer} retries the batch.
+ */
+public class EventBatchProcessor<K, T> implements Consumer<List<Event<K, T>>> {
+    private static final Logger LOG = LoggerFactory.getLogger(EventBatchProcessor.class);
+
+    private final BatchWriter<K, T> writer;
+    private final BiConsumer<Event<K, T>, Throwable> deadLetters;
+
+    public EventBatchProcessor(BatchWriter<K, T> writer, BiConsumer<Event<K, T>, Throwable> deadLetters) {
+        this.writer = writer;
+        this.deadLetters = deadLetters;
+    }
+
+    @Override
+    public void accept(List<Event<K, T>> events) {
+        LOG.info("Process a batch of {} messages...", events.size());
+        Flux.fromIterable(runs(events))
+                .concatMap(this::process)
+                .then()
+                .block();
+        LOG.info("Batch processing done!");
+    }
+
+    private Mono<Void> process(List<Event<K, T>> run) {
+        Event.Type eventType = run.get(0).getEventType();
+        if (eventType == Event.Type.CREATE) {
+            return writer.create(run.stream().map(Event::getData).toList())
+                    .doOnNext(failures -> failures.forEach((index, ex) -> deadLetters.accept(run.get(index), ex)))
+                    .then();
+        }
+        if (eventType == Event.Type.DELETE) {
+            return writer.delete(run.stream().map(Event::getKey).toList());
+        }
+        return Mono.fromRunnable(() -> run.forEach(event -> deadLetters.accept(event, new EventProcessingException(
+                "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event"))));
+    }
+
+    /**
+     * @return the events split into runs of the same event type
+     */
+    private static <K, T> List<List<Event<K, T>>> runs(List<Event<K, T>> events) {
+        List<List<Event<K, T>>> runs = new ArrayList<>();
+        List<Event<K, T>> run = new ArrayList<>();
+        for (Event<K, T> event : events) {
+            if (!run.isEmpty() && run.get(0).getEventType() != event.getEventType()) {
+                runs.add(run);
+                run = new ArrayList<>();
+            }
+            run.add(event);
+        }
+        if (!run.isEmpty()) runs.add(run);
+        return runs;
+    }
+
+    /**
+     * Bulk writes of a core service
+     */
+    public interface BatchWriter<K, T> {
+        /**
+         * @return the errors of the items that were not created, by their index in the items. Items with the key of
+         * an equal item that is already stored, or earlier in the items, are not errors
+         */
+        Mono<Map<Integer, Throwable>> create(List<T> items);
+
+        Mono<Void> delete(List<K> keys);
+    }
+}
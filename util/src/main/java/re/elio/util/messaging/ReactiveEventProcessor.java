@@ -0,0 +1,148 @@
+package re.elio.util.messaging;
+
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import re.elio.api.event.Event;
+import re.elio.api.exceptions.EventProcessingException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Reactive message processor for the events of a core service. Events are processed concurrently in up to
+ * concurrency lanes, the events of a Kafka partition, or else of a key, share a lane and are processed in order.
+ * <p>
+ * A message is acknowledged once its event is processed, the binding must use manual acknowledgements. Failed events
+ * are retried with backoff, except events that can never be processed. A RabbitMQ message that still fails is
+ * rejected and ends up in the dead letter queue. A Kafka record that still fails is sent to the dead letter topic of
+ * the binding, e.g. by a {@link DeadLetterPublisher}, and acknowledged once it is sent. A Kafka record is committed
+ * with the offsets of the records after it, so a dead letter that can't be sent is retried until it is, and the later
+ * records of its lane wait.
+ * <p>
+ * A message that fails to be acknowledged after its event was processed is only logged, it is not rejected.
+ */
+public class ReactiveEventProcessor<K, T> implements Function<Flux<Message<Event<K, T>>>, Mono<Void>> {
+    private static final Logger LOG = LoggerFactory.getLogger(ReactiveEventProcessor.class);
+
+    private final Function<Event<K, T>, Mono<Void>> handler;
+    private final int concurrency;
+    private final Retry retry;
+    private final int maxAttempts;
+    private final Duration minBackoff;
+    private final Duration maxBackoff;
+    private final BiConsumer<Event<K, T>, Throwable> deadLetters;
+
+    /**
+     * @param maxAttempts number of times an event is processed before it is given up, including the first time,
+     *                    and a dead letter is sent before each failure is logged as an error
+     * @param deadLetters sends the events of the Kafka records given up to the dead letter topic
+     */
+    public ReactiveEventProcessor(Function<Event<K, T>, Mono<Void>> handler, int concurrency, int maxAttempts,
+                                  Duration minBackoff, Duration maxBackoff, BiConsumer<Event<K, T>, Throwable> deadLetters) {
+        this.handler = handler;
+        this.concurrency = concurrency;
+        this.retry = Retry.backoff(maxAttempts - 1, minBackoff)
+                .maxBackoff(maxBackoff)
+                .filter(ex -> !(ex instanceof EventProcessingException))
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+        this.maxAttempts = maxAttempts;
+        this.minBackoff = minBackoff;
+        this.maxBackoff = maxBackoff;
+        this.deadLetters = deadLetters;
+    }
+
+    @Override
+    public Mono<Void> apply(Flux<Message<Event<K, T>>> messages) {
+        return messages
+                .groupBy(this::lane)
+                .flatMap(lane -> lane.concatMap(this::process), concurrency)
+                .then();
+    }
+
+    private int lane(Message<Event<K, T>> message) {
+        Integer partition = message.getHeaders().get(KafkaHeaders.RECEIVED_PARTITION, Integer.class);
+        Object key = partition != null ? partition : message.getPayload().getKey();
+        return Math.floorMod(Objects.hashCode(key), concurrency);
+    }
+
+    private Mono<Void> process(Message<Event<K, T>> message) {
+        Event<K, T> event = message.getPayload();
+        return Mono.defer(() -> handler.apply(event))
+                .retryWhen(retry)
+                .thenReturn(true)
+                .onErrorResume(ex -> {
+                    LOG.warn("Failed to process the {} event with key {}: {}", event.getEventType(), event.getKey(), ex.toString());
+                    return reject(message, ex);
+                })
+                .doOnNext(acknowledge -> {
+                    if (acknowledge) acknowledge(message.getHeaders());
+                })
+                .onErrorResume(ex -> {
+                    // Not rejected, the message is delivered again and its event processed again
+                    LOG.warn("Failed to acknowledge the {} event with key {}: {}", event.getEventType(), event.getKey(), ex.toString());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private void acknowledge(MessageHeaders headers) {
+        Acknowledgment acknowledgment = headers.get(KafkaHeaders.ACKNOWLEDGMENT, Acknowledgment.class);
+        if (acknowledgment != null) {
+            acknowledgment.acknowledge();
+            return;
+        }
+        Channel channel = headers.get(AmqpHeaders.CHANNEL, Channel.class);
+        Long deliveryTag = headers.get(AmqpHeaders.DELIVERY_TAG, Long.class);
+        if (channel != null && deliveryTag != null) {
+            try {
+                channel.basicAck(deliveryTag, false);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * @return true if the message is to be acknowledged
+     */
+    private Mono<Boolean> reject(Message<Event<K, T>> message, Throwable failure) {
+        MessageHeaders headers = message.getHeaders();
+        Channel channel = headers.get(AmqpHeaders.CHANNEL, Channel.class);
+        Long deliveryTag = headers.get(AmqpHeaders.DELIVERY_TAG, Long.class);
+        if (channel != null && deliveryTag != null) {
+            try {
+                // Not requeued, the queue dead letters it
+                channel.basicReject(deliveryTag, false);
+            } catch (IOException ex) {
+                LOG.warn("Failed to reject message {}: {}", deliveryTag, ex.toString());
+            }
+            return Mono.just(false);
+        }
+        Event<K, T> event = message.getPayload();
+        // A Kafka record is committed with the offsets of the records after it, it would be lost once a later record
+        // of its partition is acknowledged. The lane is held until the dead letter is sent, instead of moving on
+        return Mono.fromRunnable(() -> deadLetters.accept(event, failure))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, minBackoff)
+                        .maxBackoff(maxBackoff)
+                        .doBeforeRetry(signal -> {
+                            if ((signal.totalRetries() + 1) % maxAttempts == 0) {
+                                LOG.error("Failed to send the {} event with key {} to the dead letter topic {} times, its lane waits: {}",
+                                        event.getEventType(), event.getKey(), signal.totalRetries() + 1, signal.failure().toString());
+                            }
+                        }))
+                .thenReturn(true);
+    }
+}
@@ -0,0 +1,20 @@
+package re.elio.util.rsocket;
+
+import org.springframework.boot.rsocket.messaging.RSocketStrategiesCustomizer;
+import org.springframework.messaging.rsocket.RSocketStrategies;
+import org.springframework.stereotype.Component;
+import re.elio.util.http.Deadline;
+
+/**
+ * Lets the RSocket responders read the deadline sent as {@link RSocketDeadlines#TIMEOUT_MIME_TYPE} metadata
+ * from the {@value Deadline#TIMEOUT_HEADER} header of the request.
+ */
+@Component
+public class RSocketDeadlineMetadataCustomizer implements RSocketStrategiesCustomizer {
+
+    @Override
+    public void customize(RSocketStrategies.Builder strategies) {
+        strategies.metadataExtractorRegistry(registry ->
+                registry.metadataToExtract(RSocketDeadlines.TIMEOUT_MIME_TYPE, String.class, Deadline.TIMEOUT_HEADER));
+    }
+}
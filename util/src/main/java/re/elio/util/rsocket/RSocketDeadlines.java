@@ -0,0 +1,111 @@
+package re.elio.util.rsocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.util.MimeType;
+import re.elio.api.exceptions.DeadlineExceededException;
+import re.elio.util.http.Deadline;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * The RSocket counterpart of the {@link re.elio.util.http.DeadlineExchangeFilter} and
+ * {@link re.elio.util.http.DeadlineWebFilter}. The requester sends the remaining time of its {@link Deadline},
+ * in milliseconds, as {@link #TIMEOUT_MIME_TYPE} metadata, the responder extracts it as the
+ * {@value Deadline#TIMEOUT_HEADER} header, see {@link RSocketDeadlineMetadataCustomizer}.
+ */
+public final class RSocketDeadlines {
+    private static final Logger LOG = LoggerFactory.getLogger(RSocketDeadlines.class);
+
+    public static final MimeType TIMEOUT_MIME_TYPE = new MimeType("text", "x.request-timeout-ms");
+
+    private RSocketDeadlines() {
+    }
+
+    /**
+     * Sends a request-stream with the deadline of the subscriber, if any, and gives up on it when the deadline expires.
+     * Requests made after the deadline are not sent at all.
+     */
+    public static <T> Flux<T> requestStream(RSocketRequester requester, String route, Object data, Class<T> type) {
+        return Flux.deferContextual(context -> {
+            Optional<Deadline> deadline = Deadline.from(context);
+            if (deadline.isEmpty()) return requester.route(route).data(data).retrieveFlux(type);
+
+            Duration remaining = deadline.get().remaining();
+            if (remaining.isZero()) return Flux.error(deadlineExceeded(route));
+
+            return within(requester.route(route)
+                            .metadata(String.valueOf(remaining.toMillis()), TIMEOUT_MIME_TYPE)
+                            .data(data)
+                            .retrieveFlux(type),
+                    deadline.get(), () -> deadlineExceeded(route));
+        });
+    }
+
+    /**
+     * Like {@link #requestStream}, as request-response.
+     */
+    public static <T> Mono<T> requestResponse(RSocketRequester requester, String route, Object data, Class<T> type) {
+        return Mono.deferContextual(context -> {
+            Optional<Deadline> deadline = Deadline.from(context);
+            if (deadline.isEmpty()) return requester.route(route).data(data).retrieveMono(type);
+
+            Duration remaining = deadline.get().remaining();
+            if (remaining.isZero()) return Mono.error(deadlineExceeded(route));
+
+            return requester.route(route)
+                    .metadata(String.valueOf(remaining.toMillis()), TIMEOUT_MIME_TYPE)
+                    .data(data)
+                    .retrieveMono(type)
+                    .timeout(remaining, Mono.error(() -> deadlineExceeded(route)));
+        });
+    }
+
+    /**
+     * Runs a stream of the responder with the deadline set by the requester, kept in the Reactor context and cancelling
+     * the stream once it expires. Requests arriving after their deadline are rejected without being processed.
+     *
+     * @param timeoutMs the {@value Deadline#TIMEOUT_HEADER} header, null if the requester has no deadline
+     */
+    public static <T> Flux<T> withDeadline(String timeoutMs, Supplier<Flux<T>> call) {
+        Long timeout = parse(timeoutMs);
+        if (timeout == null) return Flux.defer(call);
+        if (timeout <= 0) return Flux.error(new DeadlineExceededException("Deadline of the request exceeded"));
+
+        Deadline deadline = Deadline.after(Duration.ofMillis(timeout));
+        return within(Flux.defer(call), deadline, () -> new DeadlineExceededException("Deadline of the request exceeded"))
+                .contextWrite(deadline::writeTo);
+    }
+
+    /**
+     * Like {@link #withDeadline(String, Supplier)}, for request-response.
+     */
+    public static <T> Mono<T> withDeadlineMono(String timeoutMs, Supplier<Mono<T>> call) {
+        return Mono.from(withDeadline(timeoutMs, () -> call.get().flux()));
+    }
+
+    private static <T> Flux<T> within(Flux<T> stream, Deadline deadline, Supplier<DeadlineExceededException> error) {
+        // The first and each next element must arrive before the deadline
+        return stream.timeout(Mono.delay(deadline.remaining()), value -> Mono.delay(deadline.remaining()),
+                Flux.error(error));
+    }
+
+    private static Long parse(String timeoutMs) {
+        if (timeoutMs == null) return null;
+        try {
+            return Long.parseLong(timeoutMs.trim());
+        } catch (NumberFormatException ex) {
+            LOG.warn("Ignores invalid {} metadata: {}", Deadline.TIMEOUT_HEADER, timeoutMs);
+            return null;
+        }
+    }
+
+    private static DeadlineExceededException deadlineExceeded(String route) {
+        return new DeadlineExceededException("Deadline exceeded calling route: " + route);
+    }
+}
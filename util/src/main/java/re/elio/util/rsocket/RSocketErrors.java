@@ -0,0 +1,49 @@
+package re.elio.util.rsocket;
+
+import io.rsocket.exceptions.CustomRSocketException;
+import re.elio.api.exceptions.DeadlineExceededException;
+import re.elio.api.exceptions.InvalidInputException;
+import re.elio.api.exceptions.NotFoundException;
+
+/**
+ * Carries the api exceptions over RSocket as application defined error codes, the RSocket counterpart
+ * of the 404, 422 and 504 responses of the HTTP API.
+ */
+public final class RSocketErrors {
+    // RSocket leaves the error codes from 0x301 to the application
+    public static final int NOT_FOUND = 0x301;
+    public static final int INVALID_INPUT = 0x302;
+    public static final int DEADLINE_EXCEEDED = 0x303;
+
+    private RSocketErrors() {
+    }
+
+    /**
+     * @return the error to send to the requester
+     */
+    public static Throwable toRSocketException(Throwable ex) {
+        if (ex instanceof NotFoundException) return new CustomRSocketException(NOT_FOUND, ex.getMessage());
+        if (ex instanceof InvalidInputException) return new CustomRSocketException(INVALID_INPUT, ex.getMessage());
+        if (ex instanceof DeadlineExceededException) return new CustomRSocketException(DEADLINE_EXCEEDED, ex.getMessage());
+        return ex;
+    }
+
+    /**
+     * @return the api exception of an error received by the requester
+     */
+    public static Throwable fromRSocketException(Throwable ex) {
+        if (ex instanceof CustomRSocketException customEx) {
+            switch (customEx.errorCode()) {
+                case NOT_FOUND:
+                    return new NotFoundException(customEx.getMessage());
+                case INVALID_INPUT:
+                    return new InvalidInputException(customEx.getMessage());
+                case DEADLINE_EXCEEDED:
+                    return new DeadlineExceededException(customEx.getMessage());
+                default:
+                    break;
+            }
+        }
+        return ex;
+    }
+}
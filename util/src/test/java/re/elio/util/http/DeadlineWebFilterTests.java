@@ -0,0 +1,47 @@
+package re.elio.util.http;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
+
+class DeadlineWebFilterTests {
+
+    private final DeadlineWebFilter filter = new DeadlineWebFilter(5000, List.of("/product-composite/{productId}/stream"));
+
+    @Test
+    void requestsGetTheDefaultDeadline() {
+        assertThat(deadlineOf(MockServerHttpRequest.get("/product-composite/1").accept(APPLICATION_JSON))).isPresent();
+    }
+
+    @Test
+    void streamsGetNoDefaultDeadline() {
+        assertThat(deadlineOf(MockServerHttpRequest.get("/product-composite/1/stream"))).isEmpty();
+        assertThat(deadlineOf(MockServerHttpRequest.get("/review").accept(APPLICATION_NDJSON))).isEmpty();
+    }
+
+    @Test
+    void streamsKeepTheDeadlineOfTheirCaller() {
+        assertThat(deadlineOf(MockServerHttpRequest.get("/product-composite/1/stream")
+                .header(Deadline.TIMEOUT_HEADER, "1000"))).isPresent();
+    }
+
+    private Optional<Deadline> deadlineOf(MockServerHttpRequest.BaseBuilder<?> request) {
+        AtomicReference<Optional<Deadline>> deadline = new AtomicReference<>();
+        filter.filter(MockServerWebExchange.from(request),
+                        exchange -> Mono.deferContextual(context -> {
+                            deadline.set(Deadline.from(context));
+                            return Mono.empty();
+                        }))
+                .block();
+        return deadline.get();
+    }
+}
@@ -0,0 +1,99 @@
+package re.elio.util.messaging;
+
+import org.junit.jupiter.api.Test;
+import re.elio.api.event.Event;
+import re.elio.api.exceptions.EventProcessingException;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static re.elio.api.event.Event.Type.*;
+
+class EventBatchProcessorTests {
+
+    private final List<String> writes = new ArrayList<>();
+    private final Map<Integer, Throwable> deadLetters = new LinkedHashMap<>();
+
+    @Test
+    void runsOfEventsAreWrittenInOrder() {
+        EventBatchProcessor<Integer, String> processor = processor(Map.of());
+
+        processor.accept(List.of(
+                new Event<>(CREATE, 1, "1"),
+                new Event<>(CREATE, 2, "2"),
+                new Event<>(DELETE, 1, null),
+                new Event<>(CREATE, 1, "1")));
+
+        assertThat(writes).containsExactly("create [1, 2]", "delete [1]", "create [1]");
+        assertThat(deadLetters).isEmpty();
+    }
+
+    @Test
+    void failedEventsAreSentToTheDeadLetters() {
+        RuntimeException duplicate = new RuntimeException("Duplicate key");
+        EventBatchProcessor<Integer, String> processor = processor(Map.of(1, duplicate));
+
+        processor.accept(List.of(
+                new Event<>(CREATE, 1, "1"),
+                new Event<>(CREATE, 2, "2"),
+                new Event<>(CREATE, 3, "3")));
+
+        assertThat(writes).containsExactly("create [1, 2, 3]");
+        assertThat(deadLetters).containsOnlyKeys(2).containsEntry(2, duplicate);
+    }
+
+    @Test
+    void incorrectEventTypesAreSentToTheDeadLetters() {
+        EventBatchProcessor<Integer, String> processor = processor(Map.of());
+
+        processor.accept(List.of(
+                new Event<>(CREATE, 1, "1"),
+                new Event<>(null, 2, "2"),
+                new Event<>(DELETE, 3, null)));
+
+        assertThat(writes).containsExactly("create [1]", "delete [3]");
+        assertThat(deadLetters).containsOnlyKeys(2);
+        assertThat(deadLetters.get(2)).isInstanceOf(EventProcessingException.class);
+    }
+
+    @Test
+    void failedBulkWriteFailsTheBatch() {
+        EventBatchProcessor<Integer, String> processor = new EventBatchProcessor<>(new EventBatchProcessor.BatchWriter<>() {
+            @Override
+            public Mono<Map<Integer, Throwable>> create(List<String> items) {
+                return Mono.error(new IllegalStateException("Database down"));
+            }
+
+            @Override
+            public Mono<Void> delete(List<Integer> keys) {
+                return Mono.empty();
+            }
+        }, (event, ex) -> deadLetters.put(event.getKey(), ex));
+
+        assertThatThrownBy(() -> processor.accept(List.of(new Event<>(CREATE, 1, "1"))))
+                .hasMessage("Database down");
+        assertThat(deadLetters).isEmpty();
+    }
+
+    private EventBatchProcessor<Integer, String> processor(Map<Integer, Throwable> failures) {
+        return new EventBatchProcessor<>(new EventBatchProcessor.BatchWriter<>() {
+            @Override
+            public Mono<Map<Integer, Throwable>> create(List<String> items) {
+                return Mono.fromSupplier(() -> {
+                    writes.add("create " + items);
+                    return failures;
+                });
+            }
+
+            @Override
+            public Mono<Void> delete(List<Integer> keys) {
+                return Mono.fromRunnable(() -> writes.add("delete " + keys));
+            }
+        }, (event, ex) -> deadLetters.put(event.getKey(), ex));
+    }
+}
@@ -0,0 +1,152 @@
+package re.elio.util.messaging;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import re.elio.api.event.Event;
+import re.elio.api.exceptions.EventProcessingException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static re.elio.api.event.Event.Type.CREATE;
+
+class ReactiveEventProcessorTests {
+
+    private final List<String> deadLetters = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void eventsWithSameKeyAreProcessedInOrder() {
+        Map<Integer, List<String>> processed = new ConcurrentHashMap<>();
+        ReactiveEventProcessor<Integer, String> processor = processor(event -> Mono.delay(Duration.ofMillis(ThreadLocalRandom.current().nextInt(3)))
+                .doOnNext(tick -> processed.computeIfAbsent(event.getKey(), key -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(event.getData()))
+                .then());
+
+        List<Message<Event<Integer, String>>> messages = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            for (int key = 1; key <= 5; key++) messages.add(message(key, String.valueOf(i), new AtomicInteger()));
+        }
+        processor.apply(Flux.fromIterable(messages)).block(Duration.ofSeconds(10));
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) expected.add(String.valueOf(i));
+        for (int key = 1; key <= 5; key++) assertThat(processed.get(key)).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void messageIsAcknowledgedAfterProcessing() {
+        Sinks.Empty<Void> write = Sinks.empty();
+        AtomicInteger acknowledgements = new AtomicInteger();
+        ReactiveEventProcessor<Integer, String> processor = processor(event -> write.asMono());
+
+        processor.apply(Flux.just(message(1, "a", acknowledgements))).subscribe();
+        assertThat(acknowledgements).hasValue(0);
+
+        write.tryEmitEmpty();
+        assertThat(acknowledgements).hasValue(1);
+    }
+
+    @Test
+    void failedEventsAreRetriedAndDeadLettered() {
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        ReactiveEventProcessor<Integer, String> processor = processor(event -> switch (event.getData()) {
+            case "flaky" -> attempts.incrementAndGet() < 3 ? Mono.error(new RuntimeException("flaky")) : Mono.fromRunnable(() -> processed.add("flaky"));
+            case "invalid" -> Mono.error(new EventProcessingException("invalid"));
+            default -> Mono.fromRunnable(() -> processed.add(event.getData()));
+        });
+
+        AtomicInteger acknowledgements = new AtomicInteger();
+        processor.apply(Flux.just(message(1, "flaky", acknowledgements), message(1, "invalid", acknowledgements),
+                message(1, "valid", acknowledgements))).block(Duration.ofSeconds(10));
+
+        assertThat(attempts).hasValue(3);
+        assertThat(processed).containsExactly("flaky", "valid");
+        assertThat(deadLetters).containsExactly("invalid");
+        assertThat(acknowledgements).hasValue(3);
+    }
+
+    @Test
+    void laneWaitsUntilTheDeadLetterIsSent() throws InterruptedException {
+        AtomicInteger sendAttempts = new AtomicInteger();
+        AtomicBoolean deadLetterTopicUp = new AtomicBoolean();
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        ReactiveEventProcessor<Integer, String> processor = new ReactiveEventProcessor<>(
+                event -> "invalid".equals(event.getData()) ? Mono.error(new EventProcessingException("invalid"))
+                        : Mono.fromRunnable(() -> processed.add(event.getData())),
+                4, 3, Duration.ofMillis(1), Duration.ofMillis(5),
+                (event, ex) -> {
+                    sendAttempts.incrementAndGet();
+                    if (!deadLetterTopicUp.get()) throw new IllegalStateException("Failed to send the event");
+                });
+
+        List<String> acknowledged = Collections.synchronizedList(new ArrayList<>());
+        Disposable processing = processor.apply(Flux.just(record(0, "invalid", acknowledged), record(0, "valid", acknowledged)))
+                .subscribe();
+        try {
+            Thread.sleep(200);
+            // Neither the record nor the later record of its partition are acknowledged, the dead letter is still retried
+            assertThat(sendAttempts.get()).isGreaterThan(3);
+            assertThat(acknowledged).isEmpty();
+            assertThat(processed).isEmpty();
+
+            deadLetterTopicUp.set(true);
+            Thread.sleep(200);
+            assertThat(acknowledged).containsExactly("invalid", "valid");
+            assertThat(processed).containsExactly("valid");
+        } finally {
+            processing.dispose();
+        }
+    }
+
+    @Test
+    void failedAcknowledgementIsNotDeadLettered() {
+        ReactiveEventProcessor<Integer, String> processor = processor(event -> Mono.empty());
+        Acknowledgment acknowledgment = () -> {
+            throw new IllegalStateException("Consumer closed");
+        };
+        Message<Event<Integer, String>> message = MessageBuilder.withPayload(new Event<>(CREATE, 1, "valid"))
+                .setHeader(KafkaHeaders.ACKNOWLEDGMENT, acknowledgment)
+                .build();
+
+        processor.apply(Flux.just(message)).block(Duration.ofSeconds(10));
+
+        assertThat(deadLetters).isEmpty();
+    }
+
+    private ReactiveEventProcessor<Integer, String> processor(Function<Event<Integer, String>, Mono<Void>> handler) {
+        return new ReactiveEventProcessor<>(handler, 4, 3, Duration.ofMillis(1), Duration.ofMillis(5),
+                (event, ex) -> deadLetters.add(event.getData()));
+    }
+
+    private Message<Event<Integer, String>> record(int partition, String data, List<String> acknowledged) {
+        Acknowledgment acknowledgment = () -> acknowledged.add(data);
+        return MessageBuilder.withPayload(new Event<>(CREATE, 1, data))
+                .setHeader(KafkaHeaders.RECEIVED_PARTITION, partition)
+                .setHeader(KafkaHeaders.ACKNOWLEDGMENT, acknowledgment)
+                .build();
+    }
+
+    private Message<Event<Integer, String>> message(int key, String data, AtomicInteger acknowledgements) {
+        Acknowledgment acknowledgment = acknowledgements::incrementAndGet;
+        return MessageBuilder.withPayload(new Event<>(CREATE, key, data))
+                .setHeader(KafkaHeaders.ACKNOWLEDGMENT, acknowledgment)
+                .build();
+    }
+}
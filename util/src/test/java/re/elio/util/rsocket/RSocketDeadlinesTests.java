@@ -0,0 +1,47 @@
+package re.elio.util.rsocket;
+
+import org.junit.jupiter.api.Test;
+import re.elio.api.exceptions.DeadlineExceededException;
+import re.elio.util.http.Deadline;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RSocketDeadlinesTests {
+
+    @Test
+    void requestsWithoutDeadlineRunWithoutDeadline() {
+        StepVerifier.create(RSocketDeadlines.withDeadline(null,
+                        () -> Flux.deferContextual(context -> Flux.just(Deadline.from(context).isPresent()))))
+                .expectNext(false)
+                .verifyComplete();
+    }
+
+    @Test
+    void deadlineOfTheRequesterIsKeptInTheContext() {
+        StepVerifier.create(RSocketDeadlines.withDeadline("1000",
+                        () -> Flux.deferContextual(context -> Flux.just(Deadline.from(context).isPresent()))))
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @Test
+    void expiredRequestsAreNotProcessed() {
+        AtomicInteger calls = new AtomicInteger();
+        StepVerifier.create(RSocketDeadlines.withDeadline("0", () -> Flux.just(calls.incrementAndGet())))
+                .verifyError(DeadlineExceededException.class);
+        assertThat(calls.get()).isZero();
+    }
+
+    @Test
+    void streamIsCancelledWhenTheDeadlineExpires() {
+        StepVerifier.create(RSocketDeadlines.withDeadline("50", () -> Flux.interval(Duration.ofMillis(20))))
+                .thenConsumeWhile(value -> true)
+                .expectError(DeadlineExceededException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+}